@@ -0,0 +1,120 @@
+package model;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.TreeSet;
+
+/**
+ * Compares saving and loading a catalog in the binary catalog format with Java
+ * serialization, and times opening the binary catalog memory mapped. A catalog
+ * of generated empty image files is built in a temporary directory, every image
+ * is tagged a few times to grow its history, and each format is then saved and
+ * loaded repeatedly.
+ *
+ * <p>
+ * Usage: CatalogBenchmark [directories] [images per directory] [tag rounds]
+ * [iterations]. Run it from a scratch directory, since the catalog journal is
+ * written to the working directory.
+ *
+ */
+public class CatalogBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int directories = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+		int imagesPerDirectory = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+		int tagRounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+		int iterations = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+		ModelManager manager = ModelManager.instance;
+		manager.setAccesor(new FileAccesor());
+		Path root = Files.createTempDirectory("catalog-benchmark");
+		for (int d = 0; d < directories; d++) {
+			Path dir = Files.createDirectory(root.resolve("dir" + d));
+			for (int i = 0; i < imagesPerDirectory; i++) {
+				Files.createFile(dir.resolve("image" + i + ".jpg"));
+			}
+		}
+
+		DirectoryModel rootModel = manager.addDir(root);
+		for (int round = 0; round < tagRounds; round++) {
+			for (ImageModel image : rootModel.getImagesRecursive()) {
+				image.addTag("tag" + round);
+			}
+		}
+		// A tag on the images of one directory, so filtering by it only reads that directory
+		for (ImageModel image : manager.getDir(root.resolve("dir0")).getImages()) {
+			image.addTag("rare");
+		}
+		System.out.printf("%d images, %d tag rounds%n", directories * imagesPerDirectory, tagRounds);
+
+		Path binary = root.resolve("catalog.bin");
+		Path serialized = root.resolve("catalog.ser");
+		for (int i = 0; i < iterations; i++) {
+			System.out.printf("binary:     save %s, load %s, %d bytes%n", time(() -> manager.saveToLocation(binary)),
+					time(() -> manager.loadFromLocation(binary)), Files.size(binary));
+			System.out.printf("mapped:     open %s, then filter by a rare tag %s, then read every directory %s%n",
+					time(() -> manager.mapFromLocation(binary)), time(() -> manager.getImagesWithTag("rare")),
+					time(() -> manager.getRoots().forEach(dir -> dir.streamImagesRecursive().count())));
+			String serializedSave = time(() -> saveSerialized(serialized));
+			String serializedLoad = Files.exists(serialized) ? time(() -> manager.loadFromLocation(serialized)) : "-";
+			System.out.printf("serialized: save %s, load %s, %d bytes%n", serializedSave, serializedLoad,
+					Files.exists(serialized) ? Files.size(serialized) : 0);
+			// Make sure the next round starts from the binary catalog
+			manager.loadFromLocation(binary);
+		}
+	}
+
+	/**
+	 * A benchmarked operation
+	 *
+	 */
+	private interface Task {
+		void run() throws Exception;
+	}
+
+	/**
+	 * Return how long the given task takes to run. Java serialization recurses
+	 * along every reference, so it can run out of stack on long histories
+	 *
+	 * @param task
+	 *            the given task
+	 * @return how long the given task took, or that it ran out of stack
+	 * @throws Exception
+	 *             if the task fails
+	 */
+	private static String time(Task task) throws Exception {
+		long start = System.nanoTime();
+		try {
+			task.run();
+		} catch (StackOverflowError e) {
+			return "stack overflow";
+		}
+		return String.format("%5d ms", (System.nanoTime() - start) / 1000000);
+	}
+
+	/**
+	 * Save the catalog to the given location with Java serialization, the way it
+	 * was saved before the binary catalog format. Nothing is left at the location
+	 * if it runs out of stack
+	 *
+	 * @param loc
+	 *            the given location
+	 * @throws IOException
+	 *             on any problems writing to the location
+	 */
+	private static void saveSerialized(Path loc) throws IOException {
+		ModelManager manager = ModelManager.instance;
+		try (ObjectOutputStream out = new ObjectOutputStream(
+				new BufferedOutputStream(manager.getAccesor().newOutputStream(loc)))) {
+			out.writeObject(new TreeSet<>(manager.getRoots()));
+			out.writeObject(new TreeSet<>(manager.getTags()));
+		} catch (StackOverflowError e) {
+			// Do not leave a partial file for the load to read
+			Files.deleteIfExists(loc);
+			throw e;
+		}
+	}
+}
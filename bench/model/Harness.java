@@ -0,0 +1,148 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs benchmarks the way a benchmark framework would, for a build without
+ * one: each benchmark is warmed up so the JIT has compiled it, then timed over
+ * several iterations of a fixed length, and the mean time per operation is
+ * printed with the spread between iterations. Setup work is run before every
+ * timed call but is not timed itself
+ *
+ */
+final class Harness {
+
+	/**
+	 * A benchmarked operation
+	 *
+	 */
+	interface Benchmark {
+		/**
+		 * Run the benchmarked operation one or more times
+		 *
+		 * @return the number of operations done
+		 * @throws Exception
+		 *             if an operation fails
+		 */
+		long run() throws Exception;
+	}
+
+	/**
+	 * Untimed work run before every call of a benchmark
+	 *
+	 */
+	interface Setup {
+		void run() throws Exception;
+	}
+
+	// Results are stored here so the JIT cannot drop the work producing them
+	static volatile Object sink;
+
+	private final int warmups;
+	private final int iterations;
+	private final long iterationNanos;
+
+	/**
+	 * Create a Harness
+	 *
+	 * @param warmups
+	 *            the number of untimed iterations before the timed ones
+	 * @param iterations
+	 *            the number of timed iterations
+	 * @param iterationMillis
+	 *            how long each iteration runs for, at least one call
+	 */
+	Harness(int warmups, int iterations, long iterationMillis) {
+		this.warmups = warmups;
+		this.iterations = iterations;
+		this.iterationNanos = iterationMillis * 1000000;
+	}
+
+	/**
+	 * Keep the given result alive
+	 *
+	 * @param result
+	 *            the given result
+	 */
+	static void consume(Object result) {
+		sink = result;
+	}
+
+	/**
+	 * Measure the given benchmark and print its time per operation
+	 *
+	 * @param name
+	 *            the name printed with the result
+	 * @param benchmark
+	 *            the given benchmark
+	 * @throws Exception
+	 *             if the benchmark fails
+	 */
+	void measure(String name, Benchmark benchmark) throws Exception {
+		measure(name, null, benchmark);
+	}
+
+	/**
+	 * Measure the given benchmark, running the given setup before every call, and
+	 * print its time per operation
+	 *
+	 * @param name
+	 *            the name printed with the result
+	 * @param setup
+	 *            the given setup, or null
+	 * @param benchmark
+	 *            the given benchmark
+	 * @throws Exception
+	 *             if the setup or the benchmark fails
+	 */
+	void measure(String name, Setup setup, Benchmark benchmark) throws Exception {
+		for (int i = 0; i < warmups; i++) {
+			iterate(setup, benchmark);
+		}
+		List<Double> perOperation = new ArrayList<>();
+		long operations = 0;
+		for (int i = 0; i < iterations; i++) {
+			long[] result = iterate(setup, benchmark);
+			operations += result[1];
+			perOperation.add((double) result[0] / Math.max(1, result[1]));
+		}
+
+		double mean = 0;
+		for (double time : perOperation) {
+			mean += time / perOperation.size();
+		}
+		double variance = 0;
+		for (double time : perOperation) {
+			variance += (time - mean) * (time - mean) / Math.max(1, perOperation.size() - 1);
+		}
+		System.out.printf("%-36s %14.1f ns/op  +- %10.1f  (%d ops)%n", name, mean, Math.sqrt(variance), operations);
+	}
+
+	/**
+	 * Call the given benchmark until the iteration time is up
+	 *
+	 * @param setup
+	 *            the setup run before every call, or null
+	 * @param benchmark
+	 *            the given benchmark
+	 * @return the nanoseconds spent in the benchmark and the number of operations
+	 *         it did
+	 * @throws Exception
+	 *             if the setup or the benchmark fails
+	 */
+	private long[] iterate(Setup setup, Benchmark benchmark) throws Exception {
+		long end = System.nanoTime() + iterationNanos;
+		long nanos = 0;
+		long operations = 0;
+		do {
+			if (setup != null) {
+				setup.run();
+			}
+			long start = System.nanoTime();
+			operations += benchmark.run();
+			nanos += System.nanoTime() - start;
+		} while (System.nanoTime() < end);
+		return new long[] { nanos, operations };
+	}
+}
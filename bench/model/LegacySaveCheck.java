@@ -0,0 +1,112 @@
+package model;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that a save written with Java serialization by an older version, such
+ * as the one committed under classes/artifacts, is still read: every history in
+ * it must be complete, from a first snapshot with nothing before it to the last
+ * one, and must read back the same after the catalog is saved again in the
+ * binary catalog format. Exits with a non-zero status if it is not.
+ *
+ * <p>
+ * Usage: LegacySaveCheck [save]. Run it from a scratch directory, since the
+ * catalog journal is written to the working directory.
+ *
+ */
+public class LegacySaveCheck {
+
+	public static void main(String[] args) throws Exception {
+		Path save = Paths.get(args.length > 0 ? args[0] : "classes/artifacts/ProjectPhase2_jar/.ser/save.ser")
+				.toAbsolutePath();
+
+		ModelManager manager = ModelManager.instance;
+		manager.setAccesor(new FileAccesor());
+		manager.loadFromLocation(save);
+		List<String> failures = new ArrayList<>();
+		List<String> histories = describe(manager, failures);
+		if (histories.isEmpty()) {
+			failures.add("no models were read from " + save);
+		}
+
+		Path binary = Files.createTempFile("legacy-save", ".bin");
+		try {
+			manager.saveToLocation(binary);
+			manager.loadFromLocation(binary);
+			if (!describe(manager, failures).equals(histories)) {
+				failures.add("histories changed when saved in the binary catalog format");
+			}
+		} finally {
+			Files.delete(binary);
+		}
+
+		for (String failure : failures) {
+			System.out.println("FAILED: " + failure);
+		}
+		System.out.printf("%d histories read from %s%n", histories.size(), save);
+		if (!failures.isEmpty()) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Describe the history of every model in the given manager, adding a failure
+	 * for every history that is not complete
+	 *
+	 * @param manager
+	 *            the given manager
+	 * @param failures
+	 *            where failures are added
+	 * @return the description of every history, in tree order
+	 * @throws IOException
+	 *             on any problems reading the models
+	 */
+	private static List<String> describe(ModelManager manager, List<String> failures) throws IOException {
+		List<String> histories = new ArrayList<>();
+		for (DirectoryModel root : manager.getRoots()) {
+			describe(root, histories, failures);
+		}
+		return histories;
+	}
+
+	private static void describe(DirectoryModel dir, List<String> histories, List<String> failures) {
+		histories.add(check(dir, dir.getHistory(), failures));
+		for (ImageModel image : dir.getImages()) {
+			histories.add(check(image, image.getHistory(), failures));
+		}
+		for (DirectoryModel subDir : dir.getSubdirectories()) {
+			describe(subDir, histories, failures);
+		}
+	}
+
+	/**
+	 * Check that the given history is complete, and describe it
+	 *
+	 * @param model
+	 *            the model the history is of
+	 * @param history
+	 *            the given history
+	 * @param failures
+	 *            where a failure is added if the history is not complete
+	 * @return the description of the given history
+	 */
+	private static String check(Model<?, ?> model, History<?, ?>.HistoryViewer history, List<String> failures) {
+		int count = 0;
+		SnapShot<?, ?> oldest = null;
+		for (SnapShot<?, ?> snap : history) {
+			oldest = snap;
+			count++;
+		}
+		if (count == 0 || count != history.getCount()) {
+			failures.add(model + ": " + count + " snapshots listed, " + history.getCount() + " counted");
+		} else if (oldest.getLastSnap() != null) {
+			failures.add(model + ": history does not start at its first snapshot");
+		}
+		return model + System.lineSeparator() + history;
+	}
+}
@@ -0,0 +1,202 @@
+package model;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the operations of the model layer on a synthetic tree kept in a
+ * MemoryAccesor, so the numbers measure the model rather than the disk and can
+ * be compared from release to release. The tree has the given fan-out and
+ * depth, every directory holds the given number of images, and every image is
+ * named after the given number of tags drawn from a pool of distinct tags.
+ * Every file operation can be given a latency, to see how the model copes with
+ * a slow file system.
+ *
+ * <p>
+ * Usage: ModelBenchmark [fan-out] [depth] [images per directory] [tags per
+ * image] [distinct tags] [latency in microseconds]. The benchmarks that change
+ * the tree run last, so the catalog saved and loaded before them keeps its
+ * size.
+ *
+ */
+public class ModelBenchmark {
+
+	private static final int BATCH = 1000;
+
+	public static void main(String[] args) throws Exception {
+		int fanOut = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+		int depth = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+		int imagesPerDirectory = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+		int tagsPerImage = args.length > 3 ? Integer.parseInt(args[3]) : 2;
+		int distinctTags = args.length > 4 ? Integer.parseInt(args[4]) : 50;
+		long latency = args.length > 5 ? Long.parseLong(args[5]) : 0;
+
+		MemoryAccesor accesor = new MemoryAccesor(Paths.get("/bench"));
+		Path root = Paths.get("/library");
+		Random random = new Random(42);
+		int images = build(accesor, root, fanOut, depth, imagesPerDirectory, tagsPerImage, distinctTags, random);
+		for (Accesor.Operation operation : Accesor.Operation.values()) {
+			accesor.setLatency(operation, latency, TimeUnit.MICROSECONDS);
+		}
+		ModelManager manager = ModelManager.instance;
+		manager.setAccesor(accesor);
+		System.out.printf("fan-out %d, depth %d, %d images, %d of %d tags per image, %d us latency%n", fanOut, depth,
+				images, tagsPerImage, distinctTags, latency);
+
+		Harness harness = new Harness(3, 5, 1000);
+		harness.measure("ModelManager.addDir", manager::clear, () -> {
+			manager.addDir(root);
+			return 1;
+		});
+
+		DirectoryModel rootModel = manager.getDir(root);
+		List<ImageModel> all = new ArrayList<>(rootModel.getImagesRecursive());
+		List<Path> paths = new ArrayList<>();
+		for (ImageModel image : all) {
+			paths.add(image.getPath());
+		}
+		List<DirectoryModel> directories = new ArrayList<>();
+		collect(rootModel, directories);
+		int[] picks = new int[BATCH];
+		for (int i = 0; i < BATCH; i++) {
+			picks[i] = random.nextInt(all.size());
+		}
+
+		harness.measure("ModelManager.getModel", () -> {
+			for (int pick : picks) {
+				Harness.consume(manager.getModel(paths.get(pick)));
+			}
+			return BATCH;
+		});
+		harness.measure("DirectoryModel.getImagesRecursive", () -> {
+			Harness.consume(rootModel.getImagesRecursive());
+			return 1;
+		});
+		harness.measure("ImageModel.getPath", () -> {
+			for (int pick : picks) {
+				Harness.consume(all.get(pick).getPath());
+			}
+			return BATCH;
+		});
+		harness.measure("ModelManager.getImagesWithTag", () -> {
+			int found = 0;
+			for (int i = 0; i < BATCH; i++) {
+				DirectoryModel dir = directories.get(picks[i] % directories.size());
+				found += manager.getImagesWithTag("tag" + picks[i] % distinctTags, dir).size();
+			}
+			Harness.consume(found);
+			return BATCH;
+		});
+
+		// Give one image a long history to search
+		ImageModel historic = all.get(0);
+		for (int i = 0; i < 500; i++) {
+			historic.addTag("history");
+			historic.deleteTag("history");
+		}
+		History<ImageModel, ImageSnapShot>.HistoryViewer history = historic.getHistory();
+		long first = history.getSnap(history.getCount() - 1).getTime();
+		long last = history.getSnap(0).getTime();
+		harness.measure("History.getSnapBefore", () -> {
+			for (int pick : picks) {
+				Harness.consume(history.getSnapBefore(new Date(first + (last - first) * pick / all.size())));
+			}
+			return BATCH;
+		});
+
+		harness.measure("ModelManager.saveToDisk", () -> {
+			manager.saveToDisk();
+			return 1;
+		});
+		harness.measure("ModelManager.loadFromLocation", () -> {
+			manager.loadFromLocation(Paths.get(ModelManager.saveLocation));
+			return 1;
+		});
+
+		// Loading replaced every model
+		all.clear();
+		all.addAll(manager.getDir(root).getImagesRecursive());
+
+		ImageModel[] next = new ImageModel[1];
+		harness.measure("ImageModel.addTag", () -> {
+			next[0] = all.get(random.nextInt(all.size()));
+			next[0].deleteTag("benchmark");
+		}, () -> {
+			next[0].addTag("benchmark");
+			return 1;
+		});
+		harness.measure("ImageModel.rename", () -> next[0] = all.get(random.nextInt(all.size())), () -> {
+			ImageModel image = next[0];
+			String untagged = image.getUntaggedName();
+			untagged = untagged.endsWith("r") ? untagged.substring(0, untagged.length() - 1) : untagged + "r";
+			image.rename(ImageModel.toTaggedName(untagged, image.getTags()));
+			return 1;
+		});
+	}
+
+	/**
+	 * Build a tree of empty images at the given root
+	 *
+	 * @param accesor
+	 *            the accesor the tree is built in
+	 * @param dir
+	 *            the root of the tree
+	 * @param fanOut
+	 *            the number of subdirectories of every directory above the given
+	 *            depth
+	 * @param depth
+	 *            the number of levels of subdirectories
+	 * @param imagesPerDirectory
+	 *            the number of images in every directory
+	 * @param tagsPerImage
+	 *            the number of tags every image is named after
+	 * @param distinctTags
+	 *            the number of distinct tags
+	 * @param random
+	 *            the source of the tags
+	 * @return the number of images built
+	 * @throws IOException
+	 *             on any problems building the tree
+	 */
+	private static int build(MemoryAccesor accesor, Path dir, int fanOut, int depth, int imagesPerDirectory,
+			int tagsPerImage, int distinctTags, Random random) throws IOException {
+		accesor.createDirectories(dir);
+		for (int i = 0; i < imagesPerDirectory; i++) {
+			TreeSet<String> tags = new TreeSet<>();
+			while (tags.size() < Math.min(tagsPerImage, distinctTags)) {
+				tags.add("tag" + random.nextInt(distinctTags));
+			}
+			accesor.createFile(dir.resolve(ImageModel.toTaggedName("image" + i, tags) + ".jpg"), new byte[0]);
+		}
+		int images = imagesPerDirectory;
+		if (depth > 0) {
+			for (int i = 0; i < fanOut; i++) {
+				images += build(accesor, dir.resolve("dir" + i), fanOut, depth - 1, imagesPerDirectory, tagsPerImage,
+						distinctTags, random);
+			}
+		}
+		return images;
+	}
+
+	/**
+	 * Add the given directory and every directory under it to the given list
+	 *
+	 * @param dir
+	 *            the given directory
+	 * @param directories
+	 *            the given list
+	 */
+	private static void collect(DirectoryModel dir, List<DirectoryModel> directories) {
+		directories.add(dir);
+		for (DirectoryModel subdirectory : dir.getSubdirectoriesView()) {
+			collect(subdirectory, directories);
+		}
+	}
+}
@@ -0,0 +1,224 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Times parsing, formatting and checking the names of image files with
+ * TaggedNameCodec against the regular expressions it replaced, which are kept
+ * here as the reference. Before timing, both are run over every generated name
+ * and the benchmark stops at the first name they disagree on.
+ *
+ * <p>
+ * Usage: TaggedNameBenchmark [names] [tags per name] [distinct tags] [seed].
+ * About one name in eight is malformed, and one in four is not normalized.
+ *
+ */
+public class TaggedNameBenchmark {
+
+	private static final Pattern extPattern = Pattern.compile("(.*)(\\..*)");
+	private static final Pattern namePattern = Pattern.compile("([^\\s\\-@][^\\-@]*)(?: -(?: @[^@\\-\\s]+)+)?");
+	private static final Pattern tagPattern = Pattern.compile("@([^@\\-\\s]+)");
+	private static final String[] MALFORMED = { " - @", "-", "@", " -", " - @a -", " - @a@b", "\t", " - @ ", ":",
+			"\u00e9", "\n" };
+
+	public static void main(String[] args) throws Exception {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		int tagsPerName = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+		int distinctTags = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+		Random random = new Random(args.length > 3 ? Long.parseLong(args[3]) : 42);
+
+		List<String> names = new ArrayList<>();
+		List<String> untaggedNames = new ArrayList<>();
+		List<List<String>> tagLists = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			TreeSet<String> tags = new TreeSet<>();
+			while (tags.size() < Math.min(tagsPerName, distinctTags)) {
+				tags.add("tag" + random.nextInt(distinctTags));
+			}
+			List<String> order = new ArrayList<>(tags);
+			if (random.nextInt(4) == 0) {
+				order.add(0, order.remove(order.size() - 1));
+			}
+			String untagged = "IMG_" + i + (random.nextBoolean() ? " (copy)" : "");
+			String name = legacyFormat(untagged, order) + ".jpg";
+			if (random.nextInt(8) == 0) {
+				int at = random.nextInt(name.length());
+				name = name.substring(0, at) + MALFORMED[random.nextInt(MALFORMED.length)] + name.substring(at);
+			}
+			names.add(name);
+			untaggedNames.add(untagged);
+			tagLists.add(new ArrayList<>(tags));
+		}
+		int malformed = check(names);
+		System.out.printf("%d names, %d malformed, %d of %d tags per name: codec agrees with the patterns%n", count,
+				malformed, tagsPerName, distinctTags);
+
+		Harness harness = new Harness(3, 5, 1000);
+		harness.measure("patterns: parse", () -> {
+			for (String name : names) {
+				Harness.consume(legacyParse(name));
+			}
+			return names.size();
+		});
+		harness.measure("codec: parse", () -> {
+			for (String name : names) {
+				Harness.consume(parse(name));
+			}
+			return names.size();
+		});
+		harness.measure("patterns: format", () -> {
+			for (int i = 0; i < count; i++) {
+				Harness.consume(legacyFormat(untaggedNames.get(i), tagLists.get(i)) + ".jpg");
+			}
+			return count;
+		});
+		harness.measure("codec: format", () -> {
+			for (int i = 0; i < count; i++) {
+				Harness.consume(TaggedNameCodec.format(untaggedNames.get(i), tagLists.get(i), ".jpg"));
+			}
+			return count;
+		});
+		harness.measure("patterns: isLegalFilename", () -> {
+			int legal = 0;
+			for (String name : names) {
+				legal += legacyIsLegalFilename(name) ? 1 : 0;
+			}
+			Harness.consume(legal);
+			return names.size();
+		});
+		harness.measure("codec: isLegalFilename", () -> {
+			int legal = 0;
+			for (String name : names) {
+				legal += TaggedNameCodec.isLegalFilename(name) ? 1 : 0;
+			}
+			Harness.consume(legal);
+			return names.size();
+		});
+		harness.measure("patterns: isLegalTag", () -> {
+			int legal = 0;
+			for (List<String> tags : tagLists) {
+				for (String tag : tags) {
+					legal += legacyIsLegalTag(tag) ? 1 : 0;
+				}
+			}
+			Harness.consume(legal);
+			return count;
+		});
+		harness.measure("codec: isLegalTag", () -> {
+			int legal = 0;
+			for (List<String> tags : tagLists) {
+				for (String tag : tags) {
+					legal += TaggedNameCodec.isLegalTag(tag) ? 1 : 0;
+				}
+			}
+			Harness.consume(legal);
+			return count;
+		});
+	}
+
+	/**
+	 * Parse every given name with both the codec and the patterns
+	 *
+	 * @param names
+	 *            the given names
+	 * @return the number of names neither could parse
+	 * @throws IllegalStateException
+	 *             if they disagree on a name
+	 */
+	private static int check(List<String> names) {
+		int malformed = 0;
+		for (String name : names) {
+			String expected = legacyParse(name);
+			String actual = parse(name);
+			if (!expected.equals(actual))
+				throw new IllegalStateException(name + ": expected " + expected + " but was " + actual);
+			if (legacyIsLegalFilename(name) != TaggedNameCodec.isLegalFilename(name))
+				throw new IllegalStateException(name + ": legal file name " + legacyIsLegalFilename(name));
+			if (!ImageModel.getTags(name).equals(legacyGetTags(name)))
+				throw new IllegalStateException(name + ": tags " + legacyGetTags(name));
+			malformed += expected.isEmpty() ? 1 : 0;
+		}
+		return malformed;
+	}
+
+	/**
+	 * Parse the given file name with the codec
+	 *
+	 * @param fullName
+	 *            the given file name
+	 * @return its untagged name, tags, extension and whether it is normalized, or
+	 *         an empty string if it cannot be parsed
+	 */
+	private static String parse(String fullName) {
+		int dot = TaggedNameCodec.extensionStart(fullName);
+		if (dot < 0)
+			return "";
+		TreeSet<String> tags = new TreeSet<>();
+		int length = TaggedNameCodec.parse(fullName, dot, tags);
+		if (length < 0)
+			return "";
+		String untagged = fullName.substring(0, length);
+		return describe(untagged, tags, fullName.substring(dot),
+				TaggedNameCodec.isFormatted(fullName, dot, untagged, tags));
+	}
+
+	/**
+	 * Parse the given file name with the patterns, the way ImageModel did
+	 *
+	 * @param fullName
+	 *            the given file name
+	 * @return its untagged name, tags, extension and whether it is normalized, or
+	 *         an empty string if it cannot be parsed
+	 */
+	private static String legacyParse(String fullName) {
+		Matcher matcher = extPattern.matcher(fullName);
+		if (!matcher.matches())
+			return "";
+		String taggedName = matcher.group(1);
+		Matcher name = namePattern.matcher(taggedName);
+		if (!legacyIsLegalFilename(taggedName) || !name.matches())
+			return "";
+		TreeSet<String> tags = new TreeSet<>(legacyGetTags(taggedName));
+		String untagged = name.group(1);
+		return describe(untagged, tags, matcher.group(2), taggedName.equals(legacyFormat(untagged, tags)));
+	}
+
+	private static String describe(String untagged, Collection<String> tags, String extension, boolean normalized) {
+		return untagged + "|" + tags + "|" + extension + "|" + normalized;
+	}
+
+	private static LinkedList<String> legacyGetTags(String taggedName) {
+		Matcher m = tagPattern.matcher(taggedName);
+		LinkedList<String> tags = new LinkedList<>();
+		while (m.find()) {
+			tags.add(m.group(1));
+		}
+		return tags;
+	}
+
+	private static String legacyFormat(String untaggedName, Collection<String> tags) {
+		StringBuilder taggedName = new StringBuilder(untaggedName);
+		if (tags.size() > 0) {
+			taggedName.append(" -");
+		}
+		for (String tag : tags) {
+			taggedName.append(" @").append(tag);
+		}
+		return taggedName.toString();
+	}
+
+	private static boolean legacyIsLegalFilename(String str) {
+		return str.matches("[a-zA-Z0-9](?:[a-zA-Z]|[0-9]|[!#%&\\(\\);=\\[\\]^_+{}~,\\\\.@\\- ])*");
+	}
+
+	private static boolean legacyIsLegalTag(String tag) {
+		return tag != null && !tag.matches(".*[\\\\/:\\*\\?\"<>|\\-@].*");
+	}
+}
@@ -3,17 +3,23 @@ package controller;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import model.CatalogWatcher;
 import model.DirectoryModel;
+import model.ImageListener;
 import model.ImageModel;
 import model.ImageSnapShot;
+import model.JournalListener;
 import model.ModelManager;
+import model.TagEdit;
 
 /**
  * A Controller to limit interaction with the model
@@ -76,6 +82,29 @@ public class Controller {
 		}
 	}
 
+	/**
+	 * Apply the given tag edits to every given image, then notify the listeners of
+	 * the reference once. Every tag the edits add is added to the list of all tags
+	 *
+	 * @param images
+	 *            the given images
+	 * @param edits
+	 *            the given tag edits, applied in order
+	 */
+	public void editTags(Collection<ImageModel> images, List<TagEdit> edits) {
+		for (TagEdit edit : edits) {
+			if (edit.getNewTag() != null) {
+				imageManager.addTag(edit.getNewTag());
+			}
+		}
+		try {
+			imageManager.editTags(images, edits);
+		} catch (IOException e) {
+			//e.printStackTrace();
+		}
+		reference.update();
+	}
+
 	/**
 	 * Return a ObservableList of all the logs ever logged. NOTE: This is only for
 	 * the View methods! The returned list is NOT tied to the model
@@ -84,14 +113,57 @@ public class Controller {
 	 */
 	public ObservableList<String> getAllLogs() {
 
-		List<String> list = new LinkedList<String>();
-		for (ImageSnapShot entry : ImageSnapShot.getAllHistory()) {
-			list.add(entry.toString());
+		List<String> list = new ArrayList<String>();
+		try {
+			imageManager.getJournal().read(list::add);
+		} catch (IOException e) {
+			//e.printStackTrace();
 		}
 
 		return FXCollections.observableList(list);
 	}
 
+	/**
+	 * Return the number of logs ever logged
+	 *
+	 * @return the number of logs ever logged, or 0 if they could not be read
+	 */
+	public int getLogCount() {
+		try {
+			return imageManager.getJournal().size();
+		} catch (IOException e) {
+			//e.printStackTrace();
+			return 0;
+		}
+	}
+
+	/**
+	 * Return the log at the given index, oldest first
+	 *
+	 * @param index
+	 *            the given index
+	 * @return the log at the given index, or an empty String if it could not be
+	 *         read
+	 */
+	public String getLog(int index) {
+		try {
+			return imageManager.getJournal().get(index);
+		} catch (IOException e) {
+			//e.printStackTrace();
+			return "";
+		}
+	}
+
+	/**
+	 * Registers a listener to every log logged
+	 *
+	 * @param listener
+	 *            the journal listener
+	 */
+	public void registerLogListener(JournalListener listener) {
+		imageManager.getJournal().addListener(listener);
+	}
+
 	/**
 	 * Return a ObservableList of all the tags of the currently selected image. If
 	 * none is selected, returns null. NOTE: This is only for the View methods! The
@@ -121,6 +193,20 @@ public class Controller {
 		return null;
 	}
 
+	/**
+	 * Return every image with the given tag under the given directory. NOTE: This
+	 * is a read-only view of the model and must not be kept across changes
+	 *
+	 * @param tag
+	 *            the given tag
+	 * @param directory
+	 *            the given directory
+	 * @return every image with the given tag under the given directory
+	 */
+	public Collection<ImageModel> getImagesWithTag(String tag, DirectoryModel directory) {
+		return imageManager.getImagesWithTag(tag, directory);
+	}
+
 	/**
 	 * Return a List of all tags in the active directory.
 	 *
@@ -206,6 +292,27 @@ public class Controller {
 		this.reference.addListener(listener);
 	}
 
+	/**
+	 * Registers a listener to every image added to, removed from, renamed or moved
+	 * in the model
+	 *
+	 * @param listener
+	 *            the image listener
+	 */
+	public void registerImageListener(ImageListener listener) {
+		imageManager.addImageListener(listener);
+	}
+
+	/**
+	 * Unregisters a listener registered with registerImageListener
+	 *
+	 * @param listener
+	 *            the image listener
+	 */
+	public void unregisterImageListener(ImageListener listener) {
+		imageManager.removeImageListener(listener);
+	}
+
 	/**
 	 * Attempts to revert the currently selected image to the {rank}'th latest
 	 * revision
@@ -246,6 +353,22 @@ public class Controller {
 		}
 	}
 
+	/**
+	 * Start applying changes made to the catalogued directories outside of this
+	 * application. Changes are applied on the given executor, after which every
+	 * listener of the reference is notified
+	 *
+	 * @param executor
+	 *            the executor that changes to the model are applied on
+	 */
+	public void startWatching(Executor executor) {
+		try {
+			new CatalogWatcher(executor, reference::update, CatalogWatcher.DEFAULT_DEBOUNCE).start();
+		} catch (IOException e) {
+			//e.printStackTrace();
+		}
+	}
+
 	/**
 	 * Set the currently selected image to the given image
 	 *
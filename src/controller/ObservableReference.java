@@ -1,6 +1,6 @@
 package controller;
 
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 /**
@@ -17,7 +17,8 @@ public class ObservableReference implements Observable<Reference> {
 	 */
 	public ObservableReference() {
 		reference = new Reference();
-		listeners = new HashSet<Listener<Reference>>();
+		// Listeners are notified in the order they were added
+		listeners = new LinkedHashSet<Listener<Reference>>();
 	}
 
 	/*
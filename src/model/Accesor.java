@@ -3,11 +3,26 @@ package model;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.List;
+import java.util.Map;
 
 public interface Accesor {
 
+	/**
+	 * The operations of an Accesor, for the accesors that time them, slow them
+	 * down or make them fail
+	 *
+	 */
+	public enum Operation {
+		EXISTS, REAL_PATH, MOVE, IS_DIRECTORY, READ, CREATE_DIRECTORY, WRITE, LIST, NEW_WATCH_SERVICE, WATCH, MAP,
+		READ_ATTRIBUTES, LIST_ATTRIBUTES
+	}
+
 	public boolean exists(Path path);
 
 	public Path toRealPath(Path path) throws IOException;
@@ -24,4 +39,26 @@ public interface Accesor {
 
 	public List<Path> getChildPaths(Path path) throws IOException;
 
+	/**
+	 * List the directory at the given path in one pass, returning every entry in
+	 * it with its attributes. Symbolic links are not followed, so a link is
+	 * returned with the attributes of the link itself
+	 *
+	 * @param path
+	 *            the given path
+	 * @return the path of every entry in the directory with its attributes, in
+	 *         listing order
+	 * @throws IOException
+	 *             on any problems listing the directory
+	 */
+	public Map<Path, BasicFileAttributes> getChildAttributes(Path path) throws IOException;
+
+	public WatchService newWatchService() throws IOException;
+
+	public WatchKey register(Path dir, WatchService watcher) throws IOException;
+
+	public ByteBuffer map(Path path) throws IOException;
+
+	public BasicFileAttributes readAttributes(Path path) throws IOException;
+
 }
@@ -0,0 +1,553 @@
+package model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the catalog of a ModelManager in a compact versioned binary format,
+ * which is read back by CatalogReader. Every string is stored once in a string
+ * table, models refer to each other by integer ids, and each snapshot only
+ * stores the fields that changed since the snapshot before it.
+ *
+ * <p>
+ * The format is the magic number and version, the strings, one record per
+ * model, the ids of the roots and of every tag ever added, the directories
+ * holding images with each tag, then tables of where
+ * each string and model record starts. It ends with a fixed size trailer
+ * locating those tables, so a reader can find any model without reading the
+ * ones before it. A model record holds its location (name, parent, tags and the
+ * file name of an image not named after its tags),
+ * then for a directory the length and ids of its contents, then its history.
+ *
+ */
+class CatalogFormat {
+
+	static final int MAGIC = 0x494f4354;
+	static final int VERSION = 4;
+	// The oldest version still read. Version 2 has no file names, and versions
+	// before 4 do not list the directories holding images with each tag
+	static final int OLDEST_VERSION = 2;
+	static final int TAGGED_VERSION = 4;
+	static final int TRAILER_SIZE = 20;
+
+	static final int DIRECTORY = 0;
+	static final int IMAGE = 1;
+	// An image whose file is not named after its tags, followed by its file name
+	static final int NAMED_IMAGE = 2;
+
+	// Flags for the fields of a snapshot that changed since the last one
+	static final int NAME = 1;
+	static final int PARENT = 2;
+	static final int PATH = 4;
+	static final int CONTENTS = 8;
+	static final int TAGS = 16;
+	static final int FILE_NAME = 32;
+
+	/**
+	 * Write the given catalog to the given stream
+	 *
+	 * @param roots
+	 *            the root directories of the catalog
+	 * @param tags
+	 *            every tag ever added to the catalog
+	 * @param out
+	 *            the given stream
+	 * @throws IOException
+	 *             on any problems writing to the stream
+	 */
+	static void write(Collection<DirectoryModel> roots, Collection<String> tags, DataOutputStream out)
+			throws IOException {
+		new CatalogFormat().encode(roots, tags, out);
+	}
+
+	private List<Model<?, ?>> models;
+	private IdentityHashMap<Model<?, ?>, Integer> ids;
+	private HashMap<String, Integer> stringIds;
+	private List<String> strings;
+
+	/**
+	 * Private!
+	 *
+	 */
+	private CatalogFormat() {
+		models = new ArrayList<>();
+		ids = new IdentityHashMap<>();
+		stringIds = new HashMap<>();
+		strings = new ArrayList<>();
+	}
+
+	/**
+	 * Write the given catalog to the given stream
+	 *
+	 * @param roots
+	 *            the root directories of the catalog
+	 * @param tags
+	 *            every tag ever added to the catalog
+	 * @param out
+	 *            the given stream
+	 * @throws IOException
+	 *             on any problems writing to the stream
+	 */
+	private void encode(Collection<DirectoryModel> roots, Collection<String> tags, DataOutputStream out)
+			throws IOException {
+		collect(roots, tags);
+
+		out.writeInt(MAGIC);
+		out.writeByte(VERSION);
+		int[] stringOffsets = new int[strings.size()];
+		for (int i = 0; i < strings.size(); i++) {
+			stringOffsets[i] = out.size();
+			byte[] bytes = strings.get(i).getBytes(StandardCharsets.UTF_8);
+			writeVarInt(out, bytes.length);
+			out.write(bytes);
+		}
+
+		int[] modelOffsets = new int[models.size()];
+		for (int i = 0; i < models.size(); i++) {
+			modelOffsets[i] = out.size();
+			Model<?, ?> model = models.get(i);
+			if (model instanceof DirectoryModel) {
+				DirectoryModel dir = (DirectoryModel) model;
+				out.writeByte(DIRECTORY);
+				writeVarInt(out, stringIds.get(dir.getName()));
+				writeRef(out, dir.getDirectory());
+				if (dir.getDirectory() == null) {
+					writeVarInt(out, stringIds.get(dir.getPath().toString()));
+				}
+
+				// The length lets a reader skip to the history without reading the contents
+				ByteArrayOutputStream contents = new ByteArrayOutputStream();
+				DataOutputStream contentsOut = new DataOutputStream(contents);
+				writeIds(contentsOut, dir.getSubdirectoriesView());
+				writeIds(contentsOut, dir.getImagesView());
+				writeVarInt(out, contents.size());
+				contents.writeTo(out);
+
+				writeDirectoryHistory(out, dir.getHistory());
+			} else {
+				ImageModel image = (ImageModel) model;
+				out.writeByte(image.isNormalized() ? IMAGE : NAMED_IMAGE);
+				writeVarInt(out, stringIds.get(image.getUntaggedName()));
+				writeVarInt(out, stringIds.get(image.getExtension()));
+				if (!image.isNormalized()) {
+					writeVarInt(out, stringIds.get(image.getFileName()));
+				}
+				writeRef(out, image.getDirectory());
+				writeStrings(out, image.getTags());
+				writeImageHistory(out, image.getHistory());
+			}
+		}
+
+		int rootsOffset = out.size();
+		writeIds(out, roots);
+		writeStrings(out, tags);
+		writeTagged(out, roots);
+
+		int stringTable = out.size();
+		for (int offset : stringOffsets) {
+			out.writeInt(offset);
+		}
+		int modelTable = out.size();
+		for (int offset : modelOffsets) {
+			out.writeInt(offset);
+		}
+		// DataOutputStream.size stops counting at Integer.MAX_VALUE
+		if (out.size() == Integer.MAX_VALUE)
+			throw new IOException("Catalog is too large");
+
+		out.writeInt(strings.size());
+		out.writeInt(stringTable);
+		out.writeInt(models.size());
+		out.writeInt(modelTable);
+		out.writeInt(rootsOffset);
+		out.flush();
+	}
+
+	/**
+	 * Assign ids to every model reachable from the given roots, including models
+	 * only referred to by snapshots, and to every string they use
+	 *
+	 * @param roots
+	 *            the given roots
+	 * @param tags
+	 *            every tag ever added to the catalog
+	 */
+	private void collect(Collection<DirectoryModel> roots, Collection<String> tags) {
+		for (DirectoryModel root : roots) {
+			addModel(root);
+		}
+		for (String tag : tags) {
+			addString(tag);
+		}
+
+		// Models are added to the end of the list as they are found
+		for (int i = 0; i < models.size(); i++) {
+			Model<?, ?> model = models.get(i);
+			if (model instanceof DirectoryModel) {
+				DirectoryModel dir = (DirectoryModel) model;
+				addString(dir.getName());
+				addModel(dir.getDirectory());
+				if (dir.getDirectory() == null) {
+					addString(dir.getPath().toString());
+				}
+				for (DirectoryModel subDir : dir.getSubdirectoriesView()) {
+					addModel(subDir);
+				}
+				for (ImageModel image : dir.getImagesView()) {
+					addModel(image);
+				}
+				for (DirectorySnapShot snap : dir.getHistory()) {
+					addString(snap.getName());
+					addModel(snap.getParent());
+					if (snap.getParent() == null) {
+						addString(snap.getPath().toString());
+					}
+					for (DirectoryModel subDir : snap.getSubdirectoryArray()) {
+						addModel(subDir);
+					}
+					for (ImageModel image : snap.getImageArray()) {
+						addModel(image);
+					}
+				}
+			} else {
+				ImageModel image = (ImageModel) model;
+				addString(image.getUntaggedName());
+				addString(image.getExtension());
+				if (!image.isNormalized()) {
+					addString(image.getFileName());
+				}
+				addModel(image.getDirectory());
+				for (String tag : image.getTags()) {
+					addString(tag);
+				}
+				for (ImageSnapShot snap : image.getHistory()) {
+					addString(snap.getUntaggedName());
+					addModel(snap.getDir());
+					for (String tag : snap.getTagArray()) {
+						addString(tag);
+					}
+					if (!snap.isNormalized()) {
+						addString(snap.getTaggedName());
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Give the given model an id if it does not have one
+	 *
+	 * @param model
+	 *            the given model, may be null
+	 */
+	private void addModel(Model<?, ?> model) {
+		if (model != null && !ids.containsKey(model)) {
+			ids.put(model, models.size());
+			models.add(model);
+		}
+	}
+
+	/**
+	 * Give the given string an id if it does not have one
+	 *
+	 * @param string
+	 *            the given string
+	 */
+	private void addString(String string) {
+		if (!stringIds.containsKey(string)) {
+			stringIds.put(string, strings.size());
+			strings.add(string);
+		}
+	}
+
+	/**
+	 * Write the snapshots of a directory, oldest first
+	 *
+	 * @param out
+	 *            the stream to write to
+	 * @param history
+	 *            the history of the directory
+	 * @throws IOException
+	 *             on any problems writing to the stream
+	 */
+	private void writeDirectoryHistory(DataOutputStream out,
+			History<DirectoryModel, DirectorySnapShot>.HistoryViewer history) throws IOException {
+		writeVarInt(out, history.getCount());
+		DirectorySnapShot last = null;
+		DirectoryModel[] lastSubdirectories = new DirectoryModel[0];
+		ImageModel[] lastImages = new ImageModel[0];
+		for (int rank = history.getCount() - 1; rank >= 0; rank--) {
+			DirectorySnapShot snap = history.getSnap(rank);
+			DirectoryModel[] subdirectories = snap.getSubdirectoryArray();
+			ImageModel[] images = snap.getImageArray();
+
+			int flags = 0;
+			if (last == null || !last.getName().equals(snap.getName()))
+				flags |= NAME;
+			if (last == null || last.getParent() != snap.getParent())
+				flags |= PARENT;
+			if (snap.getParent() == null && (last == null || !last.getPath().equals(snap.getPath())))
+				flags |= PATH;
+			if (!Arrays.equals(lastSubdirectories, subdirectories) || !Arrays.equals(lastImages, images))
+				flags |= CONTENTS;
+
+			writeTime(out, last == null ? snap.getTime() : snap.getTime() - last.getTime());
+			out.writeByte(flags);
+			if ((flags & NAME) != 0)
+				writeVarInt(out, stringIds.get(snap.getName()));
+			if ((flags & PARENT) != 0)
+				writeRef(out, snap.getParent());
+			if ((flags & PATH) != 0)
+				writeVarInt(out, stringIds.get(snap.getPath().toString()));
+			if ((flags & CONTENTS) != 0) {
+				writeDelta(out, lastSubdirectories, subdirectories);
+				writeDelta(out, lastImages, images);
+			}
+
+			last = snap;
+			lastSubdirectories = subdirectories;
+			lastImages = images;
+		}
+	}
+
+	/**
+	 * Write the snapshots of an image, oldest first
+	 *
+	 * @param out
+	 *            the stream to write to
+	 * @param history
+	 *            the history of the image
+	 * @throws IOException
+	 *             on any problems writing to the stream
+	 */
+	private void writeImageHistory(DataOutputStream out, History<ImageModel, ImageSnapShot>.HistoryViewer history)
+			throws IOException {
+		writeVarInt(out, history.getCount());
+		ImageSnapShot last = null;
+		for (int rank = history.getCount() - 1; rank >= 0; rank--) {
+			ImageSnapShot snap = history.getSnap(rank);
+
+			int flags = 0;
+			if (last == null || !last.getUntaggedName().equals(snap.getUntaggedName()))
+				flags |= NAME;
+			if (last == null || last.getDir() != snap.getDir())
+				flags |= PARENT;
+			if (last == null || !Arrays.equals(last.getTagArray(), snap.getTagArray()))
+				flags |= TAGS;
+			if (!snap.isNormalized())
+				flags |= FILE_NAME;
+
+			writeTime(out, last == null ? snap.getTime() : snap.getTime() - last.getTime());
+			out.writeByte(flags);
+			if ((flags & NAME) != 0)
+				writeVarInt(out, stringIds.get(snap.getUntaggedName()));
+			if ((flags & PARENT) != 0)
+				writeRef(out, snap.getDir());
+			if ((flags & TAGS) != 0)
+				writeStrings(out, Arrays.asList(snap.getTagArray()));
+			if ((flags & FILE_NAME) != 0)
+				writeVarInt(out, stringIds.get(snap.getTaggedName()));
+
+			last = snap;
+		}
+	}
+
+	/**
+	 * Write, for every tag of an image under the given roots, the ids of the
+	 * directories under them holding images with that tag
+	 *
+	 * @param out
+	 *            the stream to write to
+	 * @param roots
+	 *            the given roots
+	 * @throws IOException
+	 *             on any problems writing to the stream
+	 */
+	private void writeTagged(DataOutputStream out, Collection<DirectoryModel> roots) throws IOException {
+		LinkedHashMap<String, List<DirectoryModel>> tagged = new LinkedHashMap<>();
+		ArrayDeque<DirectoryModel> pending = new ArrayDeque<>(roots);
+		while (!pending.isEmpty()) {
+			DirectoryModel dir = pending.poll();
+			HashSet<String> dirTags = new HashSet<>();
+			for (ImageModel image : dir.getImagesView()) {
+				dirTags.addAll(image.getTags());
+			}
+			for (String tag : dirTags) {
+				tagged.computeIfAbsent(tag, key -> new ArrayList<>()).add(dir);
+			}
+			pending.addAll(dir.getSubdirectoriesView());
+		}
+
+		writeVarInt(out, tagged.size());
+		for (Map.Entry<String, List<DirectoryModel>> entry : tagged.entrySet()) {
+			writeVarInt(out, stringIds.get(entry.getKey()));
+			writeIds(out, entry.getValue());
+		}
+	}
+
+	/**
+	 * Write a reference to the given model
+	 *
+	 * @param out
+	 *            the stream to write to
+	 * @param model
+	 *            the given model, may be null
+	 * @throws IOException
+	 *             on any problems writing to the stream
+	 */
+	private void writeRef(DataOutputStream out, Model<?, ?> model) throws IOException {
+		writeVarInt(out, model == null ? 0 : ids.get(model) + 1);
+	}
+
+	/**
+	 * Write the ids of the given models
+	 *
+	 * @param out
+	 *            the stream to write to
+	 * @param models
+	 *            the given models
+	 * @throws IOException
+	 *             on any problems writing to the stream
+	 */
+	private void writeIds(DataOutputStream out, Collection<? extends Model<?, ?>> models) throws IOException {
+		writeVarInt(out, models.size());
+		for (Model<?, ?> model : models) {
+			writeVarInt(out, ids.get(model));
+		}
+	}
+
+	/**
+	 * Write the ids of the given strings
+	 *
+	 * @param out
+	 *            the stream to write to
+	 * @param values
+	 *            the given strings
+	 * @throws IOException
+	 *             on any problems writing to the stream
+	 */
+	private void writeStrings(DataOutputStream out, Collection<String> values) throws IOException {
+		writeVarInt(out, values.size());
+		for (String value : values) {
+			writeVarInt(out, stringIds.get(value));
+		}
+	}
+
+	/**
+	 * Write the positions of the models removed from the given contents and the
+	 * positions and ids of the models added to them. If the models that were kept
+	 * changed order, every id is written instead
+	 *
+	 * @param out
+	 *            the stream to write to
+	 * @param before
+	 *            the contents before
+	 * @param after
+	 *            the contents after
+	 * @throws IOException
+	 *             on any problems writing to the stream
+	 */
+	private void writeDelta(DataOutputStream out, Model<?, ?>[] before, Model<?, ?>[] after) throws IOException {
+		IdentityHashMap<Model<?, ?>, Boolean> beforeSet = new IdentityHashMap<>();
+		IdentityHashMap<Model<?, ?>, Boolean> afterSet = new IdentityHashMap<>();
+		for (Model<?, ?> model : before) {
+			beforeSet.put(model, true);
+		}
+		for (Model<?, ?> model : after) {
+			afterSet.put(model, true);
+		}
+
+		List<Integer> removed = new ArrayList<>();
+		List<Integer> added = new ArrayList<>();
+		int i = 0;
+		int j = 0;
+		while (i < before.length || j < after.length) {
+			if (i < before.length && !afterSet.containsKey(before[i])) {
+				removed.add(i++);
+			} else if (j < after.length && !beforeSet.containsKey(after[j])) {
+				added.add(j++);
+			} else if (i < before.length && j < after.length && before[i] == after[j]) {
+				i++;
+				j++;
+			} else {
+				// 0 marks a full list, since a delta starts with the removed count plus one
+				writeVarInt(out, 0);
+				writeVarInt(out, after.length);
+				for (Model<?, ?> model : after) {
+					writeVarInt(out, ids.get(model));
+				}
+				return;
+			}
+		}
+
+		writeVarInt(out, removed.size() + 1);
+		for (int position : removed) {
+			writeVarInt(out, position);
+		}
+		writeVarInt(out, added.size());
+		for (int position : added) {
+			writeVarInt(out, position);
+			writeVarInt(out, ids.get(after[position]));
+		}
+	}
+
+	/**
+	 * Write a non-negative int using 7 bits per byte
+	 *
+	 * @param out
+	 *            the stream to write to
+	 * @param value
+	 *            the given int
+	 * @throws IOException
+	 *             on any problems writing to the stream
+	 */
+	private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+		writeVarLong(out, value);
+	}
+
+	/**
+	 * Write a long using 7 bits per byte, treating it as unsigned
+	 *
+	 * @param out
+	 *            the stream to write to
+	 * @param value
+	 *            the given long
+	 * @throws IOException
+	 *             on any problems writing to the stream
+	 */
+	private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	/**
+	 * Write a time or a difference between times, which may be negative if the
+	 * clock was turned back
+	 *
+	 * @param out
+	 *            the stream to write to
+	 * @param value
+	 *            the given time
+	 * @throws IOException
+	 *             on any problems writing to the stream
+	 */
+	private static void writeTime(DataOutputStream out, long value) throws IOException {
+		// Zigzag encoding keeps small negative values small
+		writeVarLong(out, (value << 1) ^ (value >> 63));
+	}
+}
@@ -0,0 +1,657 @@
+package model;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Reads a catalog written by CatalogFormat from a buffer, usually a memory
+ * mapped file, one model at a time. A model is only created the first time it
+ * is asked for, and the contents and history of each model are only decoded
+ * the first time they are needed, so opening a catalog costs the same no matter
+ * how large it is.
+ *
+ * <p>
+ * Models created by this reader keep a reference to it until everything about
+ * them has been decoded. The buffer must not change while it is in use, so the
+ * catalog file must not be overwritten until loadAll has been called.
+ *
+ */
+class CatalogReader {
+
+	private final ByteBuffer buffer;
+	private final int stringCount;
+	private final int stringTable;
+	private final int modelCount;
+	private final int modelTable;
+	private final int rootsOffset;
+	private final String[] strings;
+	private final Model<?, ?>[] models;
+	private final boolean[] creating;
+	// Where the directories holding images with each tag are listed, read the
+	// first time they are asked for
+	private Map<String, Integer> tagged;
+
+	/**
+	 * Open the catalog in the given buffer. Only the header and trailer are read
+	 *
+	 * @param buffer
+	 *            the given buffer, from its position to its limit
+	 * @throws IOException
+	 *             if the buffer does not hold a catalog this version can read
+	 */
+	CatalogReader(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer.slice();
+		int size = this.buffer.limit();
+		if (size < 5 + CatalogFormat.TRAILER_SIZE || this.buffer.getInt(0) != CatalogFormat.MAGIC)
+			throw new StreamCorruptedException("Not a catalog");
+		if (this.buffer.get(4) < CatalogFormat.OLDEST_VERSION || this.buffer.get(4) > CatalogFormat.VERSION)
+			throw new StreamCorruptedException("Unsupported catalog version " + this.buffer.get(4));
+
+		int trailer = size - CatalogFormat.TRAILER_SIZE;
+		stringCount = this.buffer.getInt(trailer);
+		stringTable = this.buffer.getInt(trailer + 4);
+		modelCount = this.buffer.getInt(trailer + 8);
+		modelTable = this.buffer.getInt(trailer + 12);
+		rootsOffset = this.buffer.getInt(trailer + 16);
+		if (stringCount < 0 || modelCount < 0 || rootsOffset < 5 || rootsOffset > stringTable
+				|| stringTable + 4L * stringCount != modelTable || modelTable + 4L * modelCount != trailer)
+			throw new StreamCorruptedException("Bad catalog trailer");
+
+		strings = new String[stringCount];
+		models = new Model<?, ?>[modelCount];
+		creating = new boolean[modelCount];
+	}
+
+	/**
+	 * Return the root directories of the catalog. Only the roots themselves are
+	 * created
+	 *
+	 * @return the root directories of the catalog
+	 * @throws IOException
+	 *             if the catalog is damaged
+	 */
+	synchronized List<DirectoryModel> getRoots() throws IOException {
+		try {
+			ByteBuffer in = at(rootsOffset);
+			int count = readVarInt(in);
+			List<DirectoryModel> roots = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				roots.add(getDirectory(readVarInt(in)));
+			}
+			return roots;
+		} catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+			throw corrupt(e);
+		}
+	}
+
+	/**
+	 * Return every tag ever added to the catalog
+	 *
+	 * @return every tag ever added to the catalog
+	 * @throws IOException
+	 *             if the catalog is damaged
+	 */
+	synchronized List<String> getTags() throws IOException {
+		try {
+			ByteBuffer in = at(rootsOffset);
+			for (int i = readVarInt(in); i > 0; i--) {
+				readVarInt(in);
+			}
+			return readStrings(in);
+		} catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+			throw corrupt(e);
+		}
+	}
+
+	/**
+	 * Return the directories holding images with the given tag when the catalog
+	 * was saved. Only they and their ancestors are created
+	 *
+	 * @param tag
+	 *            the given tag
+	 * @return the directories holding images with the given tag, or null if the
+	 *         catalog is too old to list them
+	 * @throws IOException
+	 *             if the catalog is damaged
+	 */
+	synchronized List<DirectoryModel> getDirectoriesWithTag(String tag) throws IOException {
+		if (buffer.get(4) < CatalogFormat.TAGGED_VERSION)
+			return null;
+		try {
+			if (tagged == null) {
+				ByteBuffer in = at(rootsOffset);
+				for (int i = readVarInt(in); i > 0; i--) {
+					readVarInt(in);
+				}
+				for (int i = readVarInt(in); i > 0; i--) {
+					readVarInt(in);
+				}
+				Map<String, Integer> offsets = new HashMap<>();
+				for (int i = readVarInt(in); i > 0; i--) {
+					offsets.put(readString(in), in.position());
+					for (int j = readVarInt(in); j > 0; j--) {
+						readVarInt(in);
+					}
+				}
+				tagged = offsets;
+			}
+			Integer offset = tagged.get(tag);
+			return offset == null ? Collections.emptyList() : readModels(at(offset), DirectoryModel.class);
+		} catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+			throw corrupt(e);
+		}
+	}
+
+	/**
+	 * Decode every model in the catalog, so the buffer is no longer needed.
+	 * Directories reachable from the roots are read first, from the top down, so
+	 * each is indexed before its contents are read
+	 *
+	 * @throws IOException
+	 *             if the catalog is damaged
+	 */
+	synchronized void loadAll() throws IOException {
+		try {
+			ArrayDeque<DirectoryModel> pending = new ArrayDeque<>(getRoots());
+			while (!pending.isEmpty()) {
+				DirectoryModel dir = pending.poll();
+				dir.decode();
+				pending.addAll(dir.getSubdirectoriesView());
+			}
+			for (int id = 0; id < modelCount; id++) {
+				Model<?, ?> model = getModel(id);
+				if (model instanceof DirectoryModel) {
+					((DirectoryModel) model).decode();
+				} else {
+					((ImageModel) model).decode();
+				}
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+			throw corrupt(e);
+		}
+	}
+
+	/**
+	 * Add the contents of the directory with the given id to the given collections
+	 *
+	 * @param id
+	 *            the id of the directory
+	 * @param subdirectories
+	 *            the collection to add the subdirectories to
+	 * @param images
+	 *            the collection to add the images to
+	 * @throws UncheckedIOException
+	 *             if the catalog is damaged
+	 */
+	synchronized void readContents(int id, Collection<DirectoryModel> subdirectories, Collection<ImageModel> images) {
+		try {
+			ByteBuffer in = skipLocation(id);
+			readVarInt(in);
+			subdirectories.addAll(readModels(in, DirectoryModel.class));
+			images.addAll(readModels(in, ImageModel.class));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+			throw new UncheckedIOException(corrupt(e));
+		}
+	}
+
+	/**
+	 * Return the history of the given directory
+	 *
+	 * @param dir
+	 *            the given directory
+	 * @param id
+	 *            the id of the given directory
+	 * @return the history of the given directory
+	 * @throws UncheckedIOException
+	 *             if the catalog is damaged
+	 */
+	synchronized History<DirectoryModel, DirectorySnapShot> readHistory(DirectoryModel dir, int id) {
+		try {
+			ByteBuffer in = skipLocation(id);
+			int contentsLength = readVarInt(in);
+			in.position(in.position() + contentsLength);
+			return readDirectoryHistory(in, dir);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+			throw new UncheckedIOException(corrupt(e));
+		}
+	}
+
+	/**
+	 * Return the history of the given image
+	 *
+	 * @param image
+	 *            the given image
+	 * @param id
+	 *            the id of the given image
+	 * @return the history of the given image
+	 * @throws UncheckedIOException
+	 *             if the catalog is damaged
+	 */
+	synchronized History<ImageModel, ImageSnapShot> readHistory(ImageModel image, int id) {
+		try {
+			return readImageHistory(skipLocation(id), image);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+			throw new UncheckedIOException(corrupt(e));
+		}
+	}
+
+	/**
+	 * Return the model with the given id, creating it from its location if it has
+	 * not been created yet. Its directory is created first
+	 *
+	 * @param id
+	 *            the given id
+	 * @return the model with the given id
+	 * @throws IOException
+	 *             if the catalog is damaged
+	 */
+	private Model<?, ?> getModel(int id) throws IOException {
+		if (id < 0 || id >= modelCount)
+			throw new StreamCorruptedException("Bad model reference " + id);
+		if (models[id] == null) {
+			if (creating[id])
+				throw new StreamCorruptedException("Directory is its own ancestor");
+			creating[id] = true;
+
+			ByteBuffer in = at(buffer.getInt(modelTable + 4 * id));
+			int kind = in.get();
+			if (kind == CatalogFormat.DIRECTORY) {
+				String name = readString(in);
+				int parentId = readVarInt(in) - 1;
+				DirectoryModel parent = parentId < 0 ? null : getDirectory(parentId);
+				// A directory is placed under the current path of its parent, which may
+				// have moved since the catalog was saved
+				Path path = parent == null ? Paths.get(readString(in)) : parent.getPath().resolve(name);
+				DirectoryModel dir = new DirectoryModel(name);
+				dir.restore(path, parent, this, id);
+				models[id] = dir;
+			} else if (kind == CatalogFormat.IMAGE || kind == CatalogFormat.NAMED_IMAGE) {
+				String untaggedName = readString(in);
+				String extension = readString(in);
+				String fileName = kind == CatalogFormat.NAMED_IMAGE ? readString(in) : null;
+				DirectoryModel dir = getDirectory(readVarInt(in) - 1);
+				ImageModel image = new ImageModel(untaggedName, extension, readStrings(in), fileName);
+				image.restore(dir, this, id);
+				models[id] = image;
+			} else {
+				throw new StreamCorruptedException("Unknown model kind " + kind);
+			}
+			creating[id] = false;
+		}
+		return models[id];
+	}
+
+	/**
+	 * Return the directory with the given id
+	 *
+	 * @param id
+	 *            the given id
+	 * @return the directory with the given id
+	 * @throws IOException
+	 *             if the id does not refer to a directory
+	 */
+	private DirectoryModel getDirectory(int id) throws IOException {
+		return getModel(id, DirectoryModel.class);
+	}
+
+	/**
+	 * Return the model with the given id
+	 *
+	 * @param id
+	 *            the given id
+	 * @param type
+	 *            the expected type of the model
+	 * @return the model with the given id
+	 * @throws IOException
+	 *             if the id does not refer to a model of the given type
+	 */
+	private <M> M getModel(int id, Class<M> type) throws IOException {
+		Model<?, ?> model = getModel(id);
+		if (!type.isInstance(model))
+			throw new StreamCorruptedException("Bad model reference " + id);
+		return type.cast(model);
+	}
+
+	/**
+	 * Return a buffer positioned after the location in the record of the model
+	 * with the given id
+	 *
+	 * @param id
+	 *            the given id
+	 * @return a buffer positioned after the location of the model
+	 * @throws IOException
+	 *             if the catalog is damaged
+	 */
+	private ByteBuffer skipLocation(int id) throws IOException {
+		if (id < 0 || id >= modelCount)
+			throw new StreamCorruptedException("Bad model reference " + id);
+		ByteBuffer in = at(buffer.getInt(modelTable + 4 * id));
+		int kind = in.get();
+		readVarInt(in);
+		if (kind == CatalogFormat.DIRECTORY) {
+			if (readVarInt(in) == 0) {
+				readVarInt(in);
+			}
+		} else {
+			readVarInt(in);
+			if (kind == CatalogFormat.NAMED_IMAGE) {
+				readVarInt(in);
+			}
+			readVarInt(in);
+			for (int i = readVarInt(in); i > 0; i--) {
+				readVarInt(in);
+			}
+		}
+		return in;
+	}
+
+	/**
+	 * Read the snapshots of the given directory
+	 *
+	 * @param in
+	 *            the buffer to read from
+	 * @param dir
+	 *            the given directory
+	 * @return the history of the given directory
+	 * @throws IOException
+	 *             if the catalog is damaged
+	 */
+	private History<DirectoryModel, DirectorySnapShot> readDirectoryHistory(ByteBuffer in, DirectoryModel dir)
+			throws IOException {
+		int count = readVarInt(in);
+		List<DirectorySnapShot> snaps = new ArrayList<>(count);
+		DirectorySnapShot last = null;
+		long time = 0;
+		String name = null;
+		DirectoryModel parent = null;
+		String path = null;
+		DirectoryModel[] subdirectories = new DirectoryModel[0];
+		ImageModel[] images = new ImageModel[0];
+		for (int i = 0; i < count; i++) {
+			time += readTime(in);
+			int flags = in.get();
+			if ((flags & CatalogFormat.NAME) != 0)
+				name = readString(in);
+			if ((flags & CatalogFormat.PARENT) != 0) {
+				int parentId = readVarInt(in) - 1;
+				parent = parentId < 0 ? null : getDirectory(parentId);
+			}
+			if ((flags & CatalogFormat.PATH) != 0)
+				path = readString(in);
+			DirectorySnapShot.Changes changes = new DirectorySnapShot.Changes();
+			if ((flags & CatalogFormat.CONTENTS) != 0) {
+				subdirectories = readDelta(in, subdirectories, DirectoryModel.class, changes::remove, changes::add)
+						.toArray(new DirectoryModel[0]);
+				images = readDelta(in, images, ImageModel.class, changes::remove, changes::add)
+						.toArray(new ImageModel[0]);
+			}
+			if (name == null || (parent == null && path == null))
+				throw new StreamCorruptedException("Incomplete snapshot");
+			String snapPath = parent == null ? path : parent.getPath().resolve(name).toString();
+			last = new DirectorySnapShot(dir, last, time, snapPath, name, parent, changes, subdirectories, images);
+			snaps.add(last);
+		}
+		if (snaps.isEmpty())
+			throw new StreamCorruptedException("Empty history");
+		return new History<>(dir, new DirectorySnapShot.DirectorySnapShotFactory(), snaps);
+	}
+
+	/**
+	 * Read the snapshots of the given image
+	 *
+	 * @param in
+	 *            the buffer to read from
+	 * @param image
+	 *            the given image
+	 * @return the history of the given image
+	 * @throws IOException
+	 *             if the catalog is damaged
+	 */
+	private History<ImageModel, ImageSnapShot> readImageHistory(ByteBuffer in, ImageModel image) throws IOException {
+		int count = readVarInt(in);
+		List<ImageSnapShot> snaps = new ArrayList<>(count);
+		ImageSnapShot last = null;
+		long time = 0;
+		String untaggedName = null;
+		DirectoryModel dir = null;
+		String[] tags = new String[0];
+		for (int i = 0; i < count; i++) {
+			time += readTime(in);
+			int flags = in.get();
+			if ((flags & CatalogFormat.NAME) != 0)
+				untaggedName = readString(in);
+			if ((flags & CatalogFormat.PARENT) != 0)
+				dir = getDirectory(readVarInt(in) - 1);
+			if ((flags & CatalogFormat.TAGS) != 0)
+				tags = readStrings(in).toArray(new String[0]);
+			String taggedName = (flags & CatalogFormat.FILE_NAME) != 0 ? readString(in) : null;
+			if (untaggedName == null || dir == null)
+				throw new StreamCorruptedException("Incomplete snapshot");
+			last = new ImageSnapShot(image, last, time, dir, untaggedName, tags, taggedName);
+			snaps.add(last);
+		}
+		if (snaps.isEmpty())
+			throw new StreamCorruptedException("Empty history");
+		return new History<>(image, new ImageSnapShot.ImageSnapShotFactory(), snaps);
+	}
+
+	/**
+	 * Read the contents written by CatalogFormat.writeDelta, passing every model
+	 * removed and added on to the given consumers
+	 *
+	 * @param in
+	 *            the buffer to read from
+	 * @param before
+	 *            the contents before
+	 * @param type
+	 *            the type of the models in the contents
+	 * @param removedModels
+	 *            the consumer of the models removed
+	 * @param addedModels
+	 *            the consumer of the models added
+	 * @return the contents after
+	 * @throws IOException
+	 *             if the catalog is damaged
+	 */
+	private <M> List<M> readDelta(ByteBuffer in, M[] before, Class<M> type, Consumer<M> removedModels,
+			Consumer<M> addedModels) throws IOException {
+		int removedCount = readVarInt(in) - 1;
+		if (removedCount < 0) {
+			// A full list replaces everything before it
+			List<M> after = readModels(in, type);
+			for (M model : before) {
+				removedModels.accept(model);
+			}
+			after.forEach(addedModels);
+			return after;
+		}
+
+		List<M> after = new ArrayList<>(Arrays.asList(before));
+		int[] removed = new int[removedCount];
+		for (int k = 0; k < removedCount; k++) {
+			removed[k] = readVarInt(in);
+		}
+		// Positions are increasing, so remove from the end to keep them valid
+		for (int k = removedCount - 1; k >= 0; k--) {
+			if (removed[k] >= after.size())
+				throw new StreamCorruptedException("Bad snapshot delta");
+			removedModels.accept(after.remove(removed[k]));
+		}
+		int addedCount = readVarInt(in);
+		for (int k = 0; k < addedCount; k++) {
+			int position = readVarInt(in);
+			if (position > after.size())
+				throw new StreamCorruptedException("Bad snapshot delta");
+			M model = getModel(readVarInt(in), type);
+			after.add(position, model);
+			addedModels.accept(model);
+		}
+		return after;
+	}
+
+	/**
+	 * Read a list of model ids and return the models
+	 *
+	 * @param in
+	 *            the buffer to read from
+	 * @param type
+	 *            the expected type of the models
+	 * @return the models
+	 * @throws IOException
+	 *             if the catalog is damaged
+	 */
+	private <M> List<M> readModels(ByteBuffer in, Class<M> type) throws IOException {
+		int count = readVarInt(in);
+		List<M> result = new ArrayList<>(Math.min(count, modelCount));
+		for (int i = 0; i < count; i++) {
+			result.add(getModel(readVarInt(in), type));
+		}
+		return result;
+	}
+
+	/**
+	 * Read a string id and return the string
+	 *
+	 * @param in
+	 *            the buffer to read from
+	 * @return the string
+	 * @throws IOException
+	 *             if the catalog is damaged
+	 */
+	private String readString(ByteBuffer in) throws IOException {
+		int id = readVarInt(in);
+		if (id >= stringCount)
+			throw new StreamCorruptedException("Bad string reference " + id);
+		if (strings[id] == null) {
+			ByteBuffer string = at(buffer.getInt(stringTable + 4 * id));
+			int length = readVarInt(string);
+			byte[] bytes = new byte[length];
+			string.get(bytes);
+			strings[id] = new String(bytes, StandardCharsets.UTF_8);
+		}
+		return strings[id];
+	}
+
+	/**
+	 * Read a list of string ids and return the strings
+	 *
+	 * @param in
+	 *            the buffer to read from
+	 * @return the strings
+	 * @throws IOException
+	 *             if the catalog is damaged
+	 */
+	private List<String> readStrings(ByteBuffer in) throws IOException {
+		int count = readVarInt(in);
+		List<String> result = new ArrayList<>(Math.min(count, stringCount));
+		for (int i = 0; i < count; i++) {
+			result.add(readString(in));
+		}
+		return result;
+	}
+
+	/**
+	 * Return a view of the buffer positioned at the given offset
+	 *
+	 * @param offset
+	 *            the given offset
+	 * @return a view of the buffer positioned at the given offset
+	 * @throws IOException
+	 *             if the offset is outside of the catalog
+	 */
+	private ByteBuffer at(int offset) throws IOException {
+		if (offset < 0 || offset >= buffer.limit())
+			throw new StreamCorruptedException("Bad offset " + offset);
+		ByteBuffer view = buffer.duplicate();
+		view.position(offset);
+		return view;
+	}
+
+	/**
+	 * Return an exception reporting that the catalog is damaged
+	 *
+	 * @param cause
+	 *            what went wrong while reading it
+	 * @return an exception reporting that the catalog is damaged
+	 */
+	private static IOException corrupt(RuntimeException cause) {
+		IOException e = new StreamCorruptedException("Truncated catalog");
+		e.initCause(cause);
+		return e;
+	}
+
+	/**
+	 * Read a non-negative int written by CatalogFormat.writeVarInt
+	 *
+	 * @param in
+	 *            the buffer to read from
+	 * @return the int
+	 * @throws IOException
+	 *             if the catalog is damaged
+	 */
+	private static int readVarInt(ByteBuffer in) throws IOException {
+		long value = readVarLong(in);
+		if (value > Integer.MAX_VALUE)
+			throw new StreamCorruptedException("Bad int " + value);
+		return (int) value;
+	}
+
+	/**
+	 * Read a long written by CatalogFormat.writeVarLong
+	 *
+	 * @param in
+	 *            the buffer to read from
+	 * @return the long
+	 * @throws IOException
+	 *             if the catalog is damaged
+	 */
+	private static long readVarLong(ByteBuffer in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.get() & 0xFF;
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new StreamCorruptedException("Bad varint");
+	}
+
+	/**
+	 * Read a time or a difference between times written by
+	 * CatalogFormat.writeTime
+	 *
+	 * @param in
+	 *            the buffer to read from
+	 * @return the time
+	 * @throws IOException
+	 *             if the catalog is damaged
+	 */
+	private static long readTime(ByteBuffer in) throws IOException {
+		long value = readVarLong(in);
+		return (value >>> 1) ^ -(value & 1);
+	}
+}
@@ -0,0 +1,367 @@
+package model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Watches every directory in the ModelManager and applies changes made to them
+ * outside of this application to the models, without rescanning the tree.
+ * Events are collected on a background thread and debounced into batches,
+ * which are then applied on the given executor so they never run concurrently
+ * with other changes to the model
+ *
+ */
+public class CatalogWatcher implements Closeable {
+
+	/**
+	 * A change to an entry of a watched directory
+	 *
+	 */
+	private static class Change {
+		private final DirectoryModel dir;
+		private final WatchEvent.Kind<?> kind;
+		private final Path name;
+
+		private Change(DirectoryModel dir, WatchEvent.Kind<?> kind, Path name) {
+			this.dir = dir;
+			this.kind = kind;
+			this.name = name;
+		}
+	}
+
+	public static final long DEFAULT_DEBOUNCE = 250;
+	private static final int MAX_DEBOUNCES = 20;
+	private static final Logger LOGGER = Logger.getLogger(CatalogWatcher.class.getName());
+	static {
+		LOGGER.setLevel(Level.OFF);
+	}
+
+	private final WatchService service;
+	private final ConcurrentHashMap<WatchKey, DirectoryModel> keys;
+	private final Executor executor;
+	private final Runnable onChange;
+	private final long debounce;
+	private Thread thread;
+
+	/**
+	 * Create a CatalogWatcher that applies batches of changes on the given executor
+	 * and runs the given callback after each batch
+	 *
+	 * @param executor
+	 *            the executor used to apply changes to the model
+	 * @param onChange
+	 *            run on the executor after each batch of changes is applied
+	 * @param debounce
+	 *            how long to wait in milliseconds for more events before applying
+	 *            a batch
+	 * @throws IOException
+	 *             on any problems creating the watch service
+	 */
+	public CatalogWatcher(Executor executor, Runnable onChange, long debounce) throws IOException {
+		this.service = ModelManager.instance.getAccesor().newWatchService();
+		this.keys = new ConcurrentHashMap<>();
+		this.executor = executor;
+		this.onChange = onChange;
+		this.debounce = debounce;
+	}
+
+	/**
+	 * Register every directory in the ModelManager, watch directories added to it
+	 * from now on and start listening for changes
+	 *
+	 */
+	public void start() {
+		ModelManager.instance.setWatcher(this);
+		for (DirectoryModel root : ModelManager.instance.getRoots()) {
+			registerAll(root);
+		}
+		thread = new Thread(this::run, "CatalogWatcher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Watch the given directory for created, deleted and renamed entries
+	 *
+	 * @param dir
+	 *            the given directory
+	 */
+	void register(DirectoryModel dir) {
+		try {
+			WatchKey key = ModelManager.instance.getAccesor().register(dir.getPath(), service);
+			keys.put(key, dir);
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, e.toString(), e);
+		}
+	}
+
+	/**
+	 * Watch the given directory and every directory under it that has been read.
+	 * Directories still in a mapped catalog are registered as they are read
+	 *
+	 * @param dir
+	 *            the given directory
+	 */
+	private void registerAll(DirectoryModel dir) {
+		register(dir);
+		for (DirectoryModel subDir : dir.getLoadedSubdirectories()) {
+			registerAll(subDir);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		if (ModelManager.instance.getWatcher() == this) {
+			ModelManager.instance.setWatcher(null);
+		}
+		service.close();
+	}
+
+	/**
+	 * Collect events into batches until the watch service is closed
+	 *
+	 */
+	private void run() {
+		try {
+			while (true) {
+				List<Change> batch = new ArrayList<>();
+				collect(service.take(), batch);
+
+				// Keep collecting until the directories have been quiet for a while
+				WatchKey key;
+				int debounces = 0;
+				while (debounces++ < MAX_DEBOUNCES && (key = service.poll(debounce, TimeUnit.MILLISECONDS)) != null) {
+					collect(key, batch);
+				}
+				executor.execute(() -> {
+					apply(batch);
+					onChange.run();
+				});
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			LOGGER.log(Level.FINE, "Stopped watching");
+		}
+	}
+
+	/**
+	 * Add the pending events of the given key to the given batch
+	 *
+	 * @param key
+	 *            the given key
+	 * @param batch
+	 *            the given batch
+	 */
+	private void collect(WatchKey key, List<Change> batch) {
+		DirectoryModel dir = keys.get(key);
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (dir != null) {
+				batch.add(new Change(dir, event.kind(), (Path) event.context()));
+			}
+		}
+		if (!key.reset()) {
+			keys.remove(key);
+		}
+	}
+
+	/**
+	 * Apply the given batch of changes to the model. A deletion and a creation of
+	 * the same kind of entry with the same name, or in the same directory, are
+	 * treated as a move or rename so the model keeps its history
+	 *
+	 * @param batch
+	 *            the given batch
+	 */
+	private void apply(List<Change> batch) {
+		ModelManager manager = ModelManager.instance;
+		Accesor accesor = manager.getAccesor();
+		ModelIndex index = manager.getIndex();
+		Set<DirectoryModel> overflowed = new LinkedHashSet<>();
+		Set<Model<?, ?>> deleted = new LinkedHashSet<>();
+		Set<Path> created = new LinkedHashSet<>();
+
+		for (Change change : batch) {
+			if (change.kind == StandardWatchEventKinds.OVERFLOW) {
+				overflowed.add(change.dir);
+				continue;
+			}
+			Path path = change.dir.getPath().resolve(change.name);
+			Model<?, ?> model = index.get(path);
+			if (change.kind == StandardWatchEventKinds.ENTRY_DELETE) {
+				if (model != null && !accesor.exists(path)) {
+					deleted.add(model);
+				}
+			} else if (change.kind == StandardWatchEventKinds.ENTRY_CREATE) {
+				if (model == null) {
+					created.add(path);
+				}
+			}
+		}
+
+		for (Path path : created) {
+			// Entries under a new directory are catalogued when it is scanned
+			if (index.get(path) != null || !accesor.exists(path)) {
+				continue;
+			}
+			boolean directory = accesor.isDirectory(path);
+			Model<?, ?> source = findSource(deleted, path, directory);
+			try {
+				if (source != null) {
+					deleted.remove(source);
+					relocate(source, path);
+				} else if (directory) {
+					manager.addDir(path);
+				} else if (ImageModel.isImage(path)) {
+					new ImageModel(path, manager.getDir(path.getParent()));
+				}
+			} catch (IOException | RuntimeException e) {
+				LOGGER.log(Level.WARNING, e.toString(), e);
+			}
+		}
+
+		for (Model<?, ?> model : deleted) {
+			manager.forget(model);
+		}
+
+		for (DirectoryModel dir : overflowed) {
+			reconcile(dir);
+		}
+	}
+
+	/**
+	 * Return the deleted model that the entry created at the given path was most
+	 * likely moved from, or null if there is none. An entry with the same name is
+	 * preferred, then an image in the same directory with the same untagged name,
+	 * then the only entry of the same kind deleted from the same directory
+	 *
+	 * @param deleted
+	 *            the models deleted in this batch
+	 * @param path
+	 *            the path of the created entry
+	 * @param directory
+	 *            whether the created entry is a directory
+	 * @return the model the created entry was moved from
+	 */
+	private Model<?, ?> findSource(Set<Model<?, ?>> deleted, Path path, boolean directory) {
+		String untaggedName = directory ? null : untaggedName(path);
+		Model<?, ?> sibling = null;
+		int siblings = 0;
+		for (Model<?, ?> model : deleted) {
+			if ((model instanceof DirectoryModel) != directory) {
+				continue;
+			}
+			if (model.getPath().getFileName().equals(path.getFileName())) {
+				return model;
+			}
+			if (model.getDirectoryPath().equals(path.getParent())) {
+				if (untaggedName != null && untaggedName.equals(((ImageModel) model).getUntaggedName())) {
+					return model;
+				}
+				sibling = model;
+				siblings++;
+			}
+		}
+		return siblings == 1 ? sibling : null;
+	}
+
+	/**
+	 * Return the untagged name of the image file at the given path, or null if it
+	 * does not have one
+	 *
+	 * @param path
+	 *            the given path
+	 * @return the untagged name of the image file at the given path
+	 */
+	private static String untaggedName(Path path) {
+		String fullName = path.getFileName().toString();
+		int dot = fullName.lastIndexOf('.');
+		try {
+			return ImageModel.getUntaggedName(dot < 0 ? fullName : fullName.substring(0, dot));
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Update the given model to match its entry being moved to the given path. If
+	 * the model cannot follow the move, it is replaced by a new one
+	 *
+	 * @param model
+	 *            the given model
+	 * @param path
+	 *            the path the entry was moved to
+	 * @throws IOException
+	 *             on any problems accessing the given path
+	 */
+	private void relocate(Model<?, ?> model, Path path) throws IOException {
+		ModelManager manager = ModelManager.instance;
+		try {
+			if (model instanceof ImageModel) {
+				((ImageModel) model).relocated(path);
+			} else {
+				((DirectoryModel) model).relocated(path);
+			}
+		} catch (IOException | IllegalArgumentException e) {
+			manager.forget(model);
+			if (model instanceof ImageModel) {
+				new ImageModel(path, manager.getDir(path.getParent()));
+			} else {
+				manager.addDir(path);
+			}
+		}
+	}
+
+	/**
+	 * Bring the entries directly under the given directory up to date after events
+	 * for it were lost, by listing only that directory
+	 *
+	 * @param dir
+	 *            the given directory
+	 */
+	private void reconcile(DirectoryModel dir) {
+		ModelManager manager = ModelManager.instance;
+		Accesor accesor = manager.getAccesor();
+		try {
+			Set<Path> onDisk = new LinkedHashSet<>(accesor.getChildPaths(dir.getPath()));
+			for (Iterator<Model<?, ?>> i = dir.getContents().iterator(); i.hasNext();) {
+				Model<?, ?> model = i.next();
+				if (!onDisk.remove(model.getPath())) {
+					manager.forget(model);
+				}
+			}
+			for (Path path : onDisk) {
+				try {
+					if (accesor.isDirectory(path)) {
+						manager.addDir(path);
+					} else if (ImageModel.isImage(path)) {
+						new ImageModel(path, dir);
+					}
+				} catch (IOException | RuntimeException e) {
+					LOGGER.log(Level.WARNING, e.toString(), e);
+				}
+			}
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, e.toString(), e);
+		}
+	}
+}
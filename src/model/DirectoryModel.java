@@ -6,8 +6,16 @@ import java.nio.file.NoSuchFileException;
 import java.nio.file.NotDirectoryException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -30,6 +38,19 @@ public class DirectoryModel implements Model<DirectoryModel, DirectorySnapShot>,
 
 	private History<DirectoryModel, DirectorySnapShot> history;
 
+	// Derived from the fields above, and rebuilt when they change
+	private transient Path cachedPath;
+	private transient Path sortKey;
+
+	// The catalog this directory was restored from, while its contents or history
+	// have not been read from it yet
+	private transient CatalogReader catalog;
+	private transient int catalogId;
+	private transient boolean contentsPending;
+
+	// The children added and removed since the last snapshot was taken
+	private transient DirectorySnapShot.Changes changes;
+
 	/**
 	 * Create a DirectoryModel for an existing directory
 	 * 
@@ -42,27 +63,199 @@ public class DirectoryModel implements Model<DirectoryModel, DirectorySnapShot>,
 	protected DirectoryModel(Path path) throws IOException {
 		LOGGER.log(Level.FINE, "Create object {0}", path.getFileName());
 
-		if (!ModelManager.instance.getAccesor().exists(path))
+		if (!ModelManager.instance.exists(path))
 			throw new NoSuchFileException(path.toString());
 
-		if (!ModelManager.instance.getAccesor().isDirectory(path))
+		if (!ModelManager.instance.isDirectory(path))
 			throw new NotDirectoryException(path.toString());
 
-		path = ModelManager.instance.getAccesor().toRealPath(path);
+		path = ModelManager.instance.toRealPath(path);
 
-		this.path = path.toString();
+		setPath(path);
 		this.name = path.getFileName().toString();
 		this.parent = ModelManager.instance.getDir(path.getParent());
 		this.subdirectories = new TreeSet<DirectoryModel>();
 		this.images = new TreeSet<ImageModel>();
 		this.history = new History<DirectoryModel, DirectorySnapShot>(this,
 				new DirectorySnapShot.DirectorySnapShotFactory());
+		ModelManager.instance.getIndex().put(this);
+		ModelManager.instance.watch(this);
 		if (parent != null) {
 			parent.add(this);
 		}
 
 	}
 
+	/**
+	 * Recreate a DirectoryModel from a saved catalog without accessing the
+	 * filesystem. Its location is set with restore
+	 * 
+	 * @param name
+	 *            the name of the directory
+	 */
+	DirectoryModel(String name) {
+		this.name = name;
+		this.subdirectories = new TreeSet<DirectoryModel>();
+		this.images = new TreeSet<ImageModel>();
+	}
+
+	/**
+	 * Set the location of this DirectoryModel while recreating it from a saved
+	 * catalog. Its contents and history are read from the catalog the first time
+	 * they are needed
+	 * 
+	 * @param path
+	 *            the path of the directory
+	 * @param parent
+	 *            the parent of the directory, may be null
+	 * @param catalog
+	 *            the catalog the directory is read from
+	 * @param id
+	 *            the id of the directory in the catalog
+	 */
+	void restore(Path path, DirectoryModel parent, CatalogReader catalog, int id) {
+		setPath(path);
+		this.parent = parent;
+		this.catalog = catalog;
+		this.catalogId = id;
+		this.contentsPending = true;
+	}
+
+	/**
+	 * Read the contents and history of this directory from the catalog it was
+	 * restored from, if they have not been read yet
+	 * 
+	 */
+	void decode() {
+		load();
+		history();
+	}
+
+	/**
+	 * Read the contents of this directory from the catalog it was restored from, if
+	 * they have not been read yet. They are indexed if this directory is
+	 * 
+	 */
+	private void load() {
+		if (!contentsPending) {
+			return;
+		}
+		contentsPending = false;
+		List<DirectoryModel> readSubdirectories = new ArrayList<>();
+		List<ImageModel> readImages = new ArrayList<>();
+		catalog.readContents(catalogId, readSubdirectories, readImages);
+		// Children already read for a snapshot were placed before this directory
+		// was last moved
+		for (DirectoryModel subDir : readSubdirectories) {
+			subDir.setPath(getPath().resolve(subDir.name));
+			subDir.resetSortKey();
+		}
+		for (ImageModel image : readImages) {
+			image.resetSortKey();
+		}
+		subdirectories.addAll(readSubdirectories);
+		images.addAll(readImages);
+
+		ModelIndex index = ModelManager.instance.getIndex();
+		if (index.get(getPath()) == this) {
+			for (ImageModel image : images) {
+				index.put(image);
+			}
+			for (DirectoryModel subDir : subdirectories) {
+				if (subDir.contentsPending) {
+					index.put(subDir);
+				} else {
+					// Read before this directory was, while it was not indexed
+					subDir.reindex();
+				}
+				ModelManager.instance.watch(subDir);
+			}
+		}
+	}
+
+	/**
+	 * Read the contents of this directory and of its ancestors from the catalog
+	 * they were restored from, if they have not been read yet, so the images of
+	 * this directory are indexed
+	 * 
+	 */
+	void loadWithAncestors() {
+		if (parent != null) {
+			parent.loadWithAncestors();
+		}
+		load();
+	}
+
+	/**
+	 * Return the history of this directory, reading it from the catalog it was
+	 * restored from if it has not been read yet
+	 * 
+	 * @return the history of this directory
+	 */
+	private History<DirectoryModel, DirectorySnapShot> history() {
+		if (history == null) {
+			history = catalog.readHistory(this, catalogId);
+		}
+		return history;
+	}
+
+	/**
+	 * Take a snapshot of this directory after its contents changed, or leave it to
+	 * the end of the bulk change in progress
+	 * 
+	 */
+	private void logChange() {
+		if (!ModelManager.instance.deferLog(this)) {
+			history().log();
+		}
+	}
+
+	/**
+	 * Take the snapshot of this directory that was left to the end of a bulk
+	 * change
+	 * 
+	 */
+	void logDeferred() {
+		history().log();
+	}
+
+	/**
+	 * Take the snapshot of this directory that was left to the end of the bulk
+	 * change in progress now, so that it records this directory as it is before
+	 * it is moved or reverted
+	 * 
+	 */
+	private void flushDeferredLog() {
+		if (ModelManager.instance.undeferLog(this)) {
+			history().log();
+		}
+	}
+
+	/**
+	 * Return the children recorded as added and removed since the last snapshot,
+	 * and start recording anew for the next one
+	 * 
+	 * @return the children added and removed since the last snapshot
+	 */
+	DirectorySnapShot.Changes takeChanges() {
+		DirectorySnapShot.Changes taken = changes();
+		changes = null;
+		return taken;
+	}
+
+	/**
+	 * Return where the children added and removed since the last snapshot are
+	 * recorded
+	 * 
+	 * @return where the changes since the last snapshot are recorded
+	 */
+	private DirectorySnapShot.Changes changes() {
+		if (changes == null) {
+			changes = new DirectorySnapShot.Changes();
+		}
+		return changes;
+	}
+
 	/**
 	 * Add the given DirectoryModel as a subdirectory in this DirectoryModel
 	 * 
@@ -70,12 +263,17 @@ public class DirectoryModel implements Model<DirectoryModel, DirectorySnapShot>,
 	 *            the subdirectory to add to this
 	 */
 	protected void add(DirectoryModel directoryModel) {
+		load();
 		LOGGER.log(Level.FINE, "Add subdir {0} to {1}", new Object[] { directoryModel.getName(), this.getName() });
-		this.subdirectories.add(directoryModel);
+		// Nothing changes here or above if the contents did not change
+		if (!this.subdirectories.add(directoryModel)) {
+			return;
+		}
+		changes().add(directoryModel);
 		if (this.parent != null) {
 			this.parent.add(this);
 		}
-		history.log();
+		logChange();
 	}
 
 	/**
@@ -85,12 +283,16 @@ public class DirectoryModel implements Model<DirectoryModel, DirectorySnapShot>,
 	 *            the image to add to this
 	 */
 	protected void add(ImageModel imageModel) {
+		load();
 		LOGGER.log(Level.FINE, "Add image {0} to {1}", new Object[] { imageModel.getName(), this.getName() });
-		this.images.add(imageModel);
+		if (!this.images.add(imageModel)) {
+			return;
+		}
+		changes().add(imageModel);
 		if (this.parent != null) {
 			this.parent.add(this);
 		}
-		history.log();
+		logChange();
 	}
 
 	/**
@@ -117,6 +319,16 @@ public class DirectoryModel implements Model<DirectoryModel, DirectorySnapShot>,
 		return path.startsWith(getPath());
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see model.Model#compareTo(java.lang.Object)
+	 */
+	@Override
+	public int compareTo(DirectoryModel other) {
+		return getSortKey().compareTo(other.getSortKey());
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -136,12 +348,54 @@ public class DirectoryModel implements Model<DirectoryModel, DirectorySnapShot>,
 	 * @return a Set of the contents directly under this DirectoryModel
 	 */
 	public Set<Model<?, ?>> getContents() {
+		load();
 		Set<Model<?, ?>> result = new TreeSet<>();
 		result.addAll(images);
 		result.addAll(subdirectories);
 		return result;
 	}
 
+	/**
+	 * Return a read-only view of the contents directly under this DirectoryModel:
+	 * its images in order followed by its subdirectories in order. The view
+	 * follows changes to this directory and must not be iterated while they happen
+	 * 
+	 * @return a read-only view of the contents directly under this DirectoryModel
+	 */
+	public Set<Model<?, ?>> getContentsView() {
+		load();
+		return new AbstractSet<Model<?, ?>>() {
+
+			@Override
+			public Iterator<Model<?, ?>> iterator() {
+				Iterator<ImageModel> imageIterator = images.iterator();
+				Iterator<DirectoryModel> dirIterator = subdirectories.iterator();
+				return new Iterator<Model<?, ?>>() {
+
+					@Override
+					public boolean hasNext() {
+						return imageIterator.hasNext() || dirIterator.hasNext();
+					}
+
+					@Override
+					public Model<?, ?> next() {
+						return imageIterator.hasNext() ? imageIterator.next() : dirIterator.next();
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return images.size() + subdirectories.size();
+			}
+
+			@Override
+			public boolean contains(Object o) {
+				return images.contains(o) || subdirectories.contains(o);
+			}
+		};
+	}
+
 	/**
 	 * Return a descendant of this directory at the given path
 	 * 
@@ -150,18 +404,9 @@ public class DirectoryModel implements Model<DirectoryModel, DirectorySnapShot>,
 	 * @return a descendant of this directory at the given path
 	 */
 	public Model<?, ?> getDescendant(Path path) {
-		for (ImageModel image : images) {
-			if (image.getPath().equals(path)) {
-				return image;
-			}
-		}
-
-		for (DirectoryModel subDir : subdirectories) {
-			if (subDir.getPath().equals(path)) {
-				return subDir;
-			} else if (subDir.contains(path)) {
-				return subDir.getDescendant(path);
-			}
+		Model<?, ?> model = ModelManager.instance.find(path);
+		if (model != null && model != this && contains(model)) {
+			return model;
 		}
 		return null;
 	}
@@ -193,7 +438,7 @@ public class DirectoryModel implements Model<DirectoryModel, DirectorySnapShot>,
 	 */
 	@Override
 	public History<DirectoryModel, DirectorySnapShot>.HistoryViewer getHistory() {
-		return history.getViewer();
+		return history().getViewer();
 	}
 
 	/**
@@ -206,10 +451,11 @@ public class DirectoryModel implements Model<DirectoryModel, DirectorySnapShot>,
 	 *         reference that is directly under this directory
 	 */
 	public ImageModel getImage(String reference) {
-		for (ImageModel img : getImages()) {
-			if (img.getName().equals(reference) || img.getUntaggedName().equals(reference)) {
-				return img;
-			}
+		// Read the contents first so they are indexed
+		load();
+		ImageModel img = ModelManager.instance.getIndex().getImage(getPath(), reference);
+		if (img != null && img.getDirectory() == this) {
+			return img;
 		}
 		return null;
 	}
@@ -220,6 +466,7 @@ public class DirectoryModel implements Model<DirectoryModel, DirectorySnapShot>,
 	 * @return a set containing every image directly under this directory
 	 */
 	public Set<ImageModel> getImages() {
+		load();
 		Set<ImageModel> result = new TreeSet<ImageModel>();
 		result.addAll(images);
 		return result;
@@ -234,13 +481,22 @@ public class DirectoryModel implements Model<DirectoryModel, DirectorySnapShot>,
 	 */
 	public Set<ImageModel> getImagesRecursive() {
 		Set<ImageModel> result = new TreeSet<ImageModel>();
-		result.addAll(images);
-		for (DirectoryModel directory : subdirectories) {
-			result.addAll(directory.getImagesRecursive());
-		}
+		streamImagesRecursive().forEach(result::add);
 		return result;
 	}
 
+	/**
+	 * Return a read-only view of the images directly under this directory, in
+	 * order. The view follows changes to this directory and must not be iterated
+	 * while they happen
+	 * 
+	 * @return a read-only view of the images directly under this directory
+	 */
+	public NavigableSet<ImageModel> getImagesView() {
+		load();
+		return Collections.unmodifiableNavigableSet(images);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -259,7 +515,24 @@ public class DirectoryModel implements Model<DirectoryModel, DirectorySnapShot>,
 	 */
 	@Override
 	public Path getPath() {
-		return Paths.get(path);
+		if (cachedPath == null) {
+			cachedPath = Paths.get(path);
+		}
+		return cachedPath;
+	}
+
+	/**
+	 * Return the path this directory is sorted by in its parent. It is the path of
+	 * this directory when it was last placed in its parent, so that it can still
+	 * be found there while it is being changed
+	 * 
+	 * @return the path this directory is sorted by
+	 */
+	Path getSortKey() {
+		if (sortKey == null) {
+			sortKey = getPath();
+		}
+		return sortKey;
 	}
 
 	/**
@@ -268,11 +541,38 @@ public class DirectoryModel implements Model<DirectoryModel, DirectorySnapShot>,
 	 * @return a set of all subdirectories that are directly under this one
 	 */
 	public Set<DirectoryModel> getSubdirectories() {
+		load();
 		Set<DirectoryModel> result = new TreeSet<DirectoryModel>();
 		result.addAll(subdirectories);
 		return result;
 	}
 
+	/**
+	 * Return a read-only view of the subdirectories directly under this one, in
+	 * order. The view follows changes to this directory and must not be iterated
+	 * while they happen
+	 * 
+	 * @return a read-only view of the subdirectories directly under this one
+	 */
+	public NavigableSet<DirectoryModel> getSubdirectoriesView() {
+		load();
+		return Collections.unmodifiableNavigableSet(subdirectories);
+	}
+
+	/**
+	 * Return a read-only view of the subdirectories directly under this one that
+	 * have been read, without reading any from the catalog this directory was
+	 * restored from
+	 * 
+	 * @return a read-only view of the subdirectories that have been read
+	 */
+	NavigableSet<DirectoryModel> getLoadedSubdirectories() {
+		if (contentsPending) {
+			return Collections.emptyNavigableSet();
+		}
+		return Collections.unmodifiableNavigableSet(subdirectories);
+	}
+
 	/**
 	 * Return the subdirectory with the same name as the given reference that is
 	 * directly under this directory
@@ -283,14 +583,27 @@ public class DirectoryModel implements Model<DirectoryModel, DirectorySnapShot>,
 	 *         directly under this directory
 	 */
 	public DirectoryModel getSubDirectory(String reference) {
-		for (DirectoryModel subDir : getSubdirectories()) {
-			if (subDir.getName().equals(reference)) {
-				return subDir;
-			}
+		// Read the contents first so they are indexed
+		load();
+		Model<?, ?> subDir = ModelManager.instance.getIndex().get(getPath().resolve(reference));
+		if (subDir instanceof DirectoryModel && subDir.getDirectory() == this) {
+			return (DirectoryModel) subDir;
 		}
 		return null;
 	}
 
+	/**
+	 * Return a lazy stream of every image under this directory and its
+	 * subdirectories. Each directory's images are visited in order before its
+	 * subdirectories, and the stream can be made parallel to traverse subtrees
+	 * concurrently. The directories must not change while the stream is used
+	 * 
+	 * @return a stream of every image under this directory and its subdirectories
+	 */
+	public Stream<ImageModel> streamImagesRecursive() {
+		return StreamSupport.stream(new ImageSpliterator(this), false);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -301,8 +614,9 @@ public class DirectoryModel implements Model<DirectoryModel, DirectorySnapShot>,
 		LOGGER.log(Level.INFO, "Move dir {0} to {1}", new Object[] { this.getName(), dir.getName() });
 		if (contains(dir))
 			throw new IllegalArgumentException(dir.toString());
+		flushDeferredLog();
 		this.parent = dir;
-		this.path = dir.getPath().resolve(name).toString();
+		setPath(dir.getPath().resolve(name));
 		update();
 	}
 
@@ -316,11 +630,97 @@ public class DirectoryModel implements Model<DirectoryModel, DirectorySnapShot>,
 		LOGGER.log(Level.INFO, "Move dir {0} to {1}", new Object[] { this.getName(), dir.getFileName() });
 		if (contains(dir))
 			throw new IllegalArgumentException(dir.toString());
+		flushDeferredLog();
 		this.parent = ModelManager.instance.getDir(dir);
-		this.path = dir.resolve(name).toString();
+		setPath(dir.resolve(name));
 		update();
 	}
 
+	/**
+	 * Add this directory and everything under it to the ModelManager's index at
+	 * their current paths. Contents not yet read from a catalog are indexed when
+	 * they are read
+	 * 
+	 */
+	void reindex() {
+		ModelIndex index = ModelManager.instance.getIndex();
+		index.put(this);
+		for (ImageModel image : images) {
+			// Moving every image by the same prefix keeps them in order
+			image.resetSortKey();
+			index.put(image);
+		}
+		for (DirectoryModel subDir : subdirectories) {
+			subDir.setPath(getPath().resolve(subDir.name));
+			subDir.resetSortKey();
+			subDir.reindex();
+		}
+	}
+
+	/**
+	 * Update this DirectoryModel to match a directory that was moved to the given
+	 * path outside of this application
+	 * 
+	 * @param newPath
+	 *            the path the directory was moved to
+	 * @throws IOException
+	 *             on any problems accessing the given path
+	 */
+	void relocated(Path newPath) throws IOException {
+		LOGGER.log(Level.INFO, "Dir {0} relocated to {1}", new Object[] { this.getName(), newPath });
+		Path oldPath = history().getLast().getPath();
+		this.parent = ModelManager.instance.getDir(newPath.getParent());
+		this.name = newPath.getFileName().toString();
+		setPath(newPath);
+		updated(oldPath);
+	}
+
+	/**
+	 * Sort the given image under its current path after it was renamed
+	 * 
+	 * @param imageModel
+	 *            the given image
+	 */
+	protected void resort(ImageModel imageModel) {
+		load();
+		this.images.remove(imageModel);
+		imageModel.resetSortKey();
+		this.images.add(imageModel);
+	}
+
+	/**
+	 * Sort the given subdirectory under its current path after it was renamed
+	 * 
+	 * @param directoryModel
+	 *            the given subdirectory
+	 */
+	protected void resort(DirectoryModel directoryModel) {
+		load();
+		this.subdirectories.remove(directoryModel);
+		directoryModel.resetSortKey();
+		this.subdirectories.add(directoryModel);
+	}
+
+	/**
+	 * Sort this directory by its current path. Only safe when its order relative
+	 * to its siblings is unchanged, or it is not in its parent's set
+	 * 
+	 */
+	void resetSortKey() {
+		sortKey = getPath();
+	}
+
+	/**
+	 * Set the path of this directory
+	 * 
+	 * @param path
+	 *            the new path of this directory
+	 */
+	private void setPath(Path path) {
+		this.path = path.toString();
+		this.cachedPath = path;
+	}
+
 	/**
 	 * Remove the given directoryModel from this one
 	 * 
@@ -328,12 +728,16 @@ public class DirectoryModel implements Model<DirectoryModel, DirectorySnapShot>,
 	 *            the given directoryModel
 	 */
 	protected void remove(DirectoryModel directoryModel) {
+		load();
 		LOGGER.log(Level.FINE, "Remove subdir {0} from {1}", new Object[] { directoryModel.getName(), this.getName() });
-		this.subdirectories.remove(directoryModel);
+		if (!this.subdirectories.remove(directoryModel)) {
+			return;
+		}
+		changes().remove(directoryModel);
 		if (this.parent != null) {
 			this.parent.add(this);
 		}
-		history.log();
+		logChange();
 	}
 
 	/**
@@ -343,12 +747,16 @@ public class DirectoryModel implements Model<DirectoryModel, DirectorySnapShot>,
 	 *            the given ImageModel
 	 */
 	protected void remove(ImageModel imageModel) {
+		load();
 		LOGGER.log(Level.FINE, "Remove image {0} from {1}", new Object[] { imageModel.getName(), this.getName() });
-		this.images.remove(imageModel);
+		if (!this.images.remove(imageModel)) {
+			return;
+		}
+		changes().remove(imageModel);
 		if (this.parent != null) {
 			this.parent.add(this);
 		}
-		history.log();
+		logChange();
 	}
 
 	/*
@@ -361,8 +769,9 @@ public class DirectoryModel implements Model<DirectoryModel, DirectorySnapShot>,
 		LOGGER.log(Level.FINE, "Rename dir {0} from {1}", new Object[] { this.getName(), name });
 		if (!Model.isLegalFilename(name))
 			throw new IllegalArgumentException(name);
+		flushDeferredLog();
 		this.name = name;
-		this.path = getDirectoryPath().resolve(name).toString();
+		setPath(getDirectoryPath().resolve(name));
 		update();
 	}
 
@@ -378,14 +787,23 @@ public class DirectoryModel implements Model<DirectoryModel, DirectorySnapShot>,
 		if (snap.getSubject() != this)
 			throw new IllegalArgumentException();
 
-		for (ImageModel img : getImages()) {
-			img.revertTo(img.getHistory().getSnapBefore(snap.getDate()));
-		}
-		for (DirectoryModel dir : getSubdirectories()) {
-			dir.revertTo(dir.getHistory().getSnapBefore(snap.getDate()));
+		flushDeferredLog();
+		ModelManager.BulkChange bulk = ModelManager.instance.beginBulkChange();
+		try {
+			// Children that are not in the snapshot are dropped by toState
+			unindex(getPath());
+
+			for (ImageModel img : getImages()) {
+				img.revertTo(img.getHistory().getSnapBefore(snap.getDate()));
+			}
+			for (DirectoryModel dir : getSubdirectories()) {
+				dir.revertTo(dir.getHistory().getSnapBefore(snap.getDate()));
+			}
+			toState(snap);
+			update();
+		} finally {
+			bulk.close();
 		}
-		toState(snap);
-		update();
 
 	}
 
@@ -399,7 +817,7 @@ public class DirectoryModel implements Model<DirectoryModel, DirectorySnapShot>,
 		LOGGER.log(Level.FINE, "Set parent of dir {0} to {1}", new Object[] { this.getName(), parent.getName() });
 		if (this.parent == null && parent != null && parent.getPath().endsWith(getPath())) {
 			this.parent = parent;
-			history.log();
+			history().log();
 		}
 		throw new IllegalArgumentException();
 	}
@@ -411,11 +829,29 @@ public class DirectoryModel implements Model<DirectoryModel, DirectorySnapShot>,
 	 *            the previous state to revert to
 	 */
 	private void toState(DirectorySnapShot snap) {
+		load();
 		this.parent = snap.getParent();
 		this.name = snap.getName();
-		this.path = snap.getPath().toString();
-		this.images = snap.getImages();
-		this.subdirectories = snap.getSubdirectories();
+		setPath(snap.getPath());
+		// Refill the sets in place so views of them stay live. Children in both are
+		// recorded as removed and added again, which cancels out
+		DirectorySnapShot.Changes changes = changes();
+		for (ImageModel image : this.images) {
+			changes.remove(image);
+		}
+		for (DirectoryModel subDir : this.subdirectories) {
+			changes.remove(subDir);
+		}
+		this.images.clear();
+		this.images.addAll(snap.getImages());
+		this.subdirectories.clear();
+		this.subdirectories.addAll(snap.getSubdirectories());
+		for (ImageModel image : this.images) {
+			changes.add(image);
+		}
+		for (DirectoryModel subDir : this.subdirectories) {
+			changes.add(subDir);
+		}
 
 	}
 
@@ -429,6 +865,25 @@ public class DirectoryModel implements Model<DirectoryModel, DirectorySnapShot>,
 		return getPath().toString();
 	}
 
+	/**
+	 * Remove this directory and everything under it from the ModelManager's index,
+	 * given the path this directory was indexed under
+	 * 
+	 * @param oldPath
+	 *            the path this directory was indexed under
+	 */
+	void unindex(Path oldPath) {
+		ModelIndex index = ModelManager.instance.getIndex();
+		index.remove(oldPath, this);
+		for (ImageModel image : images) {
+			index.remove(oldPath, image.getName(), image.getUntaggedName(), image.getExtension(), image.getTags(),
+					image);
+		}
+		for (DirectoryModel subDir : subdirectories) {
+			subDir.unindex(oldPath.resolve(subDir.name));
+		}
+	}
+
 	/**
 	 * Updates the directory associated with this DirectoryModel to match the state
 	 * of this DirectoryModel
@@ -440,22 +895,41 @@ public class DirectoryModel implements Model<DirectoryModel, DirectorySnapShot>,
 	 */
 	private void update() throws IOException {
 		LOGGER.log(Level.FINE, "Update {0}", this.getName());
+		Path oldPath = history().getLast().getPath();
 		try {
-			ModelManager.instance.getAccesor().move(history.getLast().getPath(), getPath());
+			ModelManager.instance.move(oldPath, getPath());
 		} catch (IOException e) {
-			toState(history.getLast());
+			toState(history().getLast());
+			reindex();
 			throw e;
 		}
-		DirectoryModel lastDir = history.getLast().getParent();
+		updated(oldPath);
+	}
+
+	/**
+	 * Record that the directory associated with this DirectoryModel has been moved
+	 * from the given path to match the state of this DirectoryModel
+	 * 
+	 * @param oldPath
+	 *            the path the directory was at
+	 */
+	private void updated(Path oldPath) {
+		unindex(oldPath);
+		reindex();
+		DirectoryModel lastDir = history().getLast().getParent();
 		if (lastDir != parent) {
 			if (lastDir != null) {
 				lastDir.remove(this);
 			}
+			resetSortKey();
 			if (parent != null) {
 				parent.add(this);
 			}
+		} else if (parent != null) {
+			parent.resort(this);
 		}
-		history.log();
+		ModelManager.instance.undeferLog(this);
+		history().log();
 	}
 
 }
@@ -0,0 +1,165 @@
+package model;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Scans a directory tree on a work-stealing pool and attaches the result to the
+ * ModelManager. Directories are listed and their children classified
+ * concurrently, then the DirectoryModels and ImageModels are created on the
+ * calling thread in the same order as a serial scan
+ *
+ */
+class DirectoryScanner {
+
+	/**
+	 * A directory or image found by the scan
+	 *
+	 */
+	private static class ScanNode {
+		private final Path path;
+		private final boolean directory;
+		private final List<ScanNode> children;
+		private IOException error;
+
+		private ScanNode(Path path, boolean directory) {
+			this.path = path;
+			this.directory = directory;
+			this.children = directory ? new ArrayList<>() : null;
+		}
+	}
+
+	/**
+	 * Lists a directory, forking a task for every subdirectory found
+	 *
+	 */
+	private class ScanTask extends RecursiveTask<ScanNode> {
+
+		private static final long serialVersionUID = -4170538224651036482L;
+		private final Path dir;
+
+		private ScanTask(Path dir) {
+			this.dir = dir;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.util.concurrent.RecursiveTask#compute()
+		 */
+		@Override
+		protected ScanNode compute() {
+			ScanNode node = new ScanNode(dir, true);
+			List<Path> paths;
+			try {
+				paths = cache.getChildPaths(dir);
+			} catch (IOException e) {
+				node.error = e;
+				return node;
+			}
+
+			List<ScanTask> subTasks = new ArrayList<>();
+			for (Path path : paths) {
+				if (cache.isDirectory(path)) {
+					ScanTask task = new ScanTask(path);
+					task.fork();
+					subTasks.add(task);
+					node.children.add(null);
+				} else if (ImageModel.isImage(path)) {
+					node.children.add(new ScanNode(path, false));
+				}
+			}
+
+			// Fill in the subdirectory placeholders in listing order
+			int next = 0;
+			for (int i = 0; i < node.children.size(); i++) {
+				if (node.children.get(i) == null) {
+					node.children.set(i, subTasks.get(next++).join());
+				}
+			}
+			return node;
+		}
+	}
+
+	private final StatCache cache;
+	private final int parallelism;
+
+	/**
+	 * Create a DirectoryScanner that reads through the given cache using the
+	 * given number of threads. The accesor behind the cache must be safe to call
+	 * from several threads at once
+	 *
+	 * @param cache
+	 *            the given cache
+	 * @param parallelism
+	 *            the number of threads to scan with
+	 */
+	DirectoryScanner(StatCache cache, int parallelism) {
+		if (parallelism < 1)
+			throw new IllegalArgumentException(Integer.toString(parallelism));
+		this.cache = cache;
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Scan the directory at the given path and add it, its subdirectories and
+	 * images to the ModelManager
+	 *
+	 * @param dir
+	 *            the given path
+	 * @return the created DirectoryModel object, or null if the directory is
+	 *         already in the ModelManager
+	 * @throws IOException
+	 *             on any problems accessing the given directory
+	 */
+	DirectoryModel scan(Path dir) throws IOException {
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		ScanNode root;
+		try {
+			root = pool.invoke(new ScanTask(dir));
+		} finally {
+			pool.shutdown();
+		}
+		return attach(root);
+	}
+
+	/**
+	 * Create the models for the given scanned directory and everything found under
+	 * it
+	 *
+	 * @param node
+	 *            the given scanned directory
+	 * @return the created DirectoryModel object, or null if the directory is
+	 *         already in the ModelManager
+	 * @throws IOException
+	 *             on any problems accessing the given directory
+	 */
+	private DirectoryModel attach(ScanNode node) throws IOException {
+		ModelManager manager = ModelManager.instance;
+		if (manager.getDir(node.path) != null)
+			return null;
+
+		DirectoryModel dirModel = new DirectoryModel(node.path);
+		manager.addDir(dirModel);
+
+		if (node.error != null)
+			throw node.error;
+
+		for (ScanNode child : node.children) {
+			try {
+				if (child.directory) {
+					attach(child);
+				} else {
+					new ImageModel(child.path, dirModel);
+				}
+			} catch (IOException e) {
+				//e.printStackTrace();
+			}
+		}
+		return dirModel;
+	}
+}
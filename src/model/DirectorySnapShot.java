@@ -2,8 +2,15 @@ package model;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
 import java.util.TreeSet;
+import java.util.function.Function;
 
 /**
  * A SnapShot of a DirectoryModel at a given time
@@ -30,13 +37,114 @@ public class DirectorySnapShot extends SnapShot<DirectoryModel, DirectorySnapSho
 
 	}
 
+	/**
+	 * What was added to and removed from the contents of a directory since its
+	 * last snapshot, collected as the changes are made so the next snapshot does
+	 * not have to compare the full contents. A child added and then removed again,
+	 * or the other way around, is not recorded at all
+	 *
+	 */
+	static final class Changes {
+		private Set<DirectoryModel> addedSubdirectories;
+		private Set<DirectoryModel> removedSubdirectories;
+		private Set<ImageModel> addedImages;
+		private Set<ImageModel> removedImages;
+
+		/**
+		 * Record that the given subdirectory was added
+		 * 
+		 * @param subDir
+		 *            the given subdirectory
+		 */
+		void add(DirectoryModel subDir) {
+			if (removedSubdirectories == null || !removedSubdirectories.remove(subDir)) {
+				addedSubdirectories = record(addedSubdirectories, subDir);
+			}
+		}
+
+		/**
+		 * Record that the given subdirectory was removed
+		 * 
+		 * @param subDir
+		 *            the given subdirectory
+		 */
+		void remove(DirectoryModel subDir) {
+			if (addedSubdirectories == null || !addedSubdirectories.remove(subDir)) {
+				removedSubdirectories = record(removedSubdirectories, subDir);
+			}
+		}
+
+		/**
+		 * Record that the given image was added
+		 * 
+		 * @param image
+		 *            the given image
+		 */
+		void add(ImageModel image) {
+			if (removedImages == null || !removedImages.remove(image)) {
+				addedImages = record(addedImages, image);
+			}
+		}
+
+		/**
+		 * Record that the given image was removed
+		 * 
+		 * @param image
+		 *            the given image
+		 */
+		void remove(ImageModel image) {
+			if (addedImages == null || !addedImages.remove(image)) {
+				removedImages = record(removedImages, image);
+			}
+		}
+
+		/**
+		 * Return how many children were added or removed
+		 * 
+		 * @return how many children were added or removed
+		 */
+		int size() {
+			return size(addedSubdirectories) + size(removedSubdirectories) + size(addedImages)
+					+ size(removedImages);
+		}
+
+		private static <M> Set<M> record(Set<M> models, M model) {
+			if (models == null) {
+				models = Collections.newSetFromMap(new IdentityHashMap<>());
+			}
+			models.add(model);
+			return models;
+		}
+
+		private static int size(Set<?> models) {
+			return models == null ? 0 : models.size();
+		}
+
+		private static <M> M[] toArray(Set<M> models, M[] empty) {
+			return models == null || models.isEmpty() ? empty : models.toArray(empty);
+		}
+	}
+
 	private static final long serialVersionUID = 2699004234873560168L;
 
+	private static final DirectoryModel[] NO_SUBDIRECTORIES = new DirectoryModel[0];
+	private static final ImageModel[] NO_IMAGES = new ImageModel[0];
+
 	private final String path;
 	private final String name;
 	private final DirectoryModel parent;
+	// The full contents on a checkpoint, null on a snapshot that only records
+	// what changed since the last one
 	private final DirectoryModel[] subdirectories;
 	private final ImageModel[] images;
+	// What changed since the last snapshot, null on a checkpoint
+	private final DirectoryModel[] addedSubdirectories;
+	private final DirectoryModel[] removedSubdirectories;
+	private final ImageModel[] addedImages;
+	private final ImageModel[] removedImages;
+	// How many children the last checkpoint kept, and how many have changed since
+	private final int base;
+	private final int weight;
 
 	/**
 	 * Create a new DirectorySnapShot of the given subject compared to the given
@@ -48,12 +156,130 @@ public class DirectorySnapShot extends SnapShot<DirectoryModel, DirectorySnapSho
 	 *            the given last snapshot
 	 */
 	private DirectorySnapShot(DirectoryModel subject, DirectorySnapShot lastSnap) {
-		super(subject, lastSnap);
-		path = subject.getPath().toString();
-		parent = subject.getDirectory();
-		name = subject.getName();
-		subdirectories = subject.getSubdirectories().toArray(new DirectoryModel[0]);
-		images = subject.getImages().toArray(new ImageModel[0]);
+		this(subject, lastSnap, System.currentTimeMillis(), subject.getPath().toString(), subject.getName(),
+				subject.getDirectory(), subject.takeChanges(), null, null);
+	}
+
+	/**
+	 * Create or recreate a snapshot of the given directory. Only what changed since
+	 * the last snapshot is kept, except on a checkpoint, which is taken once more
+	 * children have changed since the last one than it kept. Checkpoints are then
+	 * at least twice as far apart as the last one was large, so the contents kept
+	 * grow with the number of changes rather than with the number of snapshots
+	 * times the size of the directory
+	 * 
+	 * @param subject
+	 *            the given directory
+	 * @param lastSnap
+	 *            the last snapshot taken of the given directory
+	 * @param time
+	 *            when the snapshot was taken in milliseconds since the epoch
+	 * @param path
+	 *            the path the directory had
+	 * @param name
+	 *            the name the directory had
+	 * @param parent
+	 *            the parent the directory had
+	 * @param changes
+	 *            what was added and removed since the last snapshot
+	 * @param subdirectories
+	 *            the subdirectories the directory had, or null to read them from
+	 *            the directory if they are needed
+	 * @param images
+	 *            the images the directory had, or null to read them from the
+	 *            directory if they are needed
+	 */
+	DirectorySnapShot(DirectoryModel subject, DirectorySnapShot lastSnap, long time, String path, String name,
+			DirectoryModel parent, Changes changes, DirectoryModel[] subdirectories, ImageModel[] images) {
+		super(subject, lastSnap, time);
+		this.path = path;
+		this.name = name;
+		this.parent = parent;
+
+		int changed = changes.size();
+		if (lastSnap == null || lastSnap.weight + changed > lastSnap.base) {
+			this.subdirectories = subdirectories != null ? subdirectories
+					: subject.getSubdirectoriesView().toArray(NO_SUBDIRECTORIES);
+			this.images = images != null ? images : subject.getImagesView().toArray(NO_IMAGES);
+			this.addedSubdirectories = null;
+			this.removedSubdirectories = null;
+			this.addedImages = null;
+			this.removedImages = null;
+			this.base = this.subdirectories.length + this.images.length;
+			this.weight = 0;
+		} else {
+			this.subdirectories = null;
+			this.images = null;
+			this.addedSubdirectories = Changes.toArray(changes.addedSubdirectories, NO_SUBDIRECTORIES);
+			this.removedSubdirectories = Changes.toArray(changes.removedSubdirectories, NO_SUBDIRECTORIES);
+			this.addedImages = Changes.toArray(changes.addedImages, NO_IMAGES);
+			this.removedImages = Changes.toArray(changes.removedImages, NO_IMAGES);
+			this.base = lastSnap.base;
+			this.weight = lastSnap.weight + changed;
+		}
+	}
+
+	/**
+	 * Return whether the given arrays hold the same models, in any order
+	 * 
+	 * @param models
+	 *            the given array
+	 * @param others
+	 *            the given other array
+	 * @return whether the given arrays hold the same models
+	 */
+	private static boolean sameModels(Object[] models, Object[] others) {
+		if (models.length != others.length) {
+			return false;
+		}
+		Set<Object> otherSet = Collections.newSetFromMap(new IdentityHashMap<>());
+		otherSet.addAll(Arrays.asList(others));
+		for (Object model : models) {
+			if (!otherSet.contains(model)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Rebuild the contents of the subject when this snapshot was taken by replaying
+	 * the changes since the last checkpoint. Replayed contents are sorted the way
+	 * the directory sorts them
+	 * 
+	 * @param full
+	 *            the contents kept by a checkpoint
+	 * @param added
+	 *            the contents added by a snapshot
+	 * @param removed
+	 *            the contents removed by a snapshot
+	 * @param empty
+	 *            an empty array of the right type
+	 * @return the contents when this snapshot was taken, in order
+	 */
+	private <M> M[] rebuild(Function<DirectorySnapShot, M[]> full, Function<DirectorySnapShot, M[]> added,
+			Function<DirectorySnapShot, M[]> removed, M[] empty) {
+		Deque<DirectorySnapShot> deltas = new ArrayDeque<>();
+		DirectorySnapShot checkpoint = this;
+		while (full.apply(checkpoint) == null) {
+			deltas.push(checkpoint);
+			checkpoint = checkpoint.getLastSnap();
+		}
+		if (deltas.isEmpty()) {
+			return full.apply(checkpoint);
+		}
+
+		Set<M> result = Collections.newSetFromMap(new IdentityHashMap<>());
+		result.addAll(Arrays.asList(full.apply(checkpoint)));
+		for (DirectorySnapShot delta : deltas) {
+			for (M model : removed.apply(delta)) {
+				result.remove(model);
+			}
+			Collections.addAll(result, added.apply(delta));
+		}
+		M[] contents = result.toArray(empty);
+		Arrays.sort(contents);
+		return contents;
 	}
 
 	/**
@@ -64,7 +290,17 @@ public class DirectorySnapShot extends SnapShot<DirectoryModel, DirectorySnapSho
 	 *         taken
 	 */
 	public TreeSet<ImageModel> getImages() {
-		return new TreeSet<ImageModel>(Arrays.asList(images.clone()));
+		return new TreeSet<ImageModel>(Arrays.asList(getImageArray()));
+	}
+
+	/**
+	 * Return the images of the subject when this snapshot was taken, in order. The
+	 * returned array must not be changed
+	 * 
+	 * @return the images of the subject when this snapshot was taken
+	 */
+	ImageModel[] getImageArray() {
+		return rebuild(snap -> snap.images, snap -> snap.addedImages, snap -> snap.removedImages, NO_IMAGES);
 	}
 
 	/**
@@ -97,43 +333,110 @@ public class DirectorySnapShot extends SnapShot<DirectoryModel, DirectorySnapSho
 		return Paths.get(path);
 	}
 
+	/**
+	 * Return the subdirectories of the subject when this snapshot was taken, in
+	 * order. The returned array must not be changed
+	 * 
+	 * @return the subdirectories of the subject when this snapshot was taken
+	 */
+	DirectoryModel[] getSubdirectoryArray() {
+		return rebuild(snap -> snap.subdirectories, snap -> snap.addedSubdirectories,
+				snap -> snap.removedSubdirectories, NO_SUBDIRECTORIES);
+	}
+
 	/**
 	 * Return the subdirectories of the subject when this snapshot was taken
 	 * 
 	 * @return the subdirectories of the subject when this snapshot was taken
 	 */
 	public TreeSet<DirectoryModel> getSubdirectories() {
-		return new TreeSet<DirectoryModel>(Arrays.asList(subdirectories.clone()));
+		return new TreeSet<DirectoryModel>(Arrays.asList(getSubdirectoryArray()));
 	}
 
 	/*
 	 * (non-Javadoc)
 	 * 
-	 * @see java.lang.Object#toString()
+	 * @see model.SnapShot#describe(java.util.List)
 	 */
 	@Override
-	public String toString() {
+	protected String describe(List<Model<?, ?>> named) {
 		DirectorySnapShot lastSnap = getLastSnap();
+		String date = formatDate();
 		if (lastSnap == null) {
-			return String.format("%2$tc create \"%1$s\"", this.name, getDate());
+			return date + " create \"" + this.name + '"';
 		}
 
-		String result = String.format("%2$tc edit \"%1$s\"", lastSnap.name, getDate());
+		String newLine = System.lineSeparator();
+		StringBuilder result = new StringBuilder(128);
+		result.append(date).append(" edit \"").append(lastSnap.name).append('"');
 
 		if (lastSnap.parent != this.parent) {
-			result += String.format("%n\tMove from:\t%1$s %n\tto:\t\t%2$s", lastSnap.parent, this.parent);
+			result.append(newLine).append("\tMove from:\t").append(lastSnap.parent).append(' ').append(newLine)
+					.append("\tto:\t\t").append(this.parent);
+			addNamed(named, lastSnap.parent);
+			addNamed(named, this.parent);
+		}
+
+		// A snapshot that only records what changed knows whether anything did
+		// without rebuilding its contents
+		if (subdirectories != null || addedSubdirectories.length > 0 || removedSubdirectories.length > 0) {
+			DirectoryModel[] lastSubdirectories = lastSnap.getSubdirectoryArray();
+			DirectoryModel[] subdirectories = getSubdirectoryArray();
+			if (!sameModels(lastSubdirectories, subdirectories)) {
+				Collections.addAll(named, lastSubdirectories);
+				Collections.addAll(named, subdirectories);
+				appendModels(appendModels(result.append(newLine).append("\tChange subdirectories from "),
+						lastSubdirectories).append(" to "), subdirectories);
+			}
 		}
 
-		if (!Arrays.equals(lastSnap.subdirectories, this.subdirectories)) {
-			result += String.format("%n\tChange subdirectories from %1$s to %2$s",
-					Arrays.toString(lastSnap.subdirectories), Arrays.toString(this.subdirectories));
+		if (images != null || addedImages.length > 0 || removedImages.length > 0) {
+			ImageModel[] lastImages = lastSnap.getImageArray();
+			ImageModel[] images = getImageArray();
+			if (!sameModels(lastImages, images)) {
+				Collections.addAll(named, lastImages);
+				Collections.addAll(named, images);
+				appendModels(appendModels(result.append(newLine).append("\tChange images from "), lastImages)
+						.append(" to "), images);
+			}
 		}
+		return result.toString();
+	}
+
+	/**
+	 * Add the given directory to the given list of models named in a description,
+	 * unless it is null
+	 * 
+	 * @param named
+	 *            the given list
+	 * @param dir
+	 *            the given directory, may be null
+	 */
+	private static void addNamed(List<Model<?, ?>> named, DirectoryModel dir) {
+		if (dir != null) {
+			named.add(dir);
+		}
+	}
 
-		if (!Arrays.equals(lastSnap.images, this.images)) {
-			result += String.format("%n\tChange images from %1$s to %2$s", Arrays.toString(lastSnap.images),
-					Arrays.toString(this.images));
+	/**
+	 * Append the given models to the given description the way Arrays.toString
+	 * renders them
+	 * 
+	 * @param result
+	 *            the given description
+	 * @param models
+	 *            the given models
+	 * @return the given description
+	 */
+	private static StringBuilder appendModels(StringBuilder result, Object[] models) {
+		result.append('[');
+		for (int i = 0; i < models.length; i++) {
+			if (i > 0) {
+				result.append(", ");
+			}
+			result.append(models[i]);
 		}
-		return result;
+		return result.append(']');
 	}
 
 }
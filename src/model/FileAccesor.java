@@ -3,16 +3,25 @@ package model;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.FileVisitOption;
+import java.nio.file.FileSystems;
 import java.nio.file.FileVisitResult;
 import java.nio.file.FileVisitor;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 public class FileAccesor implements Accesor {
 
@@ -67,4 +76,43 @@ public class FileAccesor implements Accesor {
 		Files.walkFileTree(dir, EnumSet.noneOf(FileVisitOption.class), 1, visitor);
 		return lst;
 	}
+
+	@Override
+	public Map<Path, BasicFileAttributes> getChildAttributes(Path dir) throws IOException {
+		Map<Path, BasicFileAttributes> children = new LinkedHashMap<>();
+		FileVisitor<Path> visitor = new SimpleFileVisitor<Path>() {
+
+			@Override
+			public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) throws IOException {
+				// The attributes were read while listing, without following links
+				children.put(path, attrs);
+				return FileVisitResult.CONTINUE;
+			}
+		};
+		Files.walkFileTree(dir, EnumSet.noneOf(FileVisitOption.class), 1, visitor);
+		return children;
+	}
+
+	@Override
+	public WatchService newWatchService() throws IOException {
+		return FileSystems.getDefault().newWatchService();
+	}
+
+	@Override
+	public WatchKey register(Path dir, WatchService watcher) throws IOException {
+		return dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE);
+	}
+
+	@Override
+	public ByteBuffer map(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			// The mapping stays valid after the channel is closed
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+	}
+
+	@Override
+	public BasicFileAttributes readAttributes(Path path) throws IOException {
+		return Files.readAttributes(path, BasicFileAttributes.class);
+	}
 }
@@ -1,11 +1,19 @@
 package model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
 
 /**
- * Stores the history of a Model object
+ * Stores the history of a Model object. Snapshots are kept in an append-only
+ * list in the order they were taken
  *
  * @param <T>
  *            the type of Model object
@@ -36,7 +44,7 @@ public class History<T extends Model<T, S>, S extends SnapShot<T, S>> implements
 		 * @return the number of snapshots taken in this history
 		 */
 		public int getCount() {
-			return count;
+			return snaps.size();
 		}
 
 		/**
@@ -49,15 +57,10 @@ public class History<T extends Model<T, S>, S extends SnapShot<T, S>> implements
 		 * @return a SnapShot with the given rank
 		 */
 		public S getSnap(int rank) {
-			// TODO: Implement
-			int curRank = 0;
-			for (S snap : lastSnap) {
-				if (curRank == rank) {
-					return snap;
-				}
-				curRank++;
+			if (rank < 0 || rank >= snaps.size()) {
+				return null;
 			}
-			return null;
+			return snaps.get(snaps.size() - 1 - rank);
 		}
 
 		/**
@@ -68,11 +71,20 @@ public class History<T extends Model<T, S>, S extends SnapShot<T, S>> implements
 		 * @return the first snap that does not come after the given date
 		 */
 		public S getSnapBefore(Date date) {
-			for (S snap : lastSnap) {
-				if (!snap.getDate().after(date))
-					return snap;
+			// Snapshots are logged in chronological order, so binary search for the last
+			// one taken at or before the date
+			long time = date.getTime();
+			int low = 0;
+			int high = snaps.size() - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				if (snaps.get(mid).getTime() <= time) {
+					low = mid + 1;
+				} else {
+					high = mid - 1;
+				}
 			}
-			return null;
+			return high < 0 ? null : snaps.get(high);
 		}
 
 		/*
@@ -82,7 +94,19 @@ public class History<T extends Model<T, S>, S extends SnapShot<T, S>> implements
 		 */
 		@Override
 		public Iterator<S> iterator() {
-			return lastSnap.iterator();
+			ListIterator<S> i = snaps.listIterator(snaps.size());
+			return new Iterator<S>() {
+
+				@Override
+				public boolean hasNext() {
+					return i.hasPrevious();
+				}
+
+				@Override
+				public S next() {
+					return i.previous();
+				}
+			};
 		}
 
 		/*
@@ -92,21 +116,23 @@ public class History<T extends Model<T, S>, S extends SnapShot<T, S>> implements
 		 */
 		@Override
 		public String toString() {
-			String result = lastSnap.toString();
-			for (S snap : lastSnap.getLastSnap()) {
-				result = snap + System.lineSeparator() + result;
+			StringBuilder result = new StringBuilder();
+			for (S snap : snaps) {
+				if (result.length() > 0) {
+					result.append(System.lineSeparator());
+				}
+				result.append(snap);
 			}
-			return result;
+			return result.toString();
 		}
 	}
 
 	private static final long serialVersionUID = -7587766823643659310L;
 
-	private S lastSnap;
+	private ArrayList<S> snaps;
 	private HistoryViewer viewer;
 	private T subject;
 	private Factory<T, S> snapFactory;
-	private int count;
 
 	/**
 	 * Create a new History for the given subject, using the given factory to take
@@ -118,12 +144,66 @@ public class History<T extends Model<T, S>, S extends SnapShot<T, S>> implements
 	 *            the given factory
 	 */
 	public History(T subject, Factory<T, S> snapFactory) {
-		lastSnap = null;
+		snaps = new ArrayList<>();
 		viewer = new HistoryViewer();
 		this.subject = subject;
 		this.snapFactory = snapFactory;
-		lastSnap = snapFactory.makeSnap(subject, null);
-		count = 1;
+		snaps.add(snapFactory.makeSnap(subject, null));
+	}
+
+	/**
+	 * Recreate a History for the given subject from its saved snapshots
+	 * 
+	 * @param subject
+	 *            the given subject
+	 * @param snapFactory
+	 *            the factory used to take new snapshots
+	 * @param snaps
+	 *            the saved snapshots, oldest first. Must not be empty
+	 */
+	History(T subject, Factory<T, S> snapFactory, List<S> snaps) {
+		this.snaps = new ArrayList<>(snaps);
+		this.viewer = new HistoryViewer();
+		this.subject = subject;
+		this.snapFactory = snapFactory;
+	}
+
+	/**
+	 * Read a History saved with Java serialization. Older versions saved only the
+	 * last snapshot, linked to the ones before it, so the list is rebuilt from that
+	 * chain when the save has no list. The chain may still be being read at this
+	 * point, since snapshots refer back to their subject, so it is only walked once
+	 * the whole save has been read
+	 * 
+	 * @param in
+	 *            the stream to read from
+	 * @throws IOException
+	 *             on any problems reading the stream
+	 * @throws ClassNotFoundException
+	 *             if the save refers to a missing class
+	 */
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		ObjectInputStream.GetField fields = in.readFields();
+		viewer = (HistoryViewer) fields.get("viewer", null);
+		subject = (T) fields.get("subject", null);
+		snapFactory = (Factory<T, S>) fields.get("snapFactory", null);
+
+		ObjectStreamClass saved = fields.getObjectStreamClass();
+		if (saved.getField("snaps") != null) {
+			snaps = (ArrayList<S>) fields.get("snaps", null);
+		} else {
+			S lastSnap = (S) fields.get("lastSnap", null);
+			snaps = new ArrayList<>();
+			snaps.add(lastSnap);
+			in.registerValidation(() -> {
+				snaps.clear();
+				for (S snap : lastSnap) {
+					snaps.add(snap);
+				}
+				Collections.reverse(snaps);
+			}, 0);
+		}
 	}
 
 	/**
@@ -132,7 +212,7 @@ public class History<T extends Model<T, S>, S extends SnapShot<T, S>> implements
 	 * @return the last snapshot taken in this history
 	 */
 	public S getLast() {
-		return lastSnap;
+		return snaps.get(snaps.size() - 1);
 	}
 
 	/**
@@ -149,12 +229,12 @@ public class History<T extends Model<T, S>, S extends SnapShot<T, S>> implements
 	 * 
 	 */
 	public void log() {
-		S snap = snapFactory.makeSnap(subject, getLast());
-		if (snap.getDate().before(lastSnap.getDate())) {
+		S lastSnap = getLast();
+		S snap = snapFactory.makeSnap(subject, lastSnap);
+		if (snap.getTime() < lastSnap.getTime()) {
 			throw new ChangeHistoryException();
 		} else {
-			lastSnap = snap;
-			count++;
+			snaps.add(snap);
 		}
 	}
 
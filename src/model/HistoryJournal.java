@@ -0,0 +1,484 @@
+package model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal of history entries stored on disk in numbered
+ * segments. Each record holds the time of the entry, its text and a checksum,
+ * so a segment cut short by a crash is truncated back to its last whole record
+ * when the journal is opened. Only the most recent entries are kept in memory,
+ * but the position of every BLOCK_SIZE'th entry is indexed, so any entry can be
+ * read back without reading the journal from the start
+ *
+ */
+public class HistoryJournal implements Closeable {
+
+	public static final int SEGMENT_SIZE = 1 << 20;
+	public static final int TAIL_SIZE = 128;
+	public static final int BLOCK_SIZE = 64;
+	private static final int CACHED_BLOCKS = 16;
+	private static final String SEGMENT_PREFIX = "segment-";
+	private static final String SEGMENT_SUFFIX = ".log";
+	private static final Logger LOGGER = Logger.getLogger(HistoryJournal.class.getName());
+	static {
+		LOGGER.setLevel(Level.OFF);
+	}
+
+	private final Path dir;
+	// The last TAIL_SIZE entries appended in this session, by index modulo TAIL_SIZE
+	private final String[] tail;
+	private int tailSize;
+	private List<Path> segments;
+	private DataOutputStream out;
+	private long segmentBytes;
+	private int count;
+	// The segment and offset of every BLOCK_SIZE'th entry, as segment << 32 | offset
+	private long[] blocks;
+	private final Map<Integer, String[]> cache;
+	private final List<JournalListener> listeners;
+
+	/**
+	 * Create a HistoryJournal stored in the directory at the given path. Nothing
+	 * is read or written until the journal is first used
+	 *
+	 * @param dir
+	 *            the path to the directory
+	 */
+	public HistoryJournal(Path dir) {
+		this.dir = dir;
+		this.tail = new String[TAIL_SIZE];
+		this.blocks = new long[16];
+		this.cache = new LinkedHashMap<Integer, String[]>(CACHED_BLOCKS, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, String[]> eldest) {
+				return size() > CACHED_BLOCKS;
+			}
+		};
+		this.listeners = new CopyOnWriteArrayList<>();
+	}
+
+	/**
+	 * Notify the given listener of every entry appended to this journal
+	 *
+	 * @param listener
+	 *            the given listener
+	 */
+	public void addListener(JournalListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Stop notifying the given listener
+	 *
+	 * @param listener
+	 *            the given listener
+	 */
+	public void removeListener(JournalListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Append an entry to this journal, then notify the listeners on the calling
+	 * thread. The entry is written to disk when the buffer fills or the journal
+	 * is flushed
+	 *
+	 * @param time
+	 *            when the entry was made in milliseconds since the epoch
+	 * @param entry
+	 *            the text of the entry
+	 */
+	public void append(long time, String entry) {
+		int index;
+		synchronized (this) {
+			index = write(time, entry);
+		}
+		if (index >= 0) {
+			for (JournalListener listener : listeners) {
+				listener.appended(index, entry);
+			}
+		}
+	}
+
+	/**
+	 * Write an entry to this journal
+	 *
+	 * @param time
+	 *            when the entry was made in milliseconds since the epoch
+	 * @param entry
+	 *            the text of the entry
+	 * @return the index of the entry, or -1 if it could not be written
+	 */
+	private int write(long time, String entry) {
+		try {
+			byte[] text = entry.getBytes(StandardCharsets.UTF_8);
+			ByteArrayOutputStream payload = new ByteArrayOutputStream(8 + text.length);
+			DataOutputStream data = new DataOutputStream(payload);
+			data.writeLong(time);
+			data.write(text);
+			byte[] bytes = payload.toByteArray();
+
+			if (out == null || segmentBytes >= SEGMENT_SIZE) {
+				openSegment();
+			}
+			int index = count;
+			if (index % BLOCK_SIZE == 0) {
+				indexBlock(segments.size() - 1, segmentBytes);
+			}
+			writeRecord(out, bytes);
+			segmentBytes += 8 + bytes.length;
+			count++;
+			tail[index % TAIL_SIZE] = entry;
+			tailSize = Math.min(tailSize + 1, TAIL_SIZE);
+			return index;
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, e.toString(), e);
+			return -1;
+		}
+	}
+
+	/**
+	 * Return the number of entries in this journal
+	 *
+	 * @return the number of entries in this journal
+	 * @throws IOException
+	 *             on any problems reading the journal
+	 */
+	public synchronized int size() throws IOException {
+		getSegments();
+		return count;
+	}
+
+	/**
+	 * Return the entry at the given index, oldest first. The most recently
+	 * appended entries are read from memory. Otherwise the block of entries
+	 * around it is read from disk and kept, so reading neighbouring entries is
+	 * cheap
+	 *
+	 * @param index
+	 *            the given index
+	 * @return the entry at the given index
+	 * @throws IOException
+	 *             on any problems reading the journal
+	 */
+	public synchronized String get(int index) throws IOException {
+		if (index < 0 || index >= size()) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+		}
+		if (index >= count - tailSize) {
+			return tail[index % TAIL_SIZE];
+		}
+		int block = index / BLOCK_SIZE;
+		String[] entries = cache.get(block);
+		if (entries == null || entries.length <= index % BLOCK_SIZE) {
+			entries = readBlock(block);
+			cache.put(block, entries);
+		}
+		return entries[index % BLOCK_SIZE];
+	}
+
+	/**
+	 * Read the entries of the given block from disk
+	 *
+	 * @param block
+	 *            the given block
+	 * @return the entries of the given block that were written
+	 * @throws IOException
+	 *             on any problems reading the journal
+	 */
+	private String[] readBlock(int block) throws IOException {
+		flush();
+		String[] entries = new String[Math.min(BLOCK_SIZE, count - block * BLOCK_SIZE)];
+		int segment = (int) (blocks[block] >>> 32);
+		long offset = blocks[block] & 0xffffffffL;
+		int read = 0;
+		while (read < entries.length && segment < segments.size()) {
+			try (DataInputStream in = new DataInputStream(
+					new BufferedInputStream(ModelManager.instance.getAccesor().newInputStream(segments.get(segment))))) {
+				skipFully(in, offset);
+				byte[] payload;
+				while (read < entries.length && (payload = readRecord(in)) != null) {
+					entries[read++] = new String(payload, 8, payload.length - 8, StandardCharsets.UTF_8);
+				}
+			}
+			segment++;
+			offset = 0;
+		}
+		return read == entries.length ? entries : Arrays.copyOf(entries, read);
+	}
+
+	/**
+	 * Record that the next entry starts a block at the given offset of the given
+	 * segment
+	 *
+	 * @param segment
+	 *            the index of the given segment
+	 * @param offset
+	 *            the given offset
+	 */
+	private void indexBlock(int segment, long offset) {
+		int block = count / BLOCK_SIZE;
+		if (block == blocks.length) {
+			blocks = Arrays.copyOf(blocks, blocks.length * 2);
+		}
+		blocks[block] = (long) segment << 32 | offset;
+	}
+
+	/**
+	 * Skip the given number of bytes of the given stream
+	 *
+	 * @param in
+	 *            the given stream
+	 * @param bytes
+	 *            the given number of bytes
+	 * @throws IOException
+	 *             on any problems reading the stream, or if it ends first
+	 */
+	private static void skipFully(InputStream in, long bytes) throws IOException {
+		while (bytes > 0) {
+			long skipped = in.skip(bytes);
+			if (skipped <= 0) {
+				throw new EOFException();
+			}
+			bytes -= skipped;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (out != null) {
+			out.close();
+			out = null;
+		}
+	}
+
+	/**
+	 * Write every appended entry to disk
+	 *
+	 * @throws IOException
+	 *             on any problems writing to the journal
+	 */
+	public synchronized void flush() throws IOException {
+		if (out != null) {
+			out.flush();
+		}
+	}
+
+	/**
+	 * Pass every entry in this journal to the given consumer, oldest first,
+	 * reading them from disk one at a time
+	 *
+	 * @param consumer
+	 *            the given consumer
+	 * @throws IOException
+	 *             on any problems reading the journal
+	 */
+	public synchronized void read(Consumer<String> consumer) throws IOException {
+		flush();
+		for (Path segment : getSegments()) {
+			try (DataInputStream in = new DataInputStream(
+					new BufferedInputStream(ModelManager.instance.getAccesor().newInputStream(segment)))) {
+				byte[] payload;
+				while ((payload = readRecord(in)) != null) {
+					consumer.accept(new String(payload, 8, payload.length - 8, StandardCharsets.UTF_8));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Return the segments of this journal in order, recovering the last one if it
+	 * was cut short and indexing the entries in them
+	 *
+	 * @return the segments of this journal
+	 * @throws IOException
+	 *             on any problems reading the journal
+	 */
+	private List<Path> getSegments() throws IOException {
+		if (segments == null) {
+			Accesor accesor = ModelManager.instance.getAccesor();
+			segments = new ArrayList<>();
+			if (accesor.exists(dir)) {
+				for (Path path : accesor.getChildPaths(dir)) {
+					String name = path.getFileName().toString();
+					if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+						segments.add(path);
+					}
+				}
+			}
+			// Segment numbers are zero padded, so names sort in order
+			Collections.sort(segments);
+			if (!segments.isEmpty()) {
+				recover(segments.get(segments.size() - 1));
+			}
+			for (int segment = 0; segment < segments.size(); segment++) {
+				index(segment);
+			}
+		}
+		return segments;
+	}
+
+	/**
+	 * Start a new segment after the last one
+	 *
+	 * @throws IOException
+	 *             on any problems creating the segment
+	 */
+	private void openSegment() throws IOException {
+		Accesor accesor = ModelManager.instance.getAccesor();
+		List<Path> existing = getSegments();
+		if (out != null) {
+			out.close();
+		}
+		if (dir.getParent() != null && !accesor.exists(dir.getParent())) {
+			accesor.createDirectory(dir.getParent());
+		}
+		if (!accesor.exists(dir)) {
+			accesor.createDirectory(dir);
+		}
+
+		int number = 0;
+		if (!existing.isEmpty()) {
+			String last = existing.get(existing.size() - 1).getFileName().toString();
+			number = Integer.parseInt(last.substring(SEGMENT_PREFIX.length(), last.length() - SEGMENT_SUFFIX.length()));
+		}
+		Path segment = dir.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, number + 1, SEGMENT_SUFFIX));
+		out = new DataOutputStream(new BufferedOutputStream(accesor.newOutputStream(segment)));
+		segmentBytes = 0;
+		existing.add(segment);
+	}
+
+	/**
+	 * Count and index the entries in the given segment
+	 *
+	 * @param segment
+	 *            the index of the given segment
+	 * @throws IOException
+	 *             on any problems reading the segment
+	 */
+	private void index(int segment) throws IOException {
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(ModelManager.instance.getAccesor().newInputStream(segments.get(segment))))) {
+			long offset = 0;
+			byte[] payload;
+			while ((payload = readRecord(in)) != null) {
+				if (count % BLOCK_SIZE == 0) {
+					indexBlock(segment, offset);
+				}
+				offset += 8 + payload.length;
+				count++;
+			}
+		}
+	}
+
+	/**
+	 * Truncate the given segment to its last whole record
+	 *
+	 * @param segment
+	 *            the given segment
+	 * @throws IOException
+	 *             on any problems reading or writing the segment
+	 */
+	private void recover(Path segment) throws IOException {
+		Accesor accesor = ModelManager.instance.getAccesor();
+		ByteArrayOutputStream contents = new ByteArrayOutputStream();
+		try (InputStream in = accesor.newInputStream(segment)) {
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				contents.write(buffer, 0, read);
+			}
+		}
+
+		ByteArrayOutputStream valid = new ByteArrayOutputStream(contents.size());
+		DataOutputStream validOut = new DataOutputStream(valid);
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(contents.toByteArray()));
+		byte[] payload;
+		while ((payload = readRecord(in)) != null) {
+			writeRecord(validOut, payload);
+		}
+
+		if (valid.size() < contents.size()) {
+			LOGGER.log(Level.WARNING, "Recovered journal segment {0}", segment);
+			try (OutputStream segmentOut = accesor.newOutputStream(segment)) {
+				valid.writeTo(segmentOut);
+			}
+		}
+	}
+
+	/**
+	 * Read the payload of the next whole record from the given stream
+	 *
+	 * @param in
+	 *            the given stream
+	 * @return the payload of the next record, or null at the end of the stream or
+	 *         a damaged record
+	 * @throws IOException
+	 *             on any problems reading the stream
+	 */
+	private static byte[] readRecord(DataInputStream in) throws IOException {
+		try {
+			int length = in.readInt();
+			int checksum = in.readInt();
+			if (length < 8 || length > SEGMENT_SIZE) {
+				return null;
+			}
+			byte[] payload = new byte[length];
+			in.readFully(payload);
+
+			CRC32 crc = new CRC32();
+			crc.update(payload);
+			return (int) crc.getValue() == checksum ? payload : null;
+		} catch (EOFException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Write a record with the given payload to the given stream
+	 *
+	 * @param out
+	 *            the given stream
+	 * @param payload
+	 *            the given payload
+	 * @throws IOException
+	 *             on any problems writing to the stream
+	 */
+	private static void writeRecord(DataOutputStream out, byte[] payload) throws IOException {
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+		out.writeInt(payload.length);
+		out.writeInt((int) crc.getValue());
+		out.write(payload);
+	}
+
+}
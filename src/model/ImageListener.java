@@ -0,0 +1,39 @@
+package model;
+
+import java.nio.file.Path;
+
+/**
+ * Notified as images are added to and removed from the catalog of the
+ * ModelManager. An image that is renamed, retagged or moved is removed from
+ * its old path and added at its new one
+ *
+ */
+public interface ImageListener {
+
+	/**
+	 * Called after the given image was added to the catalog at the given path
+	 * 
+	 * @param image
+	 *            the given image
+	 * @param path
+	 *            the given path
+	 */
+	void imageAdded(ImageModel image, Path path);
+
+	/**
+	 * Called after the given image was removed from the given path in the catalog
+	 * 
+	 * @param image
+	 *            the given image
+	 * @param path
+	 *            the path the image had
+	 */
+	void imageRemoved(ImageModel image, Path path);
+
+	/**
+	 * Called after every image was removed from the catalog, when a catalog is
+	 * loaded or the ModelManager is cleared
+	 * 
+	 */
+	void cleared();
+}
@@ -5,12 +5,11 @@ import java.net.URLConnection;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collection;
 import java.util.LinkedList;
 import java.util.TreeSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -23,9 +22,6 @@ import javafx.scene.image.Image;
 public class ImageModel implements Model<ImageModel, ImageSnapShot> {
 
 	private static final long serialVersionUID = 3832645612902527342L;
-	private static final Pattern extPattern = Pattern.compile("(.*)(\\..*)");
-	private static final Pattern namePattern = Pattern.compile("([^\\s\\-@][^\\-@]*)(?: -(?: @[^@\\-\\s]+)+)?");
-	private static final Pattern tagPattern = Pattern.compile("@([^@\\-\\s]+)");
 	private static final Logger LOGGER = Logger.getLogger(ImageModel.class.getName());
 
 	static {
@@ -40,11 +36,8 @@ public class ImageModel implements Model<ImageModel, ImageSnapShot> {
 	 * @return all the tags encoded in the given string
 	 */
 	public static LinkedList<String> getTags(String taggedName) {
-		Matcher m = tagPattern.matcher(taggedName);
 		LinkedList<String> tags = new LinkedList<>();
-		while (m.find()) {
-			tags.add(m.group(1));
-		}
+		TaggedNameCodec.addTags(taggedName, 0, taggedName.length(), tags);
 		return tags;
 	}
 
@@ -56,10 +49,23 @@ public class ImageModel implements Model<ImageModel, ImageSnapShot> {
 	 * @return the un-tagged name encoded in the given string
 	 */
 	public static String getUntaggedName(String taggedName) {
-		Matcher m = namePattern.matcher(taggedName);
-		if (!Model.isLegalFilename(taggedName) || !m.matches())
+		int length = TaggedNameCodec.parse(taggedName, taggedName.length(), null);
+		if (length < 0)
 			throw new IllegalArgumentException(taggedName);
-		return m.group(1);
+		return taggedName.substring(0, length);
+	}
+
+	/**
+	 * Return the tagged name for the given untagged name and tags
+	 * 
+	 * @param untaggedName
+	 *            the given untagged name
+	 * @param tags
+	 *            the given tags, in order
+	 * @return the tagged name for the given untagged name and tags
+	 */
+	static String toTaggedName(String untaggedName, Collection<String> tags) {
+		return TaggedNameCodec.format(untaggedName, tags, "");
 	}
 
 	private String untaggedName;
@@ -67,6 +73,20 @@ public class ImageModel implements Model<ImageModel, ImageSnapShot> {
 	private String extension;
 	private TreeSet<String> tags;
 	private History<ImageModel, ImageSnapShot> history;
+	// The tagged name of the file when it was catalogued as it was named instead
+	// of being renamed to toTaggedName(untaggedName, tags), otherwise null
+	private String fileName;
+
+	// Derived from the fields above, and rebuilt when they change
+	private transient String name;
+	private transient Path path;
+	private transient Path pathDir;
+	private transient Path sortKey;
+
+	// The catalog this image was restored from, while its history has not been
+	// read from it yet
+	private transient CatalogReader catalog;
+	private transient int catalogId;
 
 	/**
 	 * Creates a new ImageModel to represent the given path
@@ -78,7 +98,7 @@ public class ImageModel implements Model<ImageModel, ImageSnapShot> {
 	 */
 	protected ImageModel(Path path, DirectoryModel parent) throws IOException {
 		LOGGER.log(Level.FINE, "Create object at {0}", path.getFileName());
-		if (!ModelManager.instance.getAccesor().exists(path)) {
+		if (!ModelManager.instance.exists(path)) {
 			throw new NoSuchFileException(path.toString());
 		}
 
@@ -86,7 +106,7 @@ public class ImageModel implements Model<ImageModel, ImageSnapShot> {
 			throw new NullPointerException();
 		}
 
-		path = ModelManager.instance.getAccesor().toRealPath(path);
+		path = ModelManager.instance.toRealPath(path);
 
 		String fullName = path.getFileName().toString();
 
@@ -94,25 +114,96 @@ public class ImageModel implements Model<ImageModel, ImageSnapShot> {
 			throw new NotImageException(path.toString());
 		}
 
-		Matcher matcher = extPattern.matcher(fullName);
-		if (!matcher.matches()) {
+		int dot = TaggedNameCodec.extensionStart(fullName);
+		if (dot < 0) {
 			throw new IllegalArgumentException(fullName);
 		}
+		extension = fullName.substring(dot);
 
-		String taggedName = matcher.group(1);
-		extension = matcher.group(2);
-
-		untaggedName = getUntaggedName(taggedName);
 		tags = new TreeSet<>();
-		tags.addAll(getTags(taggedName));
+		int length = TaggedNameCodec.parse(fullName, dot, tags);
+		if (length < 0) {
+			throw new IllegalArgumentException(fullName.substring(0, dot));
+		}
+		untaggedName = fullName.substring(0, length);
 		dir = parent;
 
-		ModelManager.instance.getAccesor().move(path, getPath());
+		// Only files not already named after their tags are renamed, or kept as
+		// they are named if the ModelManager does not normalize names on a scan
+		if (!TaggedNameCodec.isFormatted(fullName, dot, untaggedName, tags)) {
+			if (ModelManager.instance.isNormalizeOnScan()) {
+				ModelManager.instance.move(path, getPath());
+			} else {
+				fileName = fullName.substring(0, dot);
+			}
+		}
 
+		sortKey = getPath();
 		history = new History<>(this, new ImageSnapShot.ImageSnapShotFactory());
+		ModelManager.instance.getIndex().put(this);
 		dir.add(this);
 	}
 
+	/**
+	 * Recreate an ImageModel from a saved catalog without accessing the
+	 * filesystem. Its directory is set with restore
+	 * 
+	 * @param untaggedName
+	 *            the untagged name of the image
+	 * @param extension
+	 *            the extension of the image
+	 * @param tags
+	 *            the tags of the image
+	 * @param fileName
+	 *            the tagged name of the file if it was not renamed after its tags,
+	 *            otherwise null
+	 */
+	ImageModel(String untaggedName, String extension, Collection<String> tags, String fileName) {
+		this.untaggedName = untaggedName;
+		this.extension = extension;
+		this.tags = new TreeSet<>(tags);
+		this.fileName = fileName;
+	}
+
+	/**
+	 * Set the directory of this ImageModel while recreating it from a saved
+	 * catalog. Its history is read from the catalog the first time it is needed
+	 * 
+	 * @param dir
+	 *            the directory this image is in
+	 * @param catalog
+	 *            the catalog the image is read from
+	 * @param id
+	 *            the id of the image in the catalog
+	 */
+	void restore(DirectoryModel dir, CatalogReader catalog, int id) {
+		this.dir = dir;
+		this.catalog = catalog;
+		this.catalogId = id;
+	}
+
+	/**
+	 * Read the history of this image from the catalog it was restored from, if it
+	 * has not been read yet
+	 * 
+	 */
+	void decode() {
+		history();
+	}
+
+	/**
+	 * Return the history of this image, reading it from the catalog it was
+	 * restored from if it has not been read yet
+	 * 
+	 * @return the history of this image
+	 */
+	private History<ImageModel, ImageSnapShot> history() {
+		if (history == null) {
+			history = catalog.readHistory(this, catalogId);
+		}
+		return history;
+	}
+
 	/**
 	 * Add the given tag to this image
 	 * 
@@ -123,14 +214,26 @@ public class ImageModel implements Model<ImageModel, ImageSnapShot> {
 	 */
 	public void addTag(String tag) throws IOException {
 		LOGGER.log(Level.INFO, "Add tag {0} to {1}", new Object[] { tag, this });
-		if (tag == null || tag.matches(".*[\\\\/:\\*\\?\"<>|\\-@].*"))
+		if (!isLegalTag(tag))
 			throw new IllegalArgumentException(tag);
 
 		tags.add(tag);
+		invalidateName();
 		updateFile();
 
 	}
 
+	/**
+	 * Return true iff the given tag can be part of a file name
+	 * 
+	 * @param tag
+	 *            the given tag
+	 * @return true iff the given tag can be part of a file name
+	 */
+	public final static boolean isLegalTag(String tag) {
+		return TaggedNameCodec.isLegalTag(tag);
+	}
+
 	public final static boolean isImage(String name) {
 		String guessedType = URLConnection.guessContentTypeFromName(name);
 		return guessedType != null && guessedType.startsWith("image");
@@ -151,9 +254,20 @@ public class ImageModel implements Model<ImageModel, ImageSnapShot> {
 	public void deleteTag(String tag) throws IOException {
 		LOGGER.log(Level.INFO, "Removed tag {0} from {1}", new Object[] { tag, this });
 		tags.remove(tag);
+		invalidateName();
 		updateFile();
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see model.Model#compareTo(java.lang.Object)
+	 */
+	@Override
+	public int compareTo(ImageModel other) {
+		return getSortKey().compareTo(other.getSortKey());
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -203,7 +317,7 @@ public class ImageModel implements Model<ImageModel, ImageSnapShot> {
 	 */
 	@Override
 	public History<ImageModel, ImageSnapShot>.HistoryViewer getHistory() {
-		return history.getViewer();
+		return history().getViewer();
 	}
 
 	/*
@@ -213,14 +327,10 @@ public class ImageModel implements Model<ImageModel, ImageSnapShot> {
 	 */
 	@Override
 	public String getName() {
-		String taggedName = untaggedName;
-		if (tags.size() > 0) {
-			taggedName += " -";
+		if (name == null) {
+			name = fileName != null ? fileName : toTaggedName(untaggedName, tags);
 		}
-		for (String tag : tags) {
-			taggedName += " @" + tag;
-		}
-		return taggedName;
+		return name;
 	}
 
 	/**
@@ -242,9 +352,28 @@ public class ImageModel implements Model<ImageModel, ImageSnapShot> {
 	 */
 	@Override
 	public Path getPath() {
-		Path name = Paths.get(getName() + getExtension());
 		Path dirPath = getDirectoryPath();
-		return (dirPath == null) ? name : dirPath.resolve(name);
+		// The directory's path is a new object whenever it or an ancestor moves
+		if (path == null || pathDir != dirPath) {
+			Path fileName = Paths.get(getName() + getExtension());
+			path = (dirPath == null) ? fileName : dirPath.resolve(fileName);
+			pathDir = dirPath;
+		}
+		return path;
+	}
+
+	/**
+	 * Return the path this image is sorted by in its directory. It is the path of
+	 * this image when it was last placed in its directory, so that it can still be
+	 * found there while it is being changed
+	 * 
+	 * @return the path this image is sorted by
+	 */
+	Path getSortKey() {
+		if (sortKey == null) {
+			sortKey = getPath();
+		}
+		return sortKey;
 	}
 
 	/**
@@ -258,6 +387,17 @@ public class ImageModel implements Model<ImageModel, ImageSnapShot> {
 		return (TreeSet<String>) tags.clone();
 	}
 
+	/**
+	 * Return true iff this image has the given tag
+	 * 
+	 * @param tag
+	 *            the given tag
+	 * @return true iff this image has the given tag
+	 */
+	public boolean hasTag(String tag) {
+		return tags.contains(tag);
+	}
+
 	/**
 	 * Return this image's unttaged name
 	 * 
@@ -305,7 +445,8 @@ public class ImageModel implements Model<ImageModel, ImageSnapShot> {
 		LOGGER.log(Level.INFO, "Renamed {0} to {1}", new Object[] { this, taggedName });
 		untaggedName = getUntaggedName(taggedName);
 		tags.clear();
-		tags.addAll(getTags(taggedName));
+		TaggedNameCodec.addTags(taggedName, untaggedName.length(), taggedName.length(), tags);
+		invalidateName();
 		updateFile();
 
 	}
@@ -335,9 +476,10 @@ public class ImageModel implements Model<ImageModel, ImageSnapShot> {
 	 *             on errors updating the associated file
 	 */
 	public void setUntaggedName(String untaggedName) throws IOException {
-		if (untaggedName == null || untaggedName.matches(".*[\\\\/:\\*\\?\"<>|\\-].*"))
+		if (!TaggedNameCodec.isLegalUntaggedName(untaggedName))
 			throw new IllegalArgumentException(untaggedName);
 		this.untaggedName = untaggedName;
+		invalidateName();
 		updateFile();
 
 	}
@@ -365,6 +507,60 @@ public class ImageModel implements Model<ImageModel, ImageSnapShot> {
 		tags.clear();
 		LOGGER.log(Level.FINE, "{0} jumped to some state", this);
 		tags.addAll(snap.getTags());
+		invalidateName();
+		if (!snap.isNormalized()) {
+			fileName = snap.getTaggedName();
+		}
+	}
+
+	/**
+	 * Discard the cached name and path of this image after its untagged name or
+	 * tags change. The file is then named after them
+	 * 
+	 */
+	private void invalidateName() {
+		fileName = null;
+		name = null;
+		path = null;
+	}
+
+	/**
+	 * Return true iff the file of this image is named after its untagged name and
+	 * tags. It is not if it was catalogued without normalizing its name
+	 * 
+	 * @return true iff the file of this image is named after its tags
+	 */
+	public boolean isNormalized() {
+		return fileName == null;
+	}
+
+	/**
+	 * Return the path the file of this image has once its name is normalized
+	 * 
+	 * @return the path the file of this image has once its name is normalized
+	 */
+	public Path getNormalizedPath() {
+		return getPathWithTags(tags);
+	}
+
+	/**
+	 * Return the tagged name of the file of this image if it is not normalized
+	 * 
+	 * @return the tagged name of the file of this image, or null if it is
+	 *         normalized
+	 */
+	String getFileName() {
+		return fileName;
+	}
+
+	/**
+	 * Sort this image by its current path. Only safe when its order relative to
+	 * the other images in its directory is unchanged, or it is not in the
+	 * directory's set
+	 * 
+	 */
+	void resetSortKey() {
+		sortKey = getPath();
 	}
 
 	/*
@@ -377,6 +573,32 @@ public class ImageModel implements Model<ImageModel, ImageSnapShot> {
 		return getDirectory().getName() + "/" + getName() + getExtension();
 	}
 
+	/**
+	 * Return the path this image would have if it had the given tags
+	 * 
+	 * @param newTags
+	 *            the given tags, in order
+	 * @return the path this image would have with the given tags
+	 */
+	Path getPathWithTags(Collection<String> newTags) {
+		return dir.getPath().resolve(TaggedNameCodec.format(untaggedName, newTags, extension));
+	}
+
+	/**
+	 * Record that the file associated with this ImageModel has already been moved
+	 * to the path for the given tags, and give it those tags
+	 * 
+	 * @param newTags
+	 *            the given tags
+	 */
+	void retagged(Collection<String> newTags) {
+		LOGGER.log(Level.FINE, "Retag {0} with {1}", new Object[] { this, newTags });
+		tags.clear();
+		tags.addAll(newTags);
+		invalidateName();
+		updated();
+	}
+
 	/**
 	 * Updates the file associated with this ImageModel.
 	 * 
@@ -386,19 +608,84 @@ public class ImageModel implements Model<ImageModel, ImageSnapShot> {
 	 *             update
 	 */
 	private void updateFile() throws IOException {
-		LOGGER.log(Level.FINE, "Move {0} to {1}", new Object[] { history.getLast().getPath(), getPath() });
+		LOGGER.log(Level.FINE, "Move {0} to {1}", new Object[] { history().getLast().getPath(), getPath() });
 		try {
-			ModelManager.instance.getAccesor().move(history.getLast().getPath(), getPath());
+			ModelManager.instance.move(history().getLast().getPath(), getPath());
 		} catch (IOException e) {
 			LOGGER.log(Level.SEVERE, e.toString(), e);
-			toState(history.getLast());
+			toState(history().getLast());
 			throw e;
 		}
-		DirectoryModel lastDir = history.getLast().getDir();
+		updated();
+	}
+
+	/**
+	 * Update this ImageModel to match an image that was moved or renamed to the
+	 * given path outside of this application. The file is then renamed to this
+	 * image's canonical name if needed, unless the ModelManager keeps names as
+	 * they are on a scan
+	 * 
+	 * @param newPath
+	 *            the path the image was moved to
+	 * @throws IOException
+	 *             on any problems accessing the given path
+	 */
+	void relocated(Path newPath) throws IOException {
+		LOGGER.log(Level.INFO, "{0} relocated to {1}", new Object[] { this, newPath });
+		String fullName = newPath.getFileName().toString();
+		int dot = TaggedNameCodec.extensionStart(fullName);
+		if (dot < 0 || !fullName.startsWith(extension, dot) || fullName.length() - dot != extension.length())
+			throw new NotImageException(newPath.toString());
+
+		String taggedName = fullName.substring(0, dot);
+		DirectoryModel target = ModelManager.instance.getDir(newPath.getParent());
+		if (target == null)
+			throw new NoSuchFileException(newPath.getParent().toString());
+		String newUntaggedName = getUntaggedName(taggedName);
+
+		this.dir = target;
+		untaggedName = newUntaggedName;
+		tags.clear();
+		TaggedNameCodec.addTags(taggedName, newUntaggedName.length(), taggedName.length(), tags);
+		invalidateName();
+		if (!taggedName.equals(getName())) {
+			if (ModelManager.instance.isNormalizeOnScan()) {
+				try {
+					ModelManager.instance.move(newPath, getPath());
+				} catch (IOException e) {
+					LOGGER.log(Level.SEVERE, e.toString(), e);
+					toState(history().getLast());
+					throw e;
+				}
+			} else {
+				fileName = taggedName;
+				name = null;
+				path = null;
+			}
+		}
+		updated();
+	}
+
+	/**
+	 * Record that the file associated with this ImageModel has been moved from the
+	 * path in its last snapshot to match the state of this ImageModel
+	 * 
+	 */
+	private void updated() {
+		ImageSnapShot last = history().getLast();
+		ModelIndex index = ModelManager.instance.getIndex();
+		index.remove(last.getDir().getPath(), last.getTaggedName(), last.getUntaggedName(), extension,
+				last.getTags(), this);
+		index.put(this);
+
+		DirectoryModel lastDir = last.getDir();
 		if (!lastDir.equals(dir)) {
 			lastDir.remove(this);
+			resetSortKey();
 			dir.add(this);
+		} else {
+			dir.resort(this);
 		}
-		history.log();
+		history().log();
 	}
 }
@@ -1,9 +1,7 @@
 package model;
 
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
@@ -30,24 +28,17 @@ public class ImageSnapShot extends SnapShot<ImageModel, ImageSnapShot> {
 
 	private static final long serialVersionUID = 283169502800702477L;
 
-	private static LinkedList<ImageSnapShot> allHistory = new LinkedList<ImageSnapShot>();
-
-	/**
-	 * Return a list containing every ImageSnapShot ever taken in chrnological order
-	 * 
-	 * @return a list containing every ImageSnapShot ever taken in chrnological
-	 *         order
-	 */
-	@SuppressWarnings("unchecked")
-	public static List<ImageSnapShot> getAllHistory() {
-		return (List<ImageSnapShot>) (allHistory.clone());
-	}
+	private static final String[] NO_TAGS = new String[0];
 
 	private final String untaggedName, taggedName;
 	private final DirectoryModel dir;
 
 	private final String[] tags;
 
+	// The tags added and removed since the last snapshot, found when it is taken
+	private transient String[] addedTags;
+	private transient String[] removedTags;
+
 	/**
 	 * Create a new snapshot of the given image
 	 * 
@@ -72,7 +63,38 @@ public class ImageSnapShot extends SnapShot<ImageModel, ImageSnapShot> {
 		this.untaggedName = subject.getUntaggedName();
 		this.taggedName = subject.getName();
 		this.tags = subject.getTags().toArray(new String[0]);
-		allHistory.add(this);
+		diffTags();
+		ModelManager.instance.getJournal().append(getTime(), toString());
+	}
+
+	/**
+	 * Recreate a snapshot of the given image from a saved catalog
+	 * 
+	 * @param subject
+	 *            the given image
+	 * @param lastSnap
+	 *            the last snapshot taken of the given image
+	 * @param time
+	 *            when the snapshot was taken in milliseconds since the epoch
+	 * @param dir
+	 *            the directory the image was in
+	 * @param untaggedName
+	 *            the untagged name the image had
+	 * @param tags
+	 *            the tags the image had, in order
+	 * @param taggedName
+	 *            the name the file had if it was not named after its tags,
+	 *            otherwise null
+	 */
+	ImageSnapShot(ImageModel subject, ImageSnapShot lastSnap, long time, DirectoryModel dir, String untaggedName,
+			String[] tags, String taggedName) {
+		super(subject, lastSnap, time);
+		this.dir = dir;
+		this.untaggedName = untaggedName;
+		this.taggedName = taggedName != null ? taggedName
+				: ImageModel.toTaggedName(untaggedName, Arrays.asList(tags));
+		this.tags = tags;
+		diffTags();
 	}
 
 	/**
@@ -104,6 +126,16 @@ public class ImageSnapShot extends SnapShot<ImageModel, ImageSnapShot> {
 		return taggedName;
 	}
 
+	/**
+	 * Return true iff the file of the subject was named after its untagged name
+	 * and tags when this snapshot was taken
+	 * 
+	 * @return true iff the file was named after its tags
+	 */
+	boolean isNormalized() {
+		return TaggedNameCodec.isFormatted(taggedName, taggedName.length(), untaggedName, Arrays.asList(tags));
+	}
+
 	/**
 	 * Return the tags of the subject of this snapshot when it was taken
 	 * 
@@ -113,6 +145,16 @@ public class ImageSnapShot extends SnapShot<ImageModel, ImageSnapShot> {
 		return new LinkedList<String>(Arrays.asList(tags.clone()));
 	}
 
+	/**
+	 * Return the tags of the subject of this snapshot when it was taken, without
+	 * copying them. The returned array must not be changed
+	 * 
+	 * @return the tags of the subject of this snapshot when it was taken
+	 */
+	String[] getTagArray() {
+		return tags;
+	}
+
 	/**
 	 * Return the untagged name of the subject of this snapshot when it was taken
 	 * 
@@ -122,88 +164,133 @@ public class ImageSnapShot extends SnapShot<ImageModel, ImageSnapShot> {
 		return untaggedName;
 	}
 
-	/*
-	 * For serialization
-	 */
-	private void readObject(ObjectInputStream ois) throws ClassNotFoundException, IOException {
-		ois.defaultReadObject();
-		allHistory = (LinkedList<ImageSnapShot>) ois.readObject(); // Read the global history
-	}
-
 	/*
 	 * (non-Javadoc)
 	 * 
-	 * @see java.lang.Object#toString()
+	 * @see model.SnapShot#describe(java.util.List)
 	 */
 	@Override
-	public String toString() {
+	protected String describe(List<Model<?, ?>> named) {
 		ImageSnapShot lastSnap = getLastSnap();
+		String date = formatDate();
 		if (lastSnap == null) {
-			return String.format("%2$tc create \"%1$s\"", this.untaggedName, getDate());
+			return date + " create \"" + this.untaggedName + '"';
 		}
 
-		String result = String.format("%2$tc edit \"%1$s\"", lastSnap.untaggedName, getDate());
+		String newLine = System.lineSeparator();
+		StringBuilder result = new StringBuilder(128);
+		result.append(date).append(" edit \"").append(lastSnap.untaggedName).append('"');
 		boolean change = false;
 
 		if (!lastSnap.dir.equals(this.dir)) {
-			result += String.format("%n\tMove from:\t%1$s %n\tto:\t\t%2$s", lastSnap.dir, this.dir);
+			result.append(newLine).append("\tMove from:\t").append(lastSnap.dir).append(' ').append(newLine)
+					.append("\tto:\t\t").append(this.dir);
+			named.add(lastSnap.dir);
+			named.add(this.dir);
 			change = true;
 		}
 
 		if (!lastSnap.untaggedName.equals(this.untaggedName)) {
-			result += String.format("%n\tRe-name from \"%1$s\" to \"%2$s\"", lastSnap.untaggedName, this.untaggedName);
+			result.append(newLine).append("\tRe-name from \"").append(lastSnap.untaggedName).append("\" to \"")
+					.append(this.untaggedName).append('"');
 			change = true;
 		}
-		
+
+		if (addedTags == null) {
+			// Snapshots read with Java serialization did not find them when taken
+			diffTags();
+		}
 		if (!Arrays.equals(lastSnap.tags, this.tags)) {
 			change = true;
-			LinkedList<String> addedTags = new LinkedList<>();
-			LinkedList<String> removedTags = new LinkedList<>();
-			
-			for(int i = 0; i < lastSnap.tags.length; i++) {
-				String tag = lastSnap.tags[i];
-				if(!Arrays.asList(this.tags).contains(tag)) {
-					removedTags.add(tag);
-				}
-			}
-			
-			for(int i = 0; i < this.tags.length; i++) {
-				String tag = this.tags[i];
-				if(!Arrays.asList(lastSnap.tags).contains(tag)) {
-					addedTags.add(tag);
-				}
-			}
-			
-			if (addedTags.size() == 1) {
-				result += String.format("%n\tAdd tag \"%1$s\"", addedTags.getFirst());
-			} else if (addedTags.size() > 1) {
-				result += String.format("%n\tAdd tags %1$s", addedTags);
-			}
-			
-			if (removedTags.size() == 1) {
-				result += String.format("%n\tRemove tag \"%1$s\"", removedTags.getFirst());
-			} else if (removedTags.size() > 1) {
-				result += String.format("%n\tRemove tags %1$s", removedTags);
-			}
+			appendTags(result, newLine, "Add", addedTags);
+			appendTags(result, newLine, "Remove", removedTags);
 		}
 
 		if (!lastSnap.taggedName.equals(this.taggedName)) {
-			result += String.format("%n\t\tFinal tagged name \"%1$s\"", this.taggedName);
+			result.append(newLine).append("\t\tFinal tagged name \"").append(this.taggedName).append('"');
 			change = true;
 		}
-		
-		if(change) {
-			return result;
+
+		if (change) {
+			return result.toString();
 		}
-		return String.format("%2$tc no change to \"%1$s\"", lastSnap.untaggedName, getDate());
+		return date + " no change to \"" + lastSnap.untaggedName + '"';
 	}
 
-	/*
-	 * For serialization
+	/**
+	 * Find the tags added and removed since the last snapshot by merging the tags
+	 * of both. Tags are kept sorted, so this takes one pass over each
+	 * 
 	 */
-	private void writeObject(ObjectOutputStream oos) throws IOException {
-		oos.defaultWriteObject();
-		oos.writeObject(allHistory); // write the global history down
+	private void diffTags() {
+		ImageSnapShot lastSnap = getLastSnap();
+		if (lastSnap == null || Arrays.equals(lastSnap.tags, this.tags)) {
+			addedTags = NO_TAGS;
+			removedTags = NO_TAGS;
+			return;
+		}
+
+		String[] lastTags = lastSnap.tags;
+		String[] tags = this.tags;
+		if (!isSorted(lastTags) || !isSorted(tags)) {
+			lastTags = lastTags.clone();
+			tags = tags.clone();
+			Arrays.sort(lastTags);
+			Arrays.sort(tags);
+		}
+		List<String> added = new ArrayList<>();
+		List<String> removed = new ArrayList<>();
+		int i = 0, j = 0;
+		while (i < lastTags.length || j < tags.length) {
+			int comparison = i == lastTags.length ? 1 : j == tags.length ? -1 : lastTags[i].compareTo(tags[j]);
+			if (comparison < 0) {
+				removed.add(lastTags[i++]);
+			} else if (comparison > 0) {
+				added.add(tags[j++]);
+			} else {
+				i++;
+				j++;
+			}
+		}
+		addedTags = added.isEmpty() ? NO_TAGS : added.toArray(NO_TAGS);
+		removedTags = removed.isEmpty() ? NO_TAGS : removed.toArray(NO_TAGS);
+	}
+
+	/**
+	 * Return true iff the given tags are in strictly increasing order
+	 * 
+	 * @param tags
+	 *            the given tags
+	 * @return true iff the given tags are sorted
+	 */
+	private static boolean isSorted(String[] tags) {
+		for (int i = 1; i < tags.length; i++) {
+			if (tags[i - 1].compareTo(tags[i]) >= 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Append a line saying the given tags were added or removed, unless there are
+	 * none
+	 * 
+	 * @param result
+	 *            the description being rendered
+	 * @param newLine
+	 *            the line separator
+	 * @param action
+	 *            "Add" or "Remove"
+	 * @param tags
+	 *            the given tags
+	 */
+	private static void appendTags(StringBuilder result, String newLine, String action, String[] tags) {
+		if (tags.length == 1) {
+			result.append(newLine).append('\t').append(action).append(" tag \"").append(tags[0]).append('"');
+		} else if (tags.length > 1) {
+			result.append(newLine).append('\t').append(action).append(" tags ").append(Arrays.toString(tags));
+		}
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,141 @@
+package model;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A Spliterator over every image under a set of directories, visiting each
+ * directory's images in order before its subdirectories. Directories are only
+ * read as the traversal reaches them, and pending directories are handed off
+ * when splitting so subtrees can be traversed in parallel
+ *
+ */
+class ImageSpliterator implements Spliterator<ImageModel> {
+
+	private Spliterator<ImageModel> images;
+	private ArrayDeque<DirectoryModel> pending;
+
+	/**
+	 * Create a ImageSpliterator over every image under the given directory
+	 *
+	 * @param dir
+	 *            the given directory
+	 */
+	ImageSpliterator(DirectoryModel dir) {
+		this.pending = new ArrayDeque<>();
+		this.pending.add(dir);
+	}
+
+	/**
+	 * Create a ImageSpliterator over the given images and every image under the
+	 * given directories
+	 *
+	 * @param images
+	 *            the given images, may be null
+	 * @param pending
+	 *            the given directories
+	 */
+	private ImageSpliterator(Spliterator<ImageModel> images, ArrayDeque<DirectoryModel> pending) {
+		this.images = images;
+		this.pending = pending;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.util.Spliterator#tryAdvance(java.util.function.Consumer)
+	 */
+	@Override
+	public boolean tryAdvance(Consumer<? super ImageModel> action) {
+		while (images == null || !images.tryAdvance(action)) {
+			if (!descend()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.util.Spliterator#forEachRemaining(java.util.function.Consumer)
+	 */
+	@Override
+	public void forEachRemaining(Consumer<? super ImageModel> action) {
+		do {
+			if (images != null) {
+				images.forEachRemaining(action);
+			}
+		} while (descend());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.util.Spliterator#trySplit()
+	 */
+	@Override
+	public Spliterator<ImageModel> trySplit() {
+		if (pending.size() > 1) {
+			ArrayDeque<DirectoryModel> half = new ArrayDeque<>();
+			for (int i = pending.size() / 2; i > 0; i--) {
+				half.add(pending.pollLast());
+			}
+			return new ImageSpliterator(null, half);
+		}
+		if (pending.size() == 1 && images != null) {
+			ArrayDeque<DirectoryModel> rest = new ArrayDeque<>();
+			rest.add(pending.poll());
+			return new ImageSpliterator(null, rest);
+		}
+		if (images != null) {
+			return images.trySplit();
+		}
+		if (descend()) {
+			return trySplit();
+		}
+		return null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.util.Spliterator#estimateSize()
+	 */
+	@Override
+	public long estimateSize() {
+		return Long.MAX_VALUE;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.util.Spliterator#characteristics()
+	 */
+	@Override
+	public int characteristics() {
+		return Spliterator.DISTINCT | Spliterator.NONNULL;
+	}
+
+	/**
+	 * Move on to the images of the next pending directory, queueing its
+	 * subdirectories
+	 *
+	 * @return false if there are no more directories
+	 */
+	private boolean descend() {
+		DirectoryModel dir = pending.poll();
+		if (dir == null) {
+			images = null;
+			return false;
+		}
+		// Push in reverse so subdirectories are visited in order
+		for (Iterator<DirectoryModel> i = dir.getSubdirectoriesView().descendingIterator(); i.hasNext();) {
+			pending.push(i.next());
+		}
+		images = dir.getImagesView().spliterator();
+		return true;
+	}
+}
@@ -0,0 +1,482 @@
+package model;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An Accesor that passes every call on to another one and records, for each
+ * operation, how often it was called, how often it failed, how many bytes it
+ * read or wrote and a histogram of how long it took. Counters are striped, so
+ * threads calling at once do not contend on them and the accesor can stay on
+ * under load. The statistics can be read at any time, and dumped to a file
+ * periodically
+ *
+ */
+public class InstrumentedAccesor implements Accesor, Closeable {
+
+	/**
+	 * The number of buckets of a latency histogram. Bucket i counts the calls
+	 * that took less than 2^i nanoseconds, but not less than 2^(i-1)
+	 */
+	public static final int BUCKETS = 64;
+
+	private static final Logger LOGGER = Logger.getLogger(InstrumentedAccesor.class.getName());
+	static {
+		LOGGER.setLevel(Level.OFF);
+	}
+
+	/**
+	 * The counters of one operation
+	 *
+	 */
+	private static final class Counters {
+		private final LongAdder failures = new LongAdder();
+		private final LongAdder bytes = new LongAdder();
+		private final LongAdder nanos = new LongAdder();
+		private final LongAdder[] histogram = new LongAdder[BUCKETS];
+
+		private Counters() {
+			for (int i = 0; i < BUCKETS; i++) {
+				histogram[i] = new LongAdder();
+			}
+		}
+
+		private void record(long start, boolean failed) {
+			long elapsed = Math.max(0, System.nanoTime() - start);
+			if (failed) {
+				failures.increment();
+			}
+			nanos.add(elapsed);
+			histogram[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(elapsed))].increment();
+		}
+	}
+
+	/**
+	 * The statistics of one operation at the time they were read. Counters are
+	 * read one at a time while calls go on, so they may be off by the calls made
+	 * meanwhile
+	 *
+	 */
+	public static final class Stats {
+		private final long calls;
+		private final long failures;
+		private final long bytes;
+		private final long nanos;
+		private final long[] histogram;
+
+		private Stats(Counters counters) {
+			this.histogram = new long[BUCKETS];
+			long total = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				histogram[i] = counters.histogram[i].sum();
+				total += histogram[i];
+			}
+			this.calls = total;
+			this.failures = counters.failures.sum();
+			this.bytes = counters.bytes.sum();
+			this.nanos = counters.nanos.sum();
+		}
+
+		/**
+		 * Return the number of calls
+		 *
+		 * @return the number of calls
+		 */
+		public long getCalls() {
+			return calls;
+		}
+
+		/**
+		 * Return the number of calls that threw
+		 *
+		 * @return the number of calls that threw
+		 */
+		public long getFailures() {
+			return failures;
+		}
+
+		/**
+		 * Return the number of bytes read or written through the streams and
+		 * buffers the calls returned
+		 *
+		 * @return the number of bytes read or written
+		 */
+		public long getBytes() {
+			return bytes;
+		}
+
+		/**
+		 * Return the time spent in the calls in nanoseconds
+		 *
+		 * @return the time spent in the calls in nanoseconds
+		 */
+		public long getTotalNanos() {
+			return nanos;
+		}
+
+		/**
+		 * Return the number of calls in each bucket of the latency histogram
+		 *
+		 * @return the latency histogram
+		 */
+		public long[] getHistogram() {
+			return histogram.clone();
+		}
+
+		/**
+		 * Return an upper bound of the given percentile of the latency, from the
+		 * histogram
+		 *
+		 * @param percentile
+		 *            the given percentile, between 0 and 100
+		 * @return an upper bound in nanoseconds, or 0 if there were no calls
+		 */
+		public long getPercentile(double percentile) {
+			long rank = (long) Math.ceil(calls * percentile / 100);
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += histogram[i];
+				if (seen >= rank && seen > 0) {
+					return i == BUCKETS - 1 ? Long.MAX_VALUE : 1L << i;
+				}
+			}
+			return 0;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return String.format("calls %d, failures %d, bytes %d, mean %d ns, p50 < %d ns, p99 < %d ns, max < %d ns",
+					calls, failures, bytes, calls == 0 ? 0 : nanos / calls, getPercentile(50), getPercentile(99),
+					getPercentile(100));
+		}
+	}
+
+	private final Accesor accesor;
+	private final EnumMap<Operation, Counters> counters;
+	private ScheduledExecutorService dumper;
+
+	/**
+	 * Create an InstrumentedAccesor passing every call on to the given accesor
+	 *
+	 * @param accesor
+	 *            the given accesor
+	 */
+	public InstrumentedAccesor(Accesor accesor) {
+		this.accesor = accesor;
+		this.counters = new EnumMap<>(Operation.class);
+		for (Operation operation : Operation.values()) {
+			counters.put(operation, new Counters());
+		}
+	}
+
+	/**
+	 * Return the statistics of every operation so far
+	 *
+	 * @return the statistics of every operation so far
+	 */
+	public Map<Operation, Stats> getStats() {
+		EnumMap<Operation, Stats> stats = new EnumMap<>(Operation.class);
+		for (Map.Entry<Operation, Counters> entry : counters.entrySet()) {
+			stats.put(entry.getKey(), new Stats(entry.getValue()));
+		}
+		return Collections.unmodifiableMap(stats);
+	}
+
+	/**
+	 * Write the statistics of every operation so far to the file at the given
+	 * path, replacing it, then do so again every period on a background thread
+	 * until this accesor is closed. The file is written without being recorded
+	 *
+	 * @param path
+	 *            the given path
+	 * @param period
+	 *            the time between dumps
+	 * @param unit
+	 *            the unit of the time between dumps
+	 */
+	public synchronized void startDumping(Path path, long period, TimeUnit unit) {
+		stopDumping();
+		dumper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "Accesor statistics");
+			thread.setDaemon(true);
+			return thread;
+		});
+		dumper.scheduleAtFixedRate(() -> {
+			try {
+				dump(path);
+			} catch (IOException | RuntimeException e) {
+				LOGGER.log(Level.WARNING, e.toString(), e);
+			}
+		}, 0, period, unit);
+	}
+
+	/**
+	 * Write the statistics of every operation so far to the file at the given
+	 * path, replacing it. The file is written without being recorded
+	 *
+	 * @param path
+	 *            the given path
+	 * @throws IOException
+	 *             on any problems writing the file
+	 */
+	public void dump(Path path) throws IOException {
+		try (Writer out = new OutputStreamWriter(accesor.newOutputStream(path), StandardCharsets.UTF_8)) {
+			out.write(String.format("Accesor statistics at %tc%n", new Date()));
+			for (Map.Entry<Operation, Stats> entry : getStats().entrySet()) {
+				out.write(String.format("%-18s %s%n", entry.getKey(), entry.getValue()));
+			}
+		}
+	}
+
+	/**
+	 * Stop the periodic dumps. Nothing is done if there are none
+	 *
+	 */
+	public synchronized void stopDumping() {
+		if (dumper != null) {
+			dumper.shutdownNow();
+			dumper = null;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() {
+		stopDumping();
+	}
+
+	@Override
+	public boolean exists(Path path) {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			boolean exists = accesor.exists(path);
+			failed = false;
+			return exists;
+		} finally {
+			counters.get(Operation.EXISTS).record(start, failed);
+		}
+	}
+
+	@Override
+	public Path toRealPath(Path path) throws IOException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			Path realPath = accesor.toRealPath(path);
+			failed = false;
+			return realPath;
+		} finally {
+			counters.get(Operation.REAL_PATH).record(start, failed);
+		}
+	}
+
+	@Override
+	public void move(Path source, Path dest) throws IOException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			accesor.move(source, dest);
+			failed = false;
+		} finally {
+			counters.get(Operation.MOVE).record(start, failed);
+		}
+	}
+
+	@Override
+	public boolean isDirectory(Path path) {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			boolean directory = accesor.isDirectory(path);
+			failed = false;
+			return directory;
+		} finally {
+			counters.get(Operation.IS_DIRECTORY).record(start, failed);
+		}
+	}
+
+	@Override
+	public InputStream newInputStream(Path path) throws IOException {
+		Counters read = counters.get(Operation.READ);
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			InputStream in = new FilterInputStream(accesor.newInputStream(path)) {
+				@Override
+				public int read() throws IOException {
+					int b = super.read();
+					if (b >= 0) {
+						read.bytes.increment();
+					}
+					return b;
+				}
+
+				@Override
+				public int read(byte[] b, int off, int len) throws IOException {
+					int count = super.read(b, off, len);
+					if (count > 0) {
+						read.bytes.add(count);
+					}
+					return count;
+				}
+			};
+			failed = false;
+			return in;
+		} finally {
+			read.record(start, failed);
+		}
+	}
+
+	@Override
+	public void createDirectory(Path path) throws IOException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			accesor.createDirectory(path);
+			failed = false;
+		} finally {
+			counters.get(Operation.CREATE_DIRECTORY).record(start, failed);
+		}
+	}
+
+	@Override
+	public OutputStream newOutputStream(Path path) throws IOException {
+		Counters write = counters.get(Operation.WRITE);
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			OutputStream out = new FilterOutputStream(accesor.newOutputStream(path)) {
+				@Override
+				public void write(int b) throws IOException {
+					out.write(b);
+					write.bytes.increment();
+				}
+
+				@Override
+				public void write(byte[] b, int off, int len) throws IOException {
+					// FilterOutputStream would write one byte at a time
+					out.write(b, off, len);
+					write.bytes.add(len);
+				}
+			};
+			failed = false;
+			return out;
+		} finally {
+			write.record(start, failed);
+		}
+	}
+
+	@Override
+	public List<Path> getChildPaths(Path path) throws IOException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			List<Path> children = accesor.getChildPaths(path);
+			failed = false;
+			return children;
+		} finally {
+			counters.get(Operation.LIST).record(start, failed);
+		}
+	}
+
+	@Override
+	public Map<Path, BasicFileAttributes> getChildAttributes(Path path) throws IOException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			Map<Path, BasicFileAttributes> children = accesor.getChildAttributes(path);
+			failed = false;
+			return children;
+		} finally {
+			counters.get(Operation.LIST_ATTRIBUTES).record(start, failed);
+		}
+	}
+
+	@Override
+	public WatchService newWatchService() throws IOException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			WatchService service = accesor.newWatchService();
+			failed = false;
+			return service;
+		} finally {
+			counters.get(Operation.NEW_WATCH_SERVICE).record(start, failed);
+		}
+	}
+
+	@Override
+	public WatchKey register(Path dir, WatchService watcher) throws IOException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			WatchKey key = accesor.register(dir, watcher);
+			failed = false;
+			return key;
+		} finally {
+			counters.get(Operation.WATCH).record(start, failed);
+		}
+	}
+
+	@Override
+	public ByteBuffer map(Path path) throws IOException {
+		Counters map = counters.get(Operation.MAP);
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			ByteBuffer buffer = accesor.map(path);
+			// Pages are read as they are touched, so count what was mapped
+			map.bytes.add(buffer.remaining());
+			failed = false;
+			return buffer;
+		} finally {
+			map.record(start, failed);
+		}
+	}
+
+	@Override
+	public BasicFileAttributes readAttributes(Path path) throws IOException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			BasicFileAttributes attributes = accesor.readAttributes(path);
+			failed = false;
+			return attributes;
+		} finally {
+			counters.get(Operation.READ_ATTRIBUTES).record(start, failed);
+		}
+	}
+}
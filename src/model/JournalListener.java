@@ -0,0 +1,18 @@
+package model;
+
+/**
+ * Notified of every entry appended to a HistoryJournal
+ *
+ */
+public interface JournalListener {
+
+	/**
+	 * Called on the appending thread after an entry was appended
+	 * 
+	 * @param index
+	 *            the index of the entry in the journal
+	 * @param entry
+	 *            the text of the entry
+	 */
+	void appended(int index, String entry);
+}
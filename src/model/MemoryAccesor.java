@@ -0,0 +1,976 @@
+package model;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.ProviderMismatchException;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.Watchable;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Predicate;
+
+/**
+ * An Accesor keeping a file tree in memory. It behaves like FileAccesor on a
+ * local disk: paths are resolved against a working directory, symbolic links
+ * are followed, moves fail rather than replace, and watch services report
+ * entries created and deleted in the directories registered with them. Each
+ * operation can be made to take a given time and to fail on given paths, to
+ * reproduce slow or unreliable file systems without touching the disk
+ *
+ */
+public class MemoryAccesor implements Accesor {
+
+	private static final int MAX_LINKS = 40;
+	private static final byte[] EMPTY = new byte[0];
+
+	/**
+	 * A file, directory or symbolic link. Guarded by the lock of the accesor
+	 *
+	 */
+	private static final class Node {
+		private final long id;
+		private final Path root;
+		private String name;
+		private Node parent;
+		private final TreeMap<String, Node> children;
+		private final Path target;
+		private byte[] data;
+		private int size;
+		private final long created;
+		private long modified;
+		private List<Key> keys;
+
+		private Node(long id, Path root, String name, boolean directory, Path target) {
+			this.id = id;
+			this.root = root;
+			this.name = name;
+			this.children = directory ? new TreeMap<>() : null;
+			this.target = target;
+			this.data = EMPTY;
+			this.created = System.currentTimeMillis();
+			this.modified = created;
+			this.keys = Collections.emptyList();
+		}
+
+		private boolean isDirectory() {
+			return children != null;
+		}
+
+		private boolean isLink() {
+			return target != null;
+		}
+	}
+
+	private final Path workingDirectory;
+	private final TreeMap<Path, Node> roots;
+	private final AtomicLongArray latencies;
+	private final AtomicReferenceArray<Predicate<Path>> failures;
+	private long nextId;
+
+	/**
+	 * Create an empty MemoryAccesor resolving relative paths against the current
+	 * working directory, which is created
+	 *
+	 */
+	public MemoryAccesor() {
+		this(Paths.get("").toAbsolutePath());
+	}
+
+	/**
+	 * Create an empty MemoryAccesor resolving relative paths against the given
+	 * absolute path, which is created
+	 *
+	 * @param workingDirectory
+	 *            the given absolute path
+	 */
+	public MemoryAccesor(Path workingDirectory) {
+		if (!workingDirectory.isAbsolute()) {
+			throw new IllegalArgumentException("Not absolute: " + workingDirectory);
+		}
+		this.workingDirectory = workingDirectory.normalize();
+		this.roots = new TreeMap<>();
+		this.latencies = new AtomicLongArray(Operation.values().length);
+		this.failures = new AtomicReferenceArray<>(Operation.values().length);
+		try {
+			createDirectories(this.workingDirectory);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Make every later call of the given operation take at least the given time
+	 * before it does anything, on the calling thread
+	 *
+	 * @param operation
+	 *            the given operation
+	 * @param latency
+	 *            the given time, or 0 for none
+	 * @param unit
+	 *            the unit of the given time
+	 */
+	public void setLatency(Operation operation, long latency, TimeUnit unit) {
+		latencies.set(operation.ordinal(), unit.toNanos(latency));
+	}
+
+	/**
+	 * Make every later call of the given operation on a path the given predicate
+	 * accepts fail. Operations that throw IOException throw one, exists and
+	 * isDirectory return false. The path is null for NEW_WATCH_SERVICE
+	 *
+	 * @param operation
+	 *            the given operation
+	 * @param paths
+	 *            the given predicate, or null to never fail
+	 */
+	public void setFailure(Operation operation, Predicate<Path> paths) {
+		failures.set(operation.ordinal(), paths);
+	}
+
+	/**
+	 * Create the directory at the given path and any missing directories above it
+	 *
+	 * @param path
+	 *            the given path
+	 * @throws IOException
+	 *             if a file is in the way
+	 */
+	public synchronized void createDirectories(Path path) throws IOException {
+		Path absolute = absolute(path);
+		Node node = roots.get(absolute.getRoot());
+		if (node == null) {
+			node = new Node(nextId++, absolute.getRoot(), null, true, null);
+			roots.put(absolute.getRoot(), node);
+		}
+		for (Path name : absolute.getRoot().relativize(absolute)) {
+			Node child = node.children.get(name.toString());
+			if (child != null && child.isLink()) {
+				child = lookup(child.target, pathOf(node), true, 1);
+			}
+			if (child == null) {
+				child = add(node, name.toString(), true, null);
+			} else if (!child.isDirectory()) {
+				throw new FileAlreadyExistsException(pathOf(child).toString());
+			}
+			node = child;
+		}
+	}
+
+	/**
+	 * Create a file at the given path holding the given bytes, replacing any file
+	 * there
+	 *
+	 * @param path
+	 *            the given path
+	 * @param contents
+	 *            the given bytes
+	 * @throws IOException
+	 *             if the parent directory does not exist
+	 */
+	public void createFile(Path path, byte[] contents) throws IOException {
+		try (OutputStream out = newOutputStream(path)) {
+			out.write(contents);
+		}
+	}
+
+	/**
+	 * Create a symbolic link at the given path to the given target
+	 *
+	 * @param link
+	 *            the given path
+	 * @param target
+	 *            the given target, resolved against the directory of the link if
+	 *            it is relative
+	 * @throws IOException
+	 *             if the parent directory does not exist or the path is taken
+	 */
+	public synchronized void createSymbolicLink(Path link, Path target) throws IOException {
+		Path absolute = absolute(link);
+		Node parent = parentOf(absolute);
+		String name = absolute.getFileName().toString();
+		if (parent.children.containsKey(name)) {
+			throw new FileAlreadyExistsException(link.toString());
+		}
+		add(parent, name, false, target);
+	}
+
+	/**
+	 * Delete the file, empty directory or link at the given path, as if it was
+	 * deleted outside of the application
+	 *
+	 * @param path
+	 *            the given path
+	 * @throws IOException
+	 *             if nothing is at the path or it is a directory that is not empty
+	 */
+	public synchronized void delete(Path path) throws IOException {
+		Node node = lookup(path, null, false, 0);
+		if (node.parent == null) {
+			throw new FileSystemException(path.toString(), null, "Cannot delete a root");
+		}
+		if (node.isDirectory() && !node.children.isEmpty()) {
+			throw new DirectoryNotEmptyException(path.toString());
+		}
+		detach(node);
+		for (Key key : new ArrayList<>(node.keys)) {
+			key.invalidate();
+		}
+	}
+
+	@Override
+	public boolean exists(Path path) {
+		if (!enter(Operation.EXISTS, path)) {
+			return false;
+		}
+		synchronized (this) {
+			return find(path) != null;
+		}
+	}
+
+	@Override
+	public Path toRealPath(Path path) throws IOException {
+		check(Operation.REAL_PATH, path);
+		synchronized (this) {
+			return pathOf(lookup(path, null, true, 0));
+		}
+	}
+
+	@Override
+	public void move(Path source, Path dest) throws IOException {
+		check(Operation.MOVE, source);
+		synchronized (this) {
+			Node node = lookup(source, null, false, 0);
+			Path absoluteDest = absolute(dest);
+			Node destParent = parentOf(absoluteDest);
+			String destName = absoluteDest.getFileName().toString();
+			Node existing = destParent.children.get(destName);
+			if (existing == node) {
+				return;
+			}
+			if (existing != null) {
+				throw new FileAlreadyExistsException(dest.toString());
+			}
+			for (Node ancestor = destParent; ancestor != null; ancestor = ancestor.parent) {
+				if (ancestor == node) {
+					throw new FileSystemException(source.toString(), dest.toString(), "Invalid argument");
+				}
+			}
+			detach(node);
+			node.name = destName;
+			attach(destParent, node);
+		}
+	}
+
+	@Override
+	public boolean isDirectory(Path path) {
+		if (!enter(Operation.IS_DIRECTORY, path)) {
+			return false;
+		}
+		synchronized (this) {
+			Node node = find(path);
+			return node != null && node.isDirectory();
+		}
+	}
+
+	@Override
+	public InputStream newInputStream(Path path) throws IOException {
+		check(Operation.READ, path);
+		synchronized (this) {
+			Node node = lookup(path, null, true, 0);
+			if (node.isDirectory()) {
+				throw new FileSystemException(path.toString(), null, "Is a directory");
+			}
+			return new NodeInputStream(node);
+		}
+	}
+
+	@Override
+	public void createDirectory(Path path) throws IOException {
+		check(Operation.CREATE_DIRECTORY, path);
+		synchronized (this) {
+			Path absolute = absolute(path);
+			Node parent = parentOf(absolute);
+			String name = absolute.getFileName().toString();
+			if (parent.children.containsKey(name)) {
+				throw new FileAlreadyExistsException(path.toString());
+			}
+			add(parent, name, true, null);
+		}
+	}
+
+	@Override
+	public OutputStream newOutputStream(Path path) throws IOException {
+		check(Operation.WRITE, path);
+		synchronized (this) {
+			Node node = find(path);
+			if (node == null) {
+				Path absolute = absolute(path);
+				Node parent = parentOf(absolute);
+				String name = absolute.getFileName().toString();
+				if (parent.children.containsKey(name)) {
+					// A dangling link
+					throw new NoSuchFileException(path.toString());
+				}
+				node = add(parent, name, false, null);
+			} else if (node.isDirectory()) {
+				throw new FileSystemException(path.toString(), null, "Is a directory");
+			} else {
+				// Mapped contents keep the old bytes
+				node.data = EMPTY;
+				node.size = 0;
+				node.modified = System.currentTimeMillis();
+			}
+			return new NodeOutputStream(node);
+		}
+	}
+
+	@Override
+	public List<Path> getChildPaths(Path dir) throws IOException {
+		check(Operation.LIST, dir);
+		synchronized (this) {
+			Node node = lookup(dir, null, true, 0);
+			if (!node.isDirectory()) {
+				throw new NotDirectoryException(dir.toString());
+			}
+			List<Path> children = new ArrayList<>(node.children.size());
+			for (String name : node.children.keySet()) {
+				children.add(dir.resolve(name));
+			}
+			return children;
+		}
+	}
+
+	@Override
+	public Map<Path, BasicFileAttributes> getChildAttributes(Path dir) throws IOException {
+		check(Operation.LIST_ATTRIBUTES, dir);
+		synchronized (this) {
+			Node node = lookup(dir, null, true, 0);
+			if (!node.isDirectory()) {
+				throw new NotDirectoryException(dir.toString());
+			}
+			Map<Path, BasicFileAttributes> children = new LinkedHashMap<>();
+			for (Node child : node.children.values()) {
+				children.put(dir.resolve(child.name), new Attributes(child));
+			}
+			return children;
+		}
+	}
+
+	@Override
+	public WatchService newWatchService() throws IOException {
+		check(Operation.NEW_WATCH_SERVICE, null);
+		return new Watcher();
+	}
+
+	@Override
+	public WatchKey register(Path dir, WatchService watcher) throws IOException {
+		check(Operation.WATCH, dir);
+		if (!(watcher instanceof Watcher)) {
+			throw new ProviderMismatchException();
+		}
+		synchronized (this) {
+			Node node = lookup(dir, null, true, 0);
+			if (!node.isDirectory()) {
+				throw new NotDirectoryException(dir.toString());
+			}
+			((Watcher) watcher).checkOpen();
+			for (Key key : node.keys) {
+				if (key.watcher == watcher) {
+					return key;
+				}
+			}
+			Key key = new Key(node, (Watcher) watcher, dir);
+			if (node.keys.isEmpty()) {
+				node.keys = new ArrayList<>();
+			}
+			node.keys.add(key);
+			return key;
+		}
+	}
+
+	@Override
+	public ByteBuffer map(Path path) throws IOException {
+		check(Operation.MAP, path);
+		synchronized (this) {
+			Node node = lookup(path, null, true, 0);
+			if (node.isDirectory()) {
+				throw new FileSystemException(path.toString(), null, "Is a directory");
+			}
+			// Writes only append past the mapped bytes or replace the array
+			return ByteBuffer.wrap(node.data, 0, node.size).slice().asReadOnlyBuffer();
+		}
+	}
+
+	@Override
+	public BasicFileAttributes readAttributes(Path path) throws IOException {
+		check(Operation.READ_ATTRIBUTES, path);
+		synchronized (this) {
+			return new Attributes(lookup(path, null, true, 0));
+		}
+	}
+
+	/**
+	 * Wait out the latency of the given operation and tell whether it should
+	 * succeed on the given path
+	 *
+	 * @param operation
+	 *            the given operation
+	 * @param path
+	 *            the given path
+	 * @return false iff the operation should fail
+	 */
+	private boolean enter(Operation operation, Path path) {
+		long latency = latencies.get(operation.ordinal());
+		if (latency > 0) {
+			long deadline = System.nanoTime() + latency;
+			try {
+				for (long left = latency; left > 0; left = deadline - System.nanoTime()) {
+					TimeUnit.NANOSECONDS.sleep(left);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		Predicate<Path> failure = failures.get(operation.ordinal());
+		return failure == null || !failure.test(path);
+	}
+
+	/**
+	 * Wait out the latency of the given operation and throw if it should fail on
+	 * the given path
+	 *
+	 * @param operation
+	 *            the given operation
+	 * @param path
+	 *            the given path
+	 * @throws IOException
+	 *             if the operation should fail
+	 */
+	private void check(Operation operation, Path path) throws IOException {
+		if (!enter(operation, path)) {
+			throw new IOException("Injected failure of " + operation + " on " + path);
+		}
+	}
+
+	private Path absolute(Path path) {
+		return workingDirectory.resolve(path);
+	}
+
+	/**
+	 * Return the node at the given path, following links, or null if there is
+	 * none
+	 *
+	 * @param path
+	 *            the given path
+	 * @return the node at the given path, or null
+	 */
+	private Node find(Path path) {
+		try {
+			return lookup(path, null, true, 0);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Return the directory the given absolute path is in, following links
+	 *
+	 * @param absolute
+	 *            the given absolute path
+	 * @return the directory the given absolute path is in
+	 * @throws IOException
+	 *             if there is no such directory
+	 */
+	private Node parentOf(Path absolute) throws IOException {
+		if (absolute.getParent() == null) {
+			throw new FileSystemException(absolute.toString(), null, "Is a root");
+		}
+		Node parent = lookup(absolute.getParent(), null, true, 0);
+		if (!parent.isDirectory()) {
+			throw new NoSuchFileException(absolute.toString());
+		}
+		return parent;
+	}
+
+	/**
+	 * Return the node at the given path. Every link along the path is followed,
+	 * and so is a link at the path itself if asked to
+	 *
+	 * @param path
+	 *            the given path
+	 * @param base
+	 *            the path a relative path is resolved against, or null for the
+	 *            working directory
+	 * @param followLast
+	 *            whether to follow a link at the path itself
+	 * @param links
+	 *            the number of links followed so far
+	 * @return the node at the given path
+	 * @throws IOException
+	 *             if there is no such node or too many links
+	 */
+	private Node lookup(Path path, Path base, boolean followLast, int links) throws IOException {
+		Path absolute = (base == null ? workingDirectory : base).resolve(path);
+		Node node = roots.get(absolute.getRoot());
+		if (node == null) {
+			throw new NoSuchFileException(path.toString());
+		}
+		int count = absolute.getNameCount();
+		for (int i = 0; i < count; i++) {
+			String name = absolute.getName(i).toString();
+			if (name.equals(".")) {
+				continue;
+			}
+			if (name.equals("..")) {
+				node = node.parent == null ? node : node.parent;
+				continue;
+			}
+			Node child = node.isDirectory() ? node.children.get(name) : null;
+			if (child == null) {
+				throw new NoSuchFileException(path.toString());
+			}
+			if (child.isLink() && (followLast || i < count - 1)) {
+				if (links >= MAX_LINKS) {
+					throw new FileSystemException(path.toString(), null, "Too many levels of symbolic links");
+				}
+				child = lookup(child.target, pathOf(node), true, links + 1);
+			}
+			node = child;
+		}
+		return node;
+	}
+
+	/**
+	 * Return the real path of the given node
+	 *
+	 * @param node
+	 *            the given node
+	 * @return the real path of the given node
+	 */
+	private static Path pathOf(Node node) {
+		List<String> names = new ArrayList<>();
+		for (; node.parent != null; node = node.parent) {
+			names.add(node.name);
+		}
+		Path path = node.root;
+		for (int i = names.size() - 1; i >= 0; i--) {
+			path = path.resolve(names.get(i));
+		}
+		return path;
+	}
+
+	/**
+	 * Add a new node with the given name to the given directory
+	 *
+	 * @param parent
+	 *            the given directory
+	 * @param name
+	 *            the given name
+	 * @param directory
+	 *            whether the node is a directory
+	 * @param target
+	 *            the target of the node if it is a link, otherwise null
+	 * @return the new node
+	 */
+	private Node add(Node parent, String name, boolean directory, Path target) {
+		Node node = new Node(nextId++, parent.root, name, directory, target);
+		attach(parent, node);
+		return node;
+	}
+
+	private static void attach(Node parent, Node node) {
+		node.parent = parent;
+		parent.children.put(node.name, node);
+		parent.modified = System.currentTimeMillis();
+		signal(parent, StandardWatchEventKinds.ENTRY_CREATE, node.name);
+	}
+
+	private static void detach(Node node) {
+		Node parent = node.parent;
+		parent.children.remove(node.name);
+		parent.modified = System.currentTimeMillis();
+		signal(parent, StandardWatchEventKinds.ENTRY_DELETE, node.name);
+	}
+
+	private static void signal(Node dir, WatchEvent.Kind<Path> kind, String name) {
+		for (Key key : dir.keys) {
+			key.signal(kind, Paths.get(name));
+		}
+	}
+
+	/**
+	 * Reads a file from the position it has reached, seeing later writes
+	 *
+	 */
+	private final class NodeInputStream extends InputStream {
+		private final Node node;
+		private int position;
+
+		private NodeInputStream(Node node) {
+			this.node = node;
+		}
+
+		@Override
+		public int read() throws IOException {
+			synchronized (MemoryAccesor.this) {
+				return position < node.size ? node.data[position++] & 0xff : -1;
+			}
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			synchronized (MemoryAccesor.this) {
+				if (len == 0) {
+					return 0;
+				}
+				int read = Math.min(len, node.size - position);
+				if (read <= 0) {
+					return -1;
+				}
+				System.arraycopy(node.data, position, b, off, read);
+				position += read;
+				return read;
+			}
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			synchronized (MemoryAccesor.this) {
+				long skipped = Math.max(0, Math.min(n, node.size - position));
+				position += (int) skipped;
+				return skipped;
+			}
+		}
+
+		@Override
+		public int available() throws IOException {
+			synchronized (MemoryAccesor.this) {
+				return Math.max(0, node.size - position);
+			}
+		}
+	}
+
+	/**
+	 * Appends to a file
+	 *
+	 */
+	private final class NodeOutputStream extends OutputStream {
+		private final Node node;
+		private boolean closed;
+
+		private NodeOutputStream(Node node) {
+			this.node = node;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			synchronized (MemoryAccesor.this) {
+				if (closed) {
+					throw new IOException("Stream closed");
+				}
+				int size = node.size + len;
+				if (size > node.data.length) {
+					node.data = Arrays.copyOf(node.data, Math.max(size, Math.max(16, node.data.length * 2)));
+				}
+				System.arraycopy(b, off, node.data, node.size, len);
+				node.size = size;
+				node.modified = System.currentTimeMillis();
+			}
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+	}
+
+	/**
+	 * The attributes of a node when they were read
+	 *
+	 */
+	private static final class Attributes implements BasicFileAttributes {
+		private final long id;
+		private final boolean directory;
+		private final boolean link;
+		private final long size;
+		private final long created;
+		private final long modified;
+
+		private Attributes(Node node) {
+			this.id = node.id;
+			this.directory = node.isDirectory();
+			this.link = node.isLink();
+			this.size = directory ? 0 : node.size;
+			this.created = node.created;
+			this.modified = node.modified;
+		}
+
+		@Override
+		public FileTime lastModifiedTime() {
+			return FileTime.fromMillis(modified);
+		}
+
+		@Override
+		public FileTime lastAccessTime() {
+			return FileTime.fromMillis(modified);
+		}
+
+		@Override
+		public FileTime creationTime() {
+			return FileTime.fromMillis(created);
+		}
+
+		@Override
+		public boolean isRegularFile() {
+			return !directory && !link;
+		}
+
+		@Override
+		public boolean isDirectory() {
+			return directory;
+		}
+
+		@Override
+		public boolean isSymbolicLink() {
+			return link;
+		}
+
+		@Override
+		public boolean isOther() {
+			return false;
+		}
+
+		@Override
+		public long size() {
+			return size;
+		}
+
+		@Override
+		public Object fileKey() {
+			return id;
+		}
+	}
+
+	/**
+	 * An event in a watched directory
+	 *
+	 */
+	private static final class Event implements WatchEvent<Path> {
+		private final WatchEvent.Kind<Path> kind;
+		private final Path context;
+
+		private Event(WatchEvent.Kind<Path> kind, Path context) {
+			this.kind = kind;
+			this.context = context;
+		}
+
+		@Override
+		public WatchEvent.Kind<Path> kind() {
+			return kind;
+		}
+
+		@Override
+		public int count() {
+			return 1;
+		}
+
+		@Override
+		public Path context() {
+			return context;
+		}
+	}
+
+	/**
+	 * A directory registered with a watch service. Like a key of the default file
+	 * system it keeps watching the directory when it is moved, and is cancelled
+	 * when it is deleted
+	 *
+	 */
+	private final class Key implements WatchKey {
+		private final Node node;
+		private final Watcher watcher;
+		private final Path path;
+		private List<WatchEvent<?>> events;
+		private boolean signalled;
+		private boolean valid;
+
+		private Key(Node node, Watcher watcher, Path path) {
+			this.node = node;
+			this.watcher = watcher;
+			this.path = path;
+			this.events = new ArrayList<>();
+			this.valid = true;
+		}
+
+		private void signal(WatchEvent.Kind<Path> kind, Path context) {
+			if (valid && !watcher.closed) {
+				events.add(new Event(kind, context));
+				if (!signalled) {
+					signalled = true;
+					watcher.queue.offer(this);
+				}
+			}
+		}
+
+		private void invalidate() {
+			cancel();
+			if (!signalled) {
+				signalled = true;
+				watcher.queue.offer(this);
+			}
+		}
+
+		@Override
+		public boolean isValid() {
+			synchronized (MemoryAccesor.this) {
+				return valid && !watcher.closed;
+			}
+		}
+
+		@Override
+		public List<WatchEvent<?>> pollEvents() {
+			synchronized (MemoryAccesor.this) {
+				List<WatchEvent<?>> polled = events;
+				events = new ArrayList<>();
+				return polled;
+			}
+		}
+
+		@Override
+		public boolean reset() {
+			synchronized (MemoryAccesor.this) {
+				if (!valid || watcher.closed) {
+					return false;
+				}
+				if (events.isEmpty()) {
+					signalled = false;
+				} else {
+					watcher.queue.offer(this);
+				}
+				return true;
+			}
+		}
+
+		@Override
+		public void cancel() {
+			synchronized (MemoryAccesor.this) {
+				if (valid) {
+					valid = false;
+					node.keys.remove(this);
+				}
+			}
+		}
+
+		@Override
+		public Watchable watchable() {
+			return path;
+		}
+	}
+
+	/**
+	 * A watch service for the directories of this accesor
+	 *
+	 */
+	private final class Watcher implements WatchService {
+		private final LinkedBlockingDeque<WatchKey> queue = new LinkedBlockingDeque<>();
+		private volatile boolean closed;
+
+		// Wakes up and stops every thread waiting for a key once closed
+		private final WatchKey closedKey = new WatchKey() {
+			@Override
+			public boolean isValid() {
+				return false;
+			}
+
+			@Override
+			public List<WatchEvent<?>> pollEvents() {
+				return Collections.emptyList();
+			}
+
+			@Override
+			public boolean reset() {
+				return false;
+			}
+
+			@Override
+			public void cancel() {
+			}
+
+			@Override
+			public Watchable watchable() {
+				return null;
+			}
+		};
+
+		private void checkOpen() {
+			if (closed) {
+				throw new ClosedWatchServiceException();
+			}
+		}
+
+		private WatchKey checkKey(WatchKey key) {
+			if (key == closedKey) {
+				queue.offer(closedKey);
+				throw new ClosedWatchServiceException();
+			}
+			return key;
+		}
+
+		@Override
+		public void close() {
+			synchronized (MemoryAccesor.this) {
+				if (!closed) {
+					closed = true;
+					queue.offer(closedKey);
+				}
+			}
+		}
+
+		@Override
+		public WatchKey poll() {
+			checkOpen();
+			return checkKey(queue.poll());
+		}
+
+		@Override
+		public WatchKey poll(long timeout, TimeUnit unit) throws InterruptedException {
+			checkOpen();
+			return checkKey(queue.poll(timeout, unit));
+		}
+
+		@Override
+		public WatchKey take() throws InterruptedException {
+			checkOpen();
+			return checkKey(queue.take());
+		}
+	}
+}
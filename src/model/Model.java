@@ -15,7 +15,7 @@ import java.nio.file.Path;
 public interface Model<T extends Model<T, S>, S extends SnapShot<T, S>> extends Comparable<T>, Serializable {
 
 	public static boolean isLegalFilename(String str) {
-		return str.matches("[a-zA-Z0-9](?:[a-zA-Z]|[0-9]|[!#%&\\(\\);=\\[\\]^_+{}~,\\\\.@\\- ])*");
+		return TaggedNameCodec.isLegalFilename(str);
 	}
 
 	/*
@@ -0,0 +1,243 @@
+package model;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A hash index from paths to the model objects at those paths, kept up to date
+ * by the models as they are created, moved, renamed and reverted. Every image
+ * entering or leaving the index is reported to its listeners
+ *
+ */
+class ModelIndex {
+
+	private HashMap<Path, Model<?, ?>> models;
+	// The image with each name under each directory, or a TreeMap of the images
+	// by path when several images share a name
+	private HashMap<Path, Object> imageNames;
+	private TagIndex tags;
+	private final List<ImageListener> listeners;
+
+	/**
+	 * Create an empty ModelIndex
+	 *
+	 */
+	ModelIndex() {
+		models = new HashMap<>();
+		imageNames = new HashMap<>();
+		tags = new TagIndex();
+		listeners = new CopyOnWriteArrayList<>();
+	}
+
+	/**
+	 * Report every image entering or leaving this index to the given listener
+	 *
+	 * @param listener
+	 *            the given listener
+	 */
+	void addListener(ImageListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Stop reporting images to the given listener
+	 *
+	 * @param listener
+	 *            the given listener
+	 */
+	void removeListener(ImageListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Remove every entry from this index
+	 *
+	 */
+	void clear() {
+		models.clear();
+		imageNames.clear();
+		tags.clear();
+		for (ImageListener listener : listeners) {
+			listener.cleared();
+		}
+	}
+
+	/**
+	 * Return the model at the given real path, or null if there is none
+	 *
+	 * @param path
+	 *            the given real path
+	 * @return the model at the given path
+	 */
+	Model<?, ?> get(Path path) {
+		return models.get(path);
+	}
+
+	/**
+	 * Return the image directly under the directory at the given path with the
+	 * given tagged or untagged name, or null if there is none. If several images
+	 * have that name, the first in path order is returned
+	 *
+	 * @param dir
+	 *            the path of the directory
+	 * @param name
+	 *            the tagged or untagged name of the image
+	 * @return the image with the given name
+	 */
+	@SuppressWarnings("unchecked")
+	ImageModel getImage(Path dir, String name) {
+		Object named = imageNames.get(dir.resolve(name));
+		if (named instanceof TreeMap) {
+			return ((TreeMap<String, ImageModel>) named).firstEntry().getValue();
+		}
+		return (ImageModel) named;
+	}
+
+	/**
+	 * Record that the given image at the given path has the given name
+	 *
+	 * @param name
+	 *            the path of the name under the directory of the image
+	 * @param path
+	 *            the path of the image
+	 * @param image
+	 *            the given image
+	 */
+	@SuppressWarnings("unchecked")
+	private void addName(Path name, String path, ImageModel image) {
+		Object named = imageNames.putIfAbsent(name, image);
+		if (named == null || named == image) {
+			return;
+		}
+		TreeMap<String, ImageModel> images;
+		if (named instanceof TreeMap) {
+			images = (TreeMap<String, ImageModel>) named;
+		} else {
+			ImageModel other = (ImageModel) named;
+			images = new TreeMap<>();
+			images.put(other.getPath().toString(), other);
+			imageNames.put(name, images);
+		}
+		images.put(path, image);
+	}
+
+	/**
+	 * Forget that the given image at the given path has the given name
+	 *
+	 * @param name
+	 *            the path of the name under the directory the image was in
+	 * @param path
+	 *            the path the image had
+	 * @param image
+	 *            the given image
+	 */
+	@SuppressWarnings("unchecked")
+	private void removeName(Path name, String path, ImageModel image) {
+		Object named = imageNames.get(name);
+		if (named instanceof TreeMap) {
+			TreeMap<String, ImageModel> images = (TreeMap<String, ImageModel>) named;
+			// The image may have been added under a path it had since left
+			if (!images.remove(path, image)) {
+				images.values().removeIf(other -> other == image);
+			}
+			if (images.size() == 1) {
+				imageNames.put(name, images.firstEntry().getValue());
+			}
+		} else if (named == image) {
+			imageNames.remove(name);
+		}
+	}
+
+	/**
+	 * Return the tag index of the images in this index
+	 *
+	 * @return the tag index of the images in this index
+	 */
+	TagIndex getTags() {
+		return tags;
+	}
+
+	/**
+	 * Add the given directory to this index under its current path
+	 *
+	 * @param dir
+	 *            the given directory
+	 */
+	void put(DirectoryModel dir) {
+		models.put(dir.getPath(), dir);
+	}
+
+	/**
+	 * Add the given image to this index under its current path, names and tags
+	 *
+	 * @param image
+	 *            the given image
+	 */
+	void put(ImageModel image) {
+		Path dirPath = image.getDirectoryPath();
+		Path path = image.getPath();
+		Model<?, ?> previous = models.put(path, image);
+		tags.add(path, image.getTags(), image);
+		String key = path.toString();
+		addName(dirPath.resolve(image.getName()), key, image);
+		addName(dirPath.resolve(image.getUntaggedName()), key, image);
+		if (previous != image) {
+			for (ImageListener listener : listeners) {
+				if (previous instanceof ImageModel) {
+					listener.imageRemoved((ImageModel) previous, path);
+				}
+				listener.imageAdded(image, path);
+			}
+		}
+	}
+
+	/**
+	 * Remove the given directory from this index if it is stored under the given
+	 * path
+	 *
+	 * @param path
+	 *            the path the directory was stored under
+	 * @param dir
+	 *            the given directory
+	 */
+	void remove(Path path, DirectoryModel dir) {
+		models.remove(path, dir);
+	}
+
+	/**
+	 * Remove the given image from this index if it is stored under the given
+	 * directory path, names and tags
+	 *
+	 * @param dirPath
+	 *            the path of the directory the image was in
+	 * @param taggedName
+	 *            the tagged name the image had
+	 * @param untaggedName
+	 *            the untagged name the image had
+	 * @param extension
+	 *            the extension of the image
+	 * @param imageTags
+	 *            the tags the image had
+	 * @param image
+	 *            the given image
+	 */
+	void remove(Path dirPath, String taggedName, String untaggedName, String extension,
+			Collection<String> imageTags, ImageModel image) {
+		Path path = dirPath.resolve(taggedName + extension);
+		boolean removed = models.remove(path, image);
+		tags.remove(path, imageTags, image);
+		String key = path.toString();
+		removeName(dirPath.resolve(taggedName), key, image);
+		removeName(dirPath.resolve(untaggedName), key, image);
+		if (removed) {
+			for (ImageListener listener : listeners) {
+				listener.imageRemoved(image, path);
+			}
+		}
+	}
+
+}
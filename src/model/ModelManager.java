@@ -1,17 +1,31 @@
 package model;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.nio.file.NotDirectoryException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 /**
  * A singleton class used to retrieve and add model objects
@@ -21,11 +35,51 @@ public class ModelManager {
 
 	public static final ModelManager instance = new ModelManager();
 	public static final String saveLocation = ".ser/save.ser";
+	public static final String journalLocation = ".ser/journal";
+	public static final String thumbnailLocation = ".ser/thumbnails";
 
 	// List of Images Objects
 	private TreeSet<DirectoryModel> roots;
 	private Accesor accesor;
 	private TreeSet<String> tags;
+	private ModelIndex index;
+	private int scanParallelism;
+	private CatalogWatcher watcher;
+	private HistoryJournal journal;
+	private ThumbnailCache thumbnails;
+	private CatalogReader catalog;
+	private boolean normalizeOnScan;
+	private int bulkDepth;
+	// The attributes and real paths read by the scan the calling thread is
+	// running, if any. Other threads never see them, as they are not refreshed
+	private final ThreadLocal<StatCache> statCache = new ThreadLocal<>();
+	private final Set<DirectoryModel> deferredLogs = Collections.newSetFromMap(new IdentityHashMap<>());
+
+	/**
+	 * A scope in which directories that change are logged once, when the
+	 * outermost scope is closed, instead of once per change and once per change
+	 * under them. Scopes may be nested
+	 *
+	 */
+	public final class BulkChange implements AutoCloseable {
+		private boolean closed;
+
+		private BulkChange() {
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.lang.AutoCloseable#close()
+		 */
+		@Override
+		public void close() {
+			if (!closed) {
+				closed = true;
+				endBulkChange();
+			}
+		}
+	}
 
 	/**
 	 * Creates a ModelManager
@@ -34,21 +88,34 @@ public class ModelManager {
 	private ModelManager() {
 		roots = new TreeSet<>();
 		tags = new TreeSet<>();
+		index = new ModelIndex();
+		scanParallelism = 1;
+		normalizeOnScan = true;
 	}
 
 	public void saveToDisk() throws IOException {
-		Path loc = Paths.get(saveLocation);
+		saveToLocation(Paths.get(saveLocation));
+	}
 
+	/**
+	 * Save every root and tag to the given location in the binary catalog format
+	 * 
+	 * @param loc
+	 *            the given location
+	 * @throws IOException
+	 *             on any problems writing to the location
+	 */
+	public void saveToLocation(Path loc) throws IOException {
+		// The mapped catalog may be the file about to be overwritten
+		finishLoading();
 		if (loc.getParent() != null && !getAccesor().exists(loc.getParent())) {
 			getAccesor().createDirectory(loc.getParent());
 		}
 
-		OutputStream fout = getAccesor().newOutputStream(loc);
-		ObjectOutputStream oos = new ObjectOutputStream(fout);
-		oos.writeObject(instance.roots);
-		oos.writeObject(instance.tags);
-		oos.close();
-
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(getAccesor().newOutputStream(loc)))) {
+			CatalogFormat.write(roots, tags, out);
+		}
 	}
 
 	public void loadFromDisk() throws ClassNotFoundException, IOException {
@@ -56,16 +123,171 @@ public class ModelManager {
 		loadFromLocation(loc);
 	}
 
+	/**
+	 * Replace every root and tag with those saved at the given location. Saves
+	 * written with Java serialization by older versions are still read, and the
+	 * log they kept is carried over to the journal if it is empty
+	 * 
+	 * @param location
+	 *            the given location
+	 * @throws IOException
+	 *             on any problems reading the location
+	 * @throws ClassNotFoundException
+	 *             if an older save refers to a missing class
+	 */
 	@SuppressWarnings("unchecked")
 	public void loadFromLocation(Path location) throws IOException, ClassNotFoundException {
-		InputStream streamIn = getAccesor().newInputStream(location);
-		ObjectInputStream objectinputstream = new ObjectInputStream(streamIn);
-		roots = (TreeSet<DirectoryModel>) objectinputstream.readObject();
-		tags = (TreeSet<String>) objectinputstream.readObject();
-		objectinputstream.close();
+		ByteArrayOutputStream contents = new ByteArrayOutputStream();
+		try (InputStream in = getAccesor().newInputStream(location)) {
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				contents.write(buffer, 0, read);
+			}
+		}
+		ByteBuffer bytes = ByteBuffer.wrap(contents.toByteArray());
+		if (isCatalog(bytes)) {
+			open(new CatalogReader(bytes), true);
+			return;
+		}
+
+		ObjectInputStream objectinputstream = new ObjectInputStream(new ByteArrayInputStream(bytes.array()));
+		TreeSet<DirectoryModel> loadedRoots = (TreeSet<DirectoryModel>) objectinputstream.readObject();
+		TreeSet<String> loadedTags = (TreeSet<String>) objectinputstream.readObject();
+		roots = loadedRoots;
+		tags = loadedTags;
+		catalog = null;
+
+		index.clear();
+		for (DirectoryModel root : roots) {
+			root.reindex();
+		}
+		importLog();
 
 	}
 
+	/**
+	 * Record every image snapshot in the journal, oldest first, if the journal is
+	 * empty. Saves written with Java serialization kept the log of every image
+	 * snapshot themselves, so it is carried over the first time one is read
+	 * 
+	 * @throws IOException
+	 *             on any problems reading or writing the journal
+	 */
+	private void importLog() throws IOException {
+		HistoryJournal journal = getJournal();
+		if (journal.size() > 0)
+			return;
+		List<ImageSnapShot> snaps = new ArrayList<>();
+		for (DirectoryModel root : roots) {
+			root.streamImagesRecursive().forEach(image -> {
+				List<ImageSnapShot> history = new ArrayList<>();
+				for (ImageSnapShot snap : image.getHistory()) {
+					history.add(snap);
+				}
+				// Histories list the newest first
+				Collections.reverse(history);
+				snaps.addAll(history);
+			});
+		}
+		snaps.sort(Comparator.comparingLong(ImageSnapShot::getTime));
+		for (ImageSnapShot snap : snaps) {
+			journal.append(snap.getTime(), snap.toString());
+		}
+	}
+
+	/**
+	 * Replace every root and tag with those saved at the default save location,
+	 * without reading the rest of the catalog
+	 * 
+	 * @throws IOException
+	 *             on any problems reading the location
+	 * @throws ClassNotFoundException
+	 *             if an older save refers to a missing class
+	 */
+	public void mapFromDisk() throws ClassNotFoundException, IOException {
+		mapFromLocation(Paths.get(saveLocation));
+	}
+
+	/**
+	 * Replace every root and tag with those saved at the given location, without
+	 * reading the rest of the catalog. The file is memory mapped, and the contents
+	 * and history of each model are read from it the first time they are needed.
+	 * Saves written with Java serialization are read in full
+	 * 
+	 * @param location
+	 *            the given location
+	 * @throws IOException
+	 *             on any problems reading the location
+	 * @throws ClassNotFoundException
+	 *             if an older save refers to a missing class
+	 */
+	public void mapFromLocation(Path location) throws IOException, ClassNotFoundException {
+		ByteBuffer buffer = getAccesor().map(location);
+		if (isCatalog(buffer)) {
+			open(new CatalogReader(buffer), false);
+		} else {
+			loadFromLocation(location);
+		}
+	}
+
+	/**
+	 * Return true iff the given buffer starts with a binary catalog
+	 * 
+	 * @param buffer
+	 *            the given buffer
+	 * @return true iff the given buffer starts with a binary catalog
+	 */
+	private static boolean isCatalog(ByteBuffer buffer) {
+		return buffer.remaining() >= 4 && buffer.getInt(buffer.position()) == CatalogFormat.MAGIC;
+	}
+
+	/**
+	 * Replace every root and tag with those in the given catalog
+	 * 
+	 * @param reader
+	 *            the given catalog
+	 * @param eager
+	 *            whether to read the whole catalog now
+	 * @throws IOException
+	 *             if the catalog is damaged
+	 */
+	private void open(CatalogReader reader, boolean eager) throws IOException {
+		List<DirectoryModel> loadedRoots = reader.getRoots();
+		List<String> loadedTags = reader.getTags();
+		roots = new TreeSet<>(loadedRoots);
+		tags = new TreeSet<>(loadedTags);
+		catalog = reader;
+
+		index.clear();
+		for (DirectoryModel root : roots) {
+			index.put(root);
+			watch(root);
+		}
+		if (eager) {
+			try {
+				finishLoading();
+			} catch (IOException e) {
+				clear();
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Read everything that has not been read yet from the catalog this manager was
+	 * mapped from
+	 * 
+	 * @throws IOException
+	 *             if the catalog is damaged
+	 */
+	void finishLoading() throws IOException {
+		if (catalog != null) {
+			catalog.loadAll();
+			catalog = null;
+		}
+	}
+
 	/**
 	 * Adds the given directory to this ModelManager
 	 * 
@@ -94,7 +316,10 @@ public class ModelManager {
 
 	/**
 	 * Adds the directory at the given path to this manager and any subdirectories
-	 * and images contained in it
+	 * and images contained in it. If the scan parallelism is greater than one, the
+	 * tree is listed on that many threads before the models are created. Every
+	 * directory is listed with the attributes of its entries, which are kept
+	 * until the scan is done so they are not read again
 	 * 
 	 * @param dir
 	 *            the given path
@@ -103,29 +328,63 @@ public class ModelManager {
 	 *             on any problems accessing the given directory
 	 */
 	public DirectoryModel addDir(Path dir) throws IOException {
-		if (!getAccesor().isDirectory(dir))
+		StatCache cache = statCache.get();
+		if (cache != null)
+			return addDir(dir, cache);
+
+		cache = new StatCache(getAccesor());
+		statCache.set(cache);
+		try {
+			return addDir(dir, cache);
+		} finally {
+			statCache.remove();
+		}
+	}
+
+	/**
+	 * Adds the directory at the given path to this manager and any subdirectories
+	 * and images contained in it, reading the file system through the given cache
+	 * 
+	 * @param dir
+	 *            the given path
+	 * @param cache
+	 *            the given cache
+	 * @return the created DirectoryModel object
+	 * @throws IOException
+	 *             on any problems accessing the given directory
+	 */
+	private DirectoryModel addDir(Path dir, StatCache cache) throws IOException {
+		if (!cache.isDirectory(dir))
 			throw new NotDirectoryException(dir.toString());
 
 		if (getDir(dir) != null)
 			return null;
 
-		DirectoryModel dirModel = new DirectoryModel(dir);
-		addDir(dirModel);
+		BulkChange bulk = beginBulkChange();
+		try {
+			if (scanParallelism > 1)
+				return new DirectoryScanner(cache, scanParallelism).scan(dir);
 
-		List<Path> paths = getAccesor().getChildPaths(dir);
-		for (Path path : paths) {
-			try {
-				if (getAccesor().isDirectory(path)) {
-					addDir(path);
-				} else if (ImageModel.isImage(path)) {
-					new ImageModel(path, dirModel);
+			DirectoryModel dirModel = new DirectoryModel(dir);
+			addDir(dirModel);
+
+			List<Path> paths = cache.getChildPaths(dir);
+			for (Path path : paths) {
+				try {
+					if (cache.isDirectory(path)) {
+						addDir(path, cache);
+					} else if (ImageModel.isImage(path)) {
+						new ImageModel(path, dirModel);
+					}
+				} catch (IOException e) {
+					//e.printStackTrace();
 				}
-			} catch (IOException e) {
-				//e.printStackTrace();
 			}
-		}
 
-		return dirModel;
+			return dirModel;
+		} finally {
+			bulk.close();
+		}
 
 	}
 
@@ -139,7 +398,7 @@ public class ModelManager {
 	 *             on any problems accessing the given path
 	 */
 	public DirectoryModel getDir(Path dir) throws IOException {
-		if (!getAccesor().isDirectory(dir))
+		if (!isDirectory(dir))
 			throw new NotDirectoryException(dir.toString());
 		return (DirectoryModel) getModel(dir);
 	}
@@ -154,20 +413,250 @@ public class ModelManager {
 	 *             on any problems accessing the given path
 	 */
 	public Model<?, ?> getModel(Path path) throws IOException {
-		path = getAccesor().toRealPath(path);
+		return find(toRealPath(path));
+	}
+
+	/**
+	 * Return whether a file exists at the given path, as known to the scan the
+	 * calling thread is running if there is one
+	 * 
+	 * @param path
+	 *            the given path
+	 * @return whether a file exists at the given path
+	 */
+	boolean exists(Path path) {
+		StatCache cache = statCache.get();
+		return cache != null ? cache.exists(path) : getAccesor().exists(path);
+	}
+
+	/**
+	 * Return whether there is a directory at the given path, as known to the scan
+	 * the calling thread is running if there is one
+	 * 
+	 * @param path
+	 *            the given path
+	 * @return whether there is a directory at the given path
+	 */
+	boolean isDirectory(Path path) {
+		StatCache cache = statCache.get();
+		return cache != null ? cache.isDirectory(path) : getAccesor().isDirectory(path);
+	}
+
+	/**
+	 * Return the real path of the file at the given path, as known to the scan the
+	 * calling thread is running if there is one
+	 * 
+	 * @param path
+	 *            the given path
+	 * @return the real path of the file at the given path
+	 * @throws IOException
+	 *             on any problems resolving the given path
+	 */
+	Path toRealPath(Path path) throws IOException {
+		StatCache cache = statCache.get();
+		return cache != null ? cache.toRealPath(path) : getAccesor().toRealPath(path);
+	}
+
+	/**
+	 * Move the file at the given source path to the given destination path, and
+	 * forget what the scan the calling thread is running knew about either
+	 * 
+	 * @param source
+	 *            the given source path
+	 * @param dest
+	 *            the given destination path
+	 * @throws IOException
+	 *             on any problems moving the file
+	 */
+	void move(Path source, Path dest) throws IOException {
+		try {
+			getAccesor().move(source, dest);
+		} finally {
+			StatCache cache = statCache.get();
+			if (cache != null) {
+				cache.invalidate(source);
+				cache.invalidate(dest);
+			}
+		}
+	}
+
+	/**
+	 * Return the model at the given real path, reading the directories above it
+	 * from the mapped catalog if they have not been read yet
+	 * 
+	 * @param path
+	 *            the given real path
+	 * @return the model at the given path, or null if there is none
+	 */
+	Model<?, ?> find(Path path) {
+		Model<?, ?> model = index.get(path);
+		if (model != null || catalog == null) {
+			return model;
+		}
 		for (DirectoryModel root : roots) {
-			if (root.contains(path)) {
-				Path rootPath = root.getPath();
-				if (rootPath.equals(path)) {
-					return root;
+			if (path.startsWith(root.getPath()) && !path.equals(root.getPath())) {
+				DirectoryModel dir = root;
+				Iterator<Path> names = root.getPath().relativize(path).iterator();
+				while (dir != null && names.hasNext()) {
+					// Reading a directory's contents indexes them
+					dir = dir.getSubDirectory(names.next().toString());
 				}
-				return root.getDescendant(path);
+				return index.get(path);
 			}
 		}
-
 		return null;
 	}
 
+	/**
+	 * Return the root directories of this manager
+	 * 
+	 * @return the root directories of this manager
+	 */
+	Set<DirectoryModel> getRoots() {
+		return roots;
+	}
+
+	/**
+	 * Remove the given model and everything under it from this manager without
+	 * touching the filesystem. Used when the model's file was removed outside of
+	 * this application
+	 * 
+	 * @param model
+	 *            the given model
+	 */
+	void forget(Model<?, ?> model) {
+		if (model instanceof ImageModel) {
+			ImageModel image = (ImageModel) model;
+			index.remove(image.getDirectoryPath(), image.getName(), image.getUntaggedName(), image.getExtension(),
+					image.getTags(), image);
+			image.getDirectory().remove(image);
+		} else if (model instanceof DirectoryModel) {
+			DirectoryModel dir = (DirectoryModel) model;
+			dir.unindex(dir.getPath());
+			if (dir.getDirectory() != null) {
+				dir.getDirectory().remove(dir);
+			} else {
+				roots.remove(dir);
+			}
+		}
+	}
+
+	/**
+	 * Watch the given directory for changes if this manager has a watcher
+	 * 
+	 * @param dir
+	 *            the given directory
+	 */
+	void watch(DirectoryModel dir) {
+		if (watcher != null) {
+			watcher.register(dir);
+		}
+	}
+
+	/**
+	 * Begin a bulk change. Until it is closed, directories whose contents change
+	 * are snapshotted once, when the outermost bulk change is closed. Use it
+	 * around scans, batch moves and reverts:
+	 * 
+	 * <pre>
+	 * ModelManager.BulkChange bulk = ModelManager.instance.beginBulkChange();
+	 * try {
+	 * 	...
+	 * } finally {
+	 * 	bulk.close();
+	 * }
+	 * </pre>
+	 * 
+	 * @return the bulk change, to be closed when it is done
+	 */
+	public synchronized BulkChange beginBulkChange() {
+		bulkDepth++;
+		return new BulkChange();
+	}
+
+	/**
+	 * End a bulk change, logging every directory that changed during it if it was
+	 * the outermost one
+	 * 
+	 */
+	private void endBulkChange() {
+		List<DirectoryModel> toLog;
+		synchronized (this) {
+			if (--bulkDepth > 0)
+				return;
+			toLog = new ArrayList<>(deferredLogs);
+			deferredLogs.clear();
+		}
+		for (DirectoryModel dir : toLog) {
+			dir.logDeferred();
+		}
+	}
+
+	/**
+	 * Leave the snapshot of the given directory to the end of the bulk change in
+	 * progress, if there is one
+	 * 
+	 * @param dir
+	 *            the given directory
+	 * @return whether the snapshot was left to the end of a bulk change
+	 */
+	synchronized boolean deferLog(DirectoryModel dir) {
+		if (bulkDepth == 0)
+			return false;
+		deferredLogs.add(dir);
+		return true;
+	}
+
+	/**
+	 * Stop leaving the snapshot of the given directory to the end of the bulk
+	 * change in progress, because it is about to be taken
+	 * 
+	 * @param dir
+	 *            the given directory
+	 * @return whether the snapshot of the given directory had been left
+	 */
+	synchronized boolean undeferLog(DirectoryModel dir) {
+		return deferredLogs.remove(dir);
+	}
+
+	/** Report every image added to, removed from, renamed or moved in this ModelManager to the given listener.
+	 * It is called on the thread making the change
+	 * @param listener the given listener
+	 */
+	public void addImageListener(ImageListener listener) {
+		index.addListener(listener);
+	}
+
+	/** Stop reporting changes to images to the given listener
+	 * @param listener the given listener
+	 */
+	public void removeImageListener(ImageListener listener) {
+		index.removeListener(listener);
+	}
+
+	/** Return the watcher notified of every directory added to this ModelManager
+	 * @return the watcher, or null if there is none
+	 */
+	public CatalogWatcher getWatcher() {
+		return watcher;
+	}
+
+	/** Set the watcher notified of every directory added to this ModelManager
+	 * @param watcher the watcher, or null to stop registering directories
+	 */
+	public void setWatcher(CatalogWatcher watcher) {
+		this.watcher = watcher;
+	}
+
+	/**
+	 * Return the index of every model in this manager by path
+	 * 
+	 * @return the index of every model in this manager by path
+	 */
+	ModelIndex getIndex() {
+		return index;
+	}
+
 	/** Get the accessor for this modelmanger
 	 * @return the accessor for this modelmanager
 	 */
@@ -175,6 +664,26 @@ public class ModelManager {
 		return accesor;
 	}
 
+	/** Get the journal every image snapshot is recorded in
+	 * @return the journal every image snapshot is recorded in
+	 */
+	public HistoryJournal getJournal() {
+		if (journal == null) {
+			journal = new HistoryJournal(Paths.get(journalLocation));
+		}
+		return journal;
+	}
+
+	/** Get the cache of thumbnails of the images in this ModelManager
+	 * @return the cache of thumbnails of the images in this ModelManager
+	 */
+	public synchronized ThumbnailCache getThumbnails() {
+		if (thumbnails == null) {
+			thumbnails = new ThumbnailCache(Paths.get(thumbnailLocation));
+		}
+		return thumbnails;
+	}
+
 	/** Set the accessor for this ModelManager
 	 * @param accesor the accessor
 	 */
@@ -182,11 +691,49 @@ public class ModelManager {
 		this.accesor = accesor;
 	}
 
+	/** Return the number of threads used to scan directories added to this ModelManager
+	 * @return the number of threads used to scan directories
+	 */
+	public int getScanParallelism() {
+		return scanParallelism;
+	}
+
+	/** Return whether images are renamed after their tags when they are added to this ModelManager
+	 * @return whether images are renamed after their tags when they are added
+	 */
+	public boolean isNormalizeOnScan() {
+		return normalizeOnScan;
+	}
+
+	/** Set whether images are renamed after their tags when they are added to this ModelManager.
+	 * If not, images are catalogued as they are named, without touching their files, and
+	 * can be renamed later with normalizeNames
+	 * @param normalizeOnScan whether images are renamed after their tags when they are added
+	 */
+	public void setNormalizeOnScan(boolean normalizeOnScan) {
+		this.normalizeOnScan = normalizeOnScan;
+	}
+
+	/** Set the number of threads used to scan directories added to this ModelManager.
+	 * A parallelism of 1 scans on the calling thread
+	 * @param scanParallelism the number of threads used to scan directories
+	 */
+	public void setScanParallelism(int scanParallelism) {
+		if (scanParallelism < 1)
+			throw new IllegalArgumentException(Integer.toString(scanParallelism));
+		this.scanParallelism = scanParallelism;
+	}
+
 	/** Clear this ModelManager
 	 * 
 	 */
 	public void clear() {
 		roots.clear();
+		index.clear();
+		catalog = null;
+		synchronized (this) {
+			deferredLogs.clear();
+		}
 	}
 	
 	
@@ -197,6 +744,217 @@ public class ModelManager {
 		tags.add(tag);
 	}
 	
+	/**
+	 * Apply the given tag edits, in order, to every given image. Each image whose
+	 * tags change is moved once, straight to its final name, and gets one history
+	 * entry. The moves run on as many threads as the scan parallelism, and the
+	 * models are updated afterwards on the calling thread. Images that cannot be
+	 * moved are left unchanged
+	 * 
+	 * @param images
+	 *            the given images
+	 * @param edits
+	 *            the given tag edits
+	 * @return the images whose tags changed
+	 * @throws IOException
+	 *             if any image could not be moved, after every other image has
+	 *             been updated. Each failure is a suppressed exception
+	 */
+	public List<ImageModel> editTags(Collection<ImageModel> images, List<TagEdit> edits) throws IOException {
+		List<TagMove> moves = new ArrayList<>();
+		for (ImageModel image : new LinkedHashSet<>(images)) {
+			TreeSet<String> newTags = new TreeSet<>(image.getTags());
+			for (TagEdit edit : edits) {
+				edit.applyTo(newTags);
+			}
+			if (!newTags.equals(image.getTags())) {
+				moves.add(new TagMove(image, newTags));
+			}
+		}
+
+		return runMoves(moves, null, "Could not retag every image");
+	}
+
+	/**
+	 * Return every image under the given directory whose file is not named after
+	 * its untagged name and tags. These are the files normalizeNames renames, each
+	 * to its normalized path
+	 * 
+	 * @param dir
+	 *            the given directory
+	 * @return every image under the given directory whose name is not normalized
+	 * @see ImageModel#getNormalizedPath()
+	 */
+	public List<ImageModel> getUnnormalizedImages(DirectoryModel dir) {
+		return dir.streamImagesRecursive().filter(image -> !image.isNormalized()).collect(Collectors.toList());
+	}
+
+	/**
+	 * Rename the file of every given image that is not named after its tags to
+	 * its normalized name. The renames run on as many threads as the scan
+	 * parallelism, and the models are updated afterwards on the calling thread
+	 * 
+	 * @param images
+	 *            the given images
+	 * @param progress
+	 *            notified after each file is renamed, or null
+	 * @return the images that were renamed
+	 * @throws IOException
+	 *             if any image could not be renamed, after every other image has
+	 *             been updated. Each failure is a suppressed exception
+	 */
+	public List<ImageModel> normalizeNames(Collection<ImageModel> images, ProgressListener progress)
+			throws IOException {
+		List<TagMove> moves = new ArrayList<>();
+		for (ImageModel image : new LinkedHashSet<>(images)) {
+			if (!image.isNormalized()) {
+				moves.add(new TagMove(image, image.getTags()));
+			}
+		}
+		return runMoves(moves, progress, "Could not normalize every image name");
+	}
+
+	/**
+	 * Move the files of the given tag moves, then give each image whose file was
+	 * moved its new tags
+	 * 
+	 * @param moves
+	 *            the given tag moves
+	 * @param progress
+	 *            notified after each file is moved, or null
+	 * @param failureMessage
+	 *            the message of the exception thrown if any move fails
+	 * @return the images whose files were moved
+	 * @throws IOException
+	 *             if any file could not be moved, after every other image has been
+	 *             updated
+	 */
+	private List<ImageModel> runMoves(List<TagMove> moves, ProgressListener progress, String failureMessage)
+			throws IOException {
+		AtomicInteger done = new AtomicInteger();
+		Consumer<TagMove> run = move -> {
+			move.run();
+			if (progress != null) {
+				progress.progress(done.incrementAndGet(), moves.size());
+			}
+		};
+		if (scanParallelism > 1 && moves.size() > 1) {
+			ForkJoinPool pool = new ForkJoinPool(scanParallelism);
+			try {
+				pool.submit(() -> moves.parallelStream().forEach(run)).join();
+			} finally {
+				pool.shutdown();
+			}
+		} else {
+			moves.forEach(run);
+		}
+
+		List<ImageModel> changed = new ArrayList<>();
+		IOException failure = null;
+		BulkChange bulk = beginBulkChange();
+		try {
+			for (TagMove move : moves) {
+				if (move.error == null) {
+					move.image.retagged(move.tags);
+					changed.add(move.image);
+				} else {
+					if (failure == null) {
+						failure = new IOException(failureMessage);
+					}
+					failure.addSuppressed(move.error);
+				}
+			}
+		} finally {
+			bulk.close();
+		}
+		if (failure != null)
+			throw failure;
+		return changed;
+	}
+
+	/**
+	 * The move of one image's file to its normalized name with its new tags
+	 *
+	 */
+	private class TagMove {
+		private final ImageModel image;
+		private final TreeSet<String> tags;
+		private final Path source;
+		private final Path target;
+		private IOException error;
+
+		private TagMove(ImageModel image, TreeSet<String> tags) {
+			this.image = image;
+			this.tags = tags;
+			this.source = image.getPath();
+			this.target = image.getPathWithTags(tags);
+		}
+
+		/**
+		 * Move the file, recording any failure
+		 * 
+		 */
+		private void run() {
+			try {
+				move(source, target);
+			} catch (IOException e) {
+				error = e;
+			}
+		}
+	}
+
+	/** Return every catalogued image with the given tag, in path order. Only the
+	 * directories of a mapped catalog holding images with the tag are read
+	 * @param tag the given tag
+	 * @return every catalogued image with the given tag
+	 */
+	public Collection<ImageModel> getImagesWithTag(String tag) {
+		readTagged(tag, null);
+		return index.getTags().get(tag);
+	}
+
+	/** Return every catalogued image with the given tag under the given directory, in path order. Only the
+	 * directories of a mapped catalog holding images with the tag are read
+	 * @param tag the given tag
+	 * @param dir the given directory
+	 * @return every image with the given tag under the given directory
+	 */
+	public Collection<ImageModel> getImagesWithTag(String tag, DirectoryModel dir) {
+		readTagged(tag, dir.getPath());
+		return index.getTags().get(tag, dir.getPath());
+	}
+
+	/**
+	 * Read the directories of the mapped catalog holding images with the given
+	 * tag under the given path, so those images are in the tag index. The rest of
+	 * the catalog is left unread, unless it is too old to say which directories
+	 * hold them
+	 * 
+	 * @param tag
+	 *            the given tag
+	 * @param under
+	 *            the given path, or null for every directory
+	 */
+	private void readTagged(String tag, Path under) {
+		CatalogReader reader = catalog;
+		if (reader == null)
+			return;
+		try {
+			List<DirectoryModel> dirs = reader.getDirectoriesWithTag(tag);
+			if (dirs == null) {
+				finishLoading();
+				return;
+			}
+			for (DirectoryModel dir : dirs) {
+				if (under == null || dir.getPath().startsWith(under)) {
+					dir.loadWithAncestors();
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
 	/** Return all the tags ever added
 	 * @return all the tags ever added
 	 */
@@ -0,0 +1,19 @@
+package model;
+
+/**
+ * Notified as a batch operation on many models makes progress
+ *
+ */
+@FunctionalInterface
+public interface ProgressListener {
+
+	/**
+	 * Called after each step of the operation. May be called from any thread
+	 * 
+	 * @param done
+	 *            the number of steps done
+	 * @param total
+	 *            the number of steps in the operation
+	 */
+	void progress(int done, int total);
+}
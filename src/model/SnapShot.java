@@ -1,8 +1,15 @@
 package model;
 
 import java.io.Serializable;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
 
 /**
  * A snapshot of a subject at an instant
@@ -59,12 +66,22 @@ public abstract class SnapShot<T, S extends SnapShot<T, S>> implements Iterable<
 
 	private static final long serialVersionUID = -5175946745479413025L;
 
+	// Renders dates the way %tc does
+	private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter
+			.ofPattern("EEE MMM dd HH:mm:ss zzz yyyy", Locale.getDefault(Locale.Category.FORMAT));
+
 	private final T subject;
 	private final SnapShot<T, S> lastSnap;
 	private SnapShot<T, S> nextSnap;
 
 	private final Date date;
 
+	// The description rendered last, the models it names and the paths they had
+	// when it was rendered
+	private transient String description;
+	private transient Model<?, ?>[] named;
+	private transient Path[] namedPaths;
+
 	/**
 	 * Create a snapshot of the given subject
 	 * 
@@ -84,9 +101,23 @@ public abstract class SnapShot<T, S extends SnapShot<T, S>> implements Iterable<
 	 *            the last snapshot taken of the given subject
 	 */
 	protected SnapShot(T subject, S lastSnap) {
+		this(subject, lastSnap, System.currentTimeMillis());
+	}
+
+	/**
+	 * Create a snapshot of the given subject taken at the given time
+	 * 
+	 * @param subject
+	 *            the given subject
+	 * @param lastSnap
+	 *            the last snapshot taken of the given subject
+	 * @param time
+	 *            when the snapshot was taken in milliseconds since the epoch
+	 */
+	protected SnapShot(T subject, S lastSnap, long time) {
 		this.subject = subject;
 		this.lastSnap = lastSnap;
-		date = new Date();
+		date = new Date(time);
 
 		if (lastSnap != null) {
 			lastSnap.setNextSnap(this);
@@ -102,6 +133,15 @@ public abstract class SnapShot<T, S extends SnapShot<T, S>> implements Iterable<
 		return (Date) date.clone();
 	}
 
+	/**
+	 * Return when this snapshot was taken in milliseconds since the epoch
+	 * 
+	 * @return when this snapshot was taken in milliseconds since the epoch
+	 */
+	final long getTime() {
+		return date.getTime();
+	}
+
 	/**
 	 * Return the snapshot taken before this one. If there is none, null
 	 * 
@@ -142,6 +182,76 @@ public abstract class SnapShot<T, S extends SnapShot<T, S>> implements Iterable<
 		return new SnapIterator<T, S>(this);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		// Snapshots never change, but the models they name may be renamed or moved,
+		// which gives them a new path object, so the description is only rendered
+		// again once one of those is
+		String result = description;
+		if (result == null || isRenamed(named, namedPaths)) {
+			List<Model<?, ?>> models = new ArrayList<>();
+			result = describe(models);
+			if (models.isEmpty()) {
+				named = null;
+				namedPaths = null;
+			} else {
+				Path[] paths = new Path[models.size()];
+				for (int i = 0; i < paths.length; i++) {
+					paths[i] = models.get(i).getPath();
+				}
+				named = models.toArray(new Model<?, ?>[0]);
+				namedPaths = paths;
+			}
+			description = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Render the description of what changed since the last snapshot
+	 * 
+	 * @param named
+	 *            the list every model named in the description is added to
+	 * @return the description of this snapshot
+	 */
+	protected abstract String describe(List<Model<?, ?>> named);
+
+	/**
+	 * Return when this snapshot was taken, rendered the way the descriptions of
+	 * snapshots show it
+	 * 
+	 * @return when this snapshot was taken
+	 */
+	protected final String formatDate() {
+		return DATE_FORMAT.format(Instant.ofEpochMilli(getTime()).atZone(ZoneId.systemDefault()));
+	}
+
+	/**
+	 * Return whether any of the given models no longer has the path at the same
+	 * index of the given paths
+	 * 
+	 * @param models
+	 *            the given models, or null if there are none
+	 * @param paths
+	 *            the paths the models had
+	 * @return whether any of the given models was renamed or moved since
+	 */
+	private static boolean isRenamed(Model<?, ?>[] models, Path[] paths) {
+		if (models != null) {
+			for (int i = 0; i < models.length; i++) {
+				if (models[i].getPath() != paths[i]) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * Set the snapshot the comes after this one. Can only be done once
 	 * 
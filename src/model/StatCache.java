@@ -0,0 +1,191 @@
+package model;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the attributes and real paths of the files an Accesor was asked
+ * about, so a scan that lists a directory does not stat every entry in it again
+ * and again. Entries are never refreshed, so a StatCache should only live as long
+ * as one scan, and be told about every move made meanwhile. Every entry is also
+ * filed under the directory it is in, so forgetting a moved directory only walks
+ * what is cached under it. Safe to use from several threads at once
+ *
+ */
+class StatCache {
+
+	private final Accesor accesor;
+	private final Map<Path, BasicFileAttributes> attributes = new ConcurrentHashMap<>();
+	private final Map<Path, Path> realPaths = new ConcurrentHashMap<>();
+	// The paths to forget along with each directory, and with each linked file
+	private final Map<Path, Set<Path>> dependents = new ConcurrentHashMap<>();
+
+	/**
+	 * Create an empty StatCache in front of the given accesor
+	 *
+	 * @param accesor
+	 *            the given accesor
+	 */
+	StatCache(Accesor accesor) {
+		this.accesor = accesor;
+	}
+
+	/**
+	 * List the directory at the given path, remembering the attributes and real
+	 * path of every entry in it that is not a symbolic link
+	 *
+	 * @param dir
+	 *            the given path
+	 * @return the path of every entry in the directory, in listing order
+	 * @throws IOException
+	 *             on any problems listing the directory
+	 */
+	List<Path> getChildPaths(Path dir) throws IOException {
+		Path realDir = toRealPath(dir);
+		Map<Path, BasicFileAttributes> children = accesor.getChildAttributes(dir);
+		for (Map.Entry<Path, BasicFileAttributes> child : children.entrySet()) {
+			BasicFileAttributes attrs = child.getValue();
+			// Links are left to be resolved when they are asked about
+			if (!attrs.isSymbolicLink()) {
+				Path path = child.getKey();
+				Path realPath = realDir.resolve(path.getFileName());
+				attributes.put(path, attrs);
+				attributes.put(realPath, attrs);
+				realPaths.put(path, realPath);
+				track(path, dir);
+				if (!realDir.equals(dir)) {
+					track(realPath, realDir);
+					track(path, realPath);
+				}
+			}
+		}
+		return new ArrayList<>(children.keySet());
+	}
+
+	/**
+	 * Return whether a file exists at the given path
+	 *
+	 * @param path
+	 *            the given path
+	 * @return whether a file exists at the given path
+	 */
+	boolean exists(Path path) {
+		return getAttributes(path) != null;
+	}
+
+	/**
+	 * Return whether there is a directory at the given path
+	 *
+	 * @param path
+	 *            the given path
+	 * @return whether there is a directory at the given path
+	 */
+	boolean isDirectory(Path path) {
+		BasicFileAttributes attrs = getAttributes(path);
+		return attrs != null && attrs.isDirectory();
+	}
+
+	/**
+	 * Return the real path of the file at the given path
+	 *
+	 * @param path
+	 *            the given path
+	 * @return the real path of the file at the given path
+	 * @throws IOException
+	 *             on any problems resolving the given path
+	 */
+	Path toRealPath(Path path) throws IOException {
+		Path realPath = realPaths.get(path);
+		if (realPath == null) {
+			realPath = accesor.toRealPath(path);
+			realPaths.put(path, realPath);
+			track(path, path.getParent());
+			if (!realPath.equals(path)) {
+				track(path, realPath);
+			}
+		}
+		return realPath;
+	}
+
+	/**
+	 * Forget everything known about the file at the given path and, if anything
+	 * under it or linked to it is cached, about that too
+	 *
+	 * @param path
+	 *            the given path
+	 */
+	void invalidate(Path path) {
+		Path dir = path.getParent();
+		Set<Path> siblings = dir == null ? null : dependents.get(dir);
+		if (siblings != null) {
+			siblings.remove(path);
+		}
+		forget(path);
+	}
+
+	/**
+	 * Forget everything known about the file at the given path and the paths filed
+	 * under it
+	 *
+	 * @param path
+	 *            the given path
+	 */
+	private void forget(Path path) {
+		attributes.remove(path);
+		realPaths.remove(path);
+		Set<Path> paths = dependents.remove(path);
+		if (paths != null) {
+			for (Path dependent : paths) {
+				forget(dependent);
+			}
+		}
+	}
+
+	/**
+	 * File the given path under the given directory, and the directory under the
+	 * ones above it if it was not filed yet, so the path is forgotten when any of
+	 * them is
+	 *
+	 * @param path
+	 *            the given path
+	 * @param dir
+	 *            the given directory, or null if the path is a root
+	 */
+	private void track(Path path, Path dir) {
+		while (dir != null) {
+			boolean filed = dependents.containsKey(dir);
+			dependents.computeIfAbsent(dir, key -> ConcurrentHashMap.newKeySet()).add(path);
+			if (filed)
+				return;
+			path = dir;
+			dir = dir.getParent();
+		}
+	}
+
+	/**
+	 * Return the attributes of the file at the given path, following links
+	 *
+	 * @param path
+	 *            the given path
+	 * @return the attributes of the file, or null if they cannot be read
+	 */
+	private BasicFileAttributes getAttributes(Path path) {
+		BasicFileAttributes attrs = attributes.get(path);
+		if (attrs == null) {
+			try {
+				attrs = accesor.readAttributes(path);
+			} catch (IOException e) {
+				return null;
+			}
+			attributes.put(path, attrs);
+			track(path, path.getParent());
+		}
+		return attrs;
+	}
+}
@@ -0,0 +1,118 @@
+package model;
+
+import java.util.Set;
+
+/**
+ * A change to the tags of an image: adding a tag, removing one, or renaming
+ * one. A list of TagEdits is applied to many images at once with
+ * ModelManager.editTags
+ *
+ */
+public final class TagEdit {
+
+	private enum Kind {
+		ADD, REMOVE, RENAME
+	}
+
+	private final Kind kind;
+	private final String tag;
+	private final String newTag;
+
+	/**
+	 * Private!
+	 *
+	 */
+	private TagEdit(Kind kind, String tag, String newTag) {
+		this.kind = kind;
+		this.tag = tag;
+		this.newTag = newTag;
+	}
+
+	/**
+	 * Return an edit that adds the given tag
+	 *
+	 * @param tag
+	 *            the given tag
+	 * @return an edit that adds the given tag
+	 */
+	public static TagEdit add(String tag) {
+		if (!ImageModel.isLegalTag(tag))
+			throw new IllegalArgumentException(tag);
+		return new TagEdit(Kind.ADD, tag, tag);
+	}
+
+	/**
+	 * Return an edit that removes the given tag
+	 *
+	 * @param tag
+	 *            the given tag
+	 * @return an edit that removes the given tag
+	 */
+	public static TagEdit remove(String tag) {
+		return new TagEdit(Kind.REMOVE, tag, null);
+	}
+
+	/**
+	 * Return an edit that replaces the given tag with the given new tag on images
+	 * that have it
+	 *
+	 * @param tag
+	 *            the given tag
+	 * @param newTag
+	 *            the given new tag
+	 * @return an edit that renames the given tag
+	 */
+	public static TagEdit rename(String tag, String newTag) {
+		if (!ImageModel.isLegalTag(newTag))
+			throw new IllegalArgumentException(newTag);
+		return new TagEdit(Kind.RENAME, tag, newTag);
+	}
+
+	/**
+	 * Return the tag this edit adds to images, if any
+	 *
+	 * @return the tag this edit adds, or null if it only removes one
+	 */
+	public String getNewTag() {
+		return newTag;
+	}
+
+	/**
+	 * Apply this edit to the given tags
+	 *
+	 * @param tags
+	 *            the given tags
+	 */
+	void applyTo(Set<String> tags) {
+		switch (kind) {
+		case ADD:
+			tags.add(tag);
+			break;
+		case REMOVE:
+			tags.remove(tag);
+			break;
+		case RENAME:
+			if (tags.remove(tag)) {
+				tags.add(newTag);
+			}
+			break;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		switch (kind) {
+		case ADD:
+			return "Add tag \"" + tag + "\"";
+		case REMOVE:
+			return "Remove tag \"" + tag + "\"";
+		default:
+			return "Rename tag \"" + tag + "\" to \"" + newTag + "\"";
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package model;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * An inverted index from each tag to the images that have it. The images for a
+ * tag are kept in path order, so the images under a directory form a single
+ * range that can be found without walking the directory
+ *
+ */
+class TagIndex {
+
+	private HashMap<String, TreeMap<String, ImageModel>> images;
+
+	/**
+	 * Create an empty TagIndex
+	 *
+	 */
+	TagIndex() {
+		images = new HashMap<>();
+	}
+
+	/**
+	 * Record that the image at the given path has the given tags
+	 *
+	 * @param path
+	 *            the path of the image
+	 * @param tags
+	 *            the tags of the image
+	 * @param image
+	 *            the image
+	 */
+	void add(Path path, Iterable<String> tags, ImageModel image) {
+		String key = path.toString();
+		for (String tag : tags) {
+			TreeMap<String, ImageModel> tagged = images.get(tag);
+			if (tagged == null) {
+				tagged = new TreeMap<>();
+				images.put(tag, tagged);
+			}
+			tagged.put(key, image);
+		}
+	}
+
+	/**
+	 * Remove every entry from this index
+	 *
+	 */
+	void clear() {
+		images.clear();
+	}
+
+	/**
+	 * Return the images with the given tag in path order
+	 *
+	 * @param tag
+	 *            the given tag
+	 * @return the images with the given tag
+	 */
+	Collection<ImageModel> get(String tag) {
+		TreeMap<String, ImageModel> tagged = images.get(tag);
+		if (tagged == null) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableCollection(tagged.values());
+	}
+
+	/**
+	 * Return the images with the given tag under the directory at the given path,
+	 * in path order
+	 *
+	 * @param tag
+	 *            the given tag
+	 * @param dir
+	 *            the path of the directory
+	 * @return the images with the given tag under the directory
+	 */
+	Collection<ImageModel> get(String tag, Path dir) {
+		TreeMap<String, ImageModel> tagged = images.get(tag);
+		if (tagged == null) {
+			return Collections.emptyList();
+		}
+
+		// Every path under dir starts with dir and a separator, and no other path sorts
+		// between that prefix and the prefix with the separator incremented
+		String separator = dir.getFileSystem().getSeparator();
+		String prefix = dir.toString();
+		if (!prefix.endsWith(separator)) {
+			prefix += separator;
+		}
+		String end = prefix.substring(0, prefix.length() - 1) + (char) (prefix.charAt(prefix.length() - 1) + 1);
+		SortedMap<String, ImageModel> range = tagged.subMap(prefix, end);
+		return Collections.unmodifiableCollection(range.values());
+	}
+
+	/**
+	 * Record that the image at the given path no longer has the given tags
+	 *
+	 * @param path
+	 *            the path of the image
+	 * @param tags
+	 *            the tags the image had
+	 * @param image
+	 *            the image
+	 */
+	void remove(Path path, Iterable<String> tags, ImageModel image) {
+		String key = path.toString();
+		for (String tag : tags) {
+			TreeMap<String, ImageModel> tagged = images.get(tag);
+			if (tagged != null && tagged.remove(key, image) && tagged.isEmpty()) {
+				images.remove(tag);
+			}
+		}
+	}
+}
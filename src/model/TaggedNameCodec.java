@@ -0,0 +1,306 @@
+package model;
+
+import java.util.Collection;
+
+/**
+ * Reads and writes the names image files are given after their tags, such as
+ * "beach - @sea @sun.jpg": an untagged name, then " -" and " @tag" for every
+ * tag if there are any, then the extension. Names are checked and split in a
+ * single pass over their characters instead of with regular expressions, and
+ * nothing is allocated but the strings returned, since every image scanned or
+ * retagged goes through here. Accepts exactly the names the regular
+ * expressions it replaces did, except that tags and untagged names with line
+ * breaks, which could never be read back from a file name, are now rejected
+ *
+ */
+final class TaggedNameCodec {
+
+	// The characters a legal file name may have after its first one
+	private static final boolean[] FILENAME_CHARS = new boolean[128];
+	// The characters that may not be part of a tag, besides line terminators
+	private static final boolean[] TAG_RESERVED = new boolean[128];
+	// The characters that may not be part of an untagged name, besides line
+	// terminators
+	private static final boolean[] NAME_RESERVED = new boolean[128];
+
+	static {
+		for (char c = 'a'; c <= 'z'; c++) {
+			FILENAME_CHARS[c] = true;
+			FILENAME_CHARS[Character.toUpperCase(c)] = true;
+		}
+		for (char c = '0'; c <= '9'; c++) {
+			FILENAME_CHARS[c] = true;
+		}
+		for (char c : "!#%&();=[]^_+{}~,\\.@- ".toCharArray()) {
+			FILENAME_CHARS[c] = true;
+		}
+		for (char c : "\\/:*?\"<>|-".toCharArray()) {
+			NAME_RESERVED[c] = true;
+			TAG_RESERVED[c] = true;
+		}
+		TAG_RESERVED['@'] = true;
+	}
+
+	/**
+	 * Private!
+	 *
+	 */
+	private TaggedNameCodec() {
+	}
+
+	/**
+	 * Return true iff the given string is a legal file name: a letter or digit
+	 * followed by letters, digits, spaces and some punctuation
+	 *
+	 * @param name
+	 *            the given string
+	 * @return true iff the given string is a legal file name
+	 */
+	static boolean isLegalFilename(CharSequence name) {
+		if (name.length() == 0 || !isLetterOrDigit(name.charAt(0)))
+			return false;
+		for (int i = 1; i < name.length(); i++) {
+			if (!isFilenameChar(name.charAt(i)))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Return true iff the given tag can be part of a file name
+	 *
+	 * @param tag
+	 *            the given tag
+	 * @return true iff the given tag can be part of a file name
+	 */
+	static boolean isLegalTag(String tag) {
+		return tag != null && !containsAny(tag, TAG_RESERVED);
+	}
+
+	/**
+	 * Return true iff the given string can be the untagged name of an image
+	 *
+	 * @param untaggedName
+	 *            the given string
+	 * @return true iff the given string can be an untagged name
+	 */
+	static boolean isLegalUntaggedName(String untaggedName) {
+		return untaggedName != null && !containsAny(untaggedName, NAME_RESERVED);
+	}
+
+	/**
+	 * Return the index of the dot starting the extension of the given file name
+	 *
+	 * @param fileName
+	 *            the given file name
+	 * @return the index of the last dot in the given file name, or -1 if it has
+	 *         none or spans several lines
+	 */
+	static int extensionStart(String fileName) {
+		int dot = -1;
+		for (int i = 0; i < fileName.length(); i++) {
+			char c = fileName.charAt(i);
+			if (c == '.') {
+				dot = i;
+			} else if (isLineTerminator(c)) {
+				return -1;
+			}
+		}
+		return dot;
+	}
+
+	/**
+	 * Parse the tagged name at the start of the given file name, up to the given
+	 * end, adding its tags to the given collection in the order they are named.
+	 * Nothing is added unless the tagged name is legal
+	 *
+	 * @param name
+	 *            the given file name
+	 * @param end
+	 *            the index the tagged name ends at, such as the start of the
+	 *            extension
+	 * @param tags
+	 *            the given collection, or null to only check the name
+	 * @return the length of the untagged name, or -1 if the tagged name is not
+	 *         legal
+	 */
+	static int parse(String name, int end, Collection<String> tags) {
+		if (end == 0 || !isLetterOrDigit(name.charAt(0)))
+			return -1;
+		// Past the untagged name, tags alternate between expecting a space, an
+		// at sign, a first tag character and more of them or a space
+		final int untagged = 0, space = 1, at = 2, first = 3, rest = 4;
+		int state = untagged;
+		int length = end;
+		for (int i = 1; i < end; i++) {
+			char c = name.charAt(i);
+			if (!isFilenameChar(c))
+				return -1;
+			switch (state) {
+			case untagged:
+				if (c == '@')
+					return -1;
+				if (c == '-') {
+					if (name.charAt(i - 1) != ' ')
+						return -1;
+					length = i - 1;
+					state = space;
+				}
+				break;
+			case space:
+				if (c != ' ')
+					return -1;
+				state = at;
+				break;
+			case at:
+				if (c != '@')
+					return -1;
+				state = first;
+				break;
+			case first:
+			case rest:
+				if (c == ' ' && state == rest) {
+					state = at;
+				} else if (c == ' ' || c == '@' || c == '-') {
+					return -1;
+				} else {
+					state = rest;
+				}
+				break;
+			}
+		}
+		if (state != untagged && state != rest)
+			return -1;
+		if (tags != null) {
+			addTags(name, length, end, tags);
+		}
+		return length;
+	}
+
+	/**
+	 * Add every tag named between the given indices of the given string to the
+	 * given collection, in order. A tag is an at sign followed by anything but
+	 * at signs, hyphens and white space, wherever it is in the string
+	 *
+	 * @param name
+	 *            the given string
+	 * @param start
+	 *            the index to look for tags from
+	 * @param end
+	 *            the index to look for tags up to
+	 * @param tags
+	 *            the given collection
+	 */
+	static void addTags(String name, int start, int end, Collection<String> tags) {
+		int i = start;
+		while (i < end) {
+			if (name.charAt(i++) != '@')
+				continue;
+			int tagStart = i;
+			while (i < end && !endsTag(name.charAt(i))) {
+				i++;
+			}
+			if (i > tagStart) {
+				tags.add(name.substring(tagStart, i));
+			}
+		}
+	}
+
+	/**
+	 * Return the file name for the given untagged name, tags and extension
+	 *
+	 * @param untaggedName
+	 *            the given untagged name
+	 * @param tags
+	 *            the given tags, in order
+	 * @param extension
+	 *            the given extension with its dot, or an empty string
+	 * @return the file name for the given untagged name, tags and extension
+	 */
+	static String format(String untaggedName, Collection<String> tags, String extension) {
+		int length = untaggedName.length() + extension.length();
+		if (!tags.isEmpty()) {
+			length += 2;
+			for (String tag : tags) {
+				length += tag.length() + 2;
+			}
+		}
+		StringBuilder name = new StringBuilder(length).append(untaggedName);
+		if (!tags.isEmpty()) {
+			name.append(" -");
+		}
+		for (String tag : tags) {
+			name.append(" @").append(tag);
+		}
+		return name.append(extension).toString();
+	}
+
+	/**
+	 * Return true iff the given file name, up to the given end, is the tagged name
+	 * for the given untagged name and tags, without building that tagged name
+	 *
+	 * @param name
+	 *            the given file name
+	 * @param end
+	 *            the index the tagged name ends at
+	 * @param untaggedName
+	 *            the given untagged name
+	 * @param tags
+	 *            the given tags, in order
+	 * @return true iff the file name is formatted from the untagged name and tags
+	 */
+	static boolean isFormatted(String name, int end, String untaggedName, Collection<String> tags) {
+		int i = untaggedName.length();
+		if (i > end || !name.regionMatches(0, untaggedName, 0, i))
+			return false;
+		if (tags.isEmpty())
+			return i == end;
+		if (i + 2 > end || name.charAt(i) != ' ' || name.charAt(i + 1) != '-')
+			return false;
+		i += 2;
+		for (String tag : tags) {
+			if (i + 2 + tag.length() > end || name.charAt(i) != ' ' || name.charAt(i + 1) != '@'
+					|| !name.regionMatches(i + 2, tag, 0, tag.length()))
+				return false;
+			i += 2 + tag.length();
+		}
+		return i == end;
+	}
+
+	private static boolean isLetterOrDigit(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+	}
+
+	private static boolean isFilenameChar(char c) {
+		return c < 128 && FILENAME_CHARS[c];
+	}
+
+	private static boolean endsTag(char c) {
+		// The white space of the patterns this replaces
+		return c == '@' || c == '-' || c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f'
+				|| c == '\r';
+	}
+
+	private static boolean isLineTerminator(char c) {
+		return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+	}
+
+	/**
+	 * Return true iff the given string has a character in the given table or a
+	 * line terminator
+	 *
+	 * @param s
+	 *            the given string
+	 * @param reserved
+	 *            the given table of ASCII characters
+	 * @return true iff the given string has a reserved character
+	 */
+	private static boolean containsAny(String s, boolean[] reserved) {
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if ((c < 128 && reserved[c]) || isLineTerminator(c))
+				return true;
+		}
+		return false;
+	}
+}
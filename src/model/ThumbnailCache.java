@@ -0,0 +1,451 @@
+package model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+/**
+ * Reduced size copies of images, generated on a pool of threads and kept in
+ * two tiers: a least recently used memory cache bounded by the bytes of its
+ * pixels, and a directory of compressed thumbnails on disk.
+ *
+ * <p>
+ * A thumbnail in memory is found by the path of its image and is dropped when
+ * the size or modification time of the file changes. A thumbnail on disk is
+ * named by a digest of the size, modification time and first bytes of the file
+ * it was made from, so it is still found after the image is renamed or moved,
+ * which happens every time it is tagged
+ *
+ */
+public class ThumbnailCache implements Closeable {
+
+	public static final long DEFAULT_MEMORY_BYTES = 64L << 20;
+	private static final int MAGIC = 0x49544842;
+	private static final int HEAD_SIZE = 16 * 1024;
+	private static final String SUFFIX = ".thumb";
+	private static final Logger LOGGER = Logger.getLogger(ThumbnailCache.class.getName());
+	static {
+		LOGGER.setLevel(Level.OFF);
+	}
+
+	/**
+	 * The path and size a thumbnail was asked for with
+	 *
+	 */
+	private static final class Key {
+		private final Path path;
+		private final int size;
+
+		private Key(Path path, int size) {
+			this.path = path;
+			this.size = size;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Key && ((Key) other).path.equals(path) && ((Key) other).size == size;
+		}
+
+		@Override
+		public int hashCode() {
+			return path.hashCode() * 31 + size;
+		}
+	}
+
+	/**
+	 * A thumbnail in memory and the file it was made from
+	 *
+	 */
+	private static final class Entry {
+		private final Image image;
+		private final long fileSize;
+		private final long modified;
+		private final long bytes;
+
+		private Entry(Image image, BasicFileAttributes attributes) {
+			this.image = image;
+			this.fileSize = attributes.size();
+			this.modified = attributes.lastModifiedTime().toMillis();
+			this.bytes = 4L * (long) image.getWidth() * (long) image.getHeight();
+		}
+
+		private boolean matches(BasicFileAttributes attributes) {
+			return fileSize == attributes.size() && modified == attributes.lastModifiedTime().toMillis();
+		}
+	}
+
+	/**
+	 * A thumbnail being read or generated and the number of callers waiting for
+	 * it
+	 *
+	 */
+	private static final class Pending {
+		private final CompletableFuture<Image> future;
+		private int waiters;
+
+		private Pending(CompletableFuture<Image> future) {
+			this.future = future;
+		}
+	}
+
+	private final Path dir;
+	private final long memoryBytes;
+	private final LinkedHashMap<Key, Entry> memory;
+	private final Map<Key, Pending> pending;
+	private long usedBytes;
+	private ForkJoinPool pool;
+
+	/**
+	 * Create a ThumbnailCache stored in the directory at the given path, keeping
+	 * up to DEFAULT_MEMORY_BYTES of thumbnails in memory
+	 *
+	 * @param dir
+	 *            the path to the directory
+	 */
+	public ThumbnailCache(Path dir) {
+		this(dir, DEFAULT_MEMORY_BYTES);
+	}
+
+	/**
+	 * Create a ThumbnailCache stored in the directory at the given path, keeping
+	 * up to the given number of bytes of thumbnails in memory. Nothing is read or
+	 * written until a thumbnail is first asked for
+	 *
+	 * @param dir
+	 *            the path to the directory
+	 * @param memoryBytes
+	 *            the given number of bytes
+	 */
+	public ThumbnailCache(Path dir, long memoryBytes) {
+		if (memoryBytes < 0)
+			throw new IllegalArgumentException(Long.toString(memoryBytes));
+		this.dir = dir;
+		this.memoryBytes = memoryBytes;
+		this.memory = new LinkedHashMap<>(16, 0.75f, true);
+		this.pending = new HashMap<>();
+	}
+
+	/**
+	 * Return a thumbnail of the given image that fits in a square of the given
+	 * size, reading it from memory or disk if it is there and generating it
+	 * otherwise
+	 *
+	 * @param image
+	 *            the given image
+	 * @param size
+	 *            the given size in pixels
+	 * @return a thumbnail of the given image
+	 * @throws IOException
+	 *             on any problems reading or decoding the image
+	 */
+	public Image getThumbnail(ImageModel image, int size) throws IOException {
+		if (size < 1)
+			throw new IllegalArgumentException(Integer.toString(size));
+		Accesor accesor = ModelManager.instance.getAccesor();
+		Path path = image.getPath();
+		BasicFileAttributes attributes = accesor.readAttributes(path);
+		Key key = new Key(path, size);
+		synchronized (this) {
+			Entry entry = memory.get(key);
+			if (entry != null) {
+				if (entry.matches(attributes))
+					return entry.image;
+				forget(key);
+			}
+		}
+
+		Path file = dir.resolve(digest(accesor, path, attributes, size) + SUFFIX);
+		Image thumbnail = accesor.exists(file) ? read(accesor, file) : null;
+		if (thumbnail == null) {
+			thumbnail = generate(accesor, path, size);
+			write(accesor, file, thumbnail);
+		}
+		remember(key, new Entry(thumbnail, attributes));
+		return thumbnail;
+	}
+
+	/**
+	 * Return a future thumbnail of the given image that fits in a square of the
+	 * given size. It is read or generated on this cache's threads, and only once
+	 * while it is asked for more than once. Cancelling the returned future stops
+	 * the thumbnail from being read or generated if it has not started and
+	 * nobody else is still waiting for it
+	 *
+	 * @param image
+	 *            the given image
+	 * @param size
+	 *            the given size in pixels
+	 * @return the future thumbnail, which completes with an UncheckedIOException
+	 *         on any problems reading or decoding the image
+	 */
+	public synchronized CompletableFuture<Image> getThumbnailAsync(ImageModel image, int size) {
+		Key key = new Key(image.getPath(), size);
+		Pending shared = pending.get(key);
+		if (shared == null) {
+			if (pool == null) {
+				pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+			}
+			shared = new Pending(CompletableFuture.supplyAsync(() -> {
+				try {
+					return getThumbnail(image, size);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}, pool));
+			pending.put(key, shared);
+			Pending started = shared;
+			shared.future.whenComplete((thumbnail, e) -> {
+				synchronized (this) {
+					pending.remove(key, started);
+				}
+			});
+		}
+		shared.waiters++;
+
+		CompletableFuture<Image> future = new CompletableFuture<>();
+		Pending waited = shared;
+		shared.future.whenComplete((thumbnail, e) -> {
+			if (e == null) {
+				future.complete(thumbnail);
+			} else {
+				future.completeExceptionally(e);
+			}
+		});
+		future.whenComplete((thumbnail, e) -> {
+			if (future.isCancelled()) {
+				release(key, waited);
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * Stop waiting for the given thumbnail, cancelling it if nobody else is
+	 * waiting for it
+	 *
+	 * @param key
+	 *            what the thumbnail was asked for with
+	 * @param shared
+	 *            the thumbnail waited for
+	 */
+	private synchronized void release(Key key, Pending shared) {
+		if (--shared.waiters == 0 && pending.remove(key, shared)) {
+			shared.future.cancel(false);
+		}
+	}
+
+	/**
+	 * Drop every thumbnail kept in memory. Thumbnails on disk are kept
+	 *
+	 */
+	public synchronized void clearMemory() {
+		memory.clear();
+		usedBytes = 0;
+	}
+
+	/**
+	 * Stop the threads thumbnails are generated on. Thumbnails still asked for
+	 * start them again
+	 *
+	 */
+	@Override
+	public synchronized void close() {
+		if (pool != null) {
+			pool.shutdown();
+			pool = null;
+		}
+	}
+
+	/**
+	 * Keep the given thumbnail in memory, dropping the least recently used ones
+	 * until they fit
+	 *
+	 * @param key
+	 *            what the thumbnail was asked for with
+	 * @param entry
+	 *            the thumbnail
+	 */
+	private synchronized void remember(Key key, Entry entry) {
+		forget(key);
+		if (entry.bytes > memoryBytes)
+			return;
+		memory.put(key, entry);
+		usedBytes += entry.bytes;
+		Iterator<Entry> eldest = memory.values().iterator();
+		while (usedBytes > memoryBytes) {
+			usedBytes -= eldest.next().bytes;
+			eldest.remove();
+		}
+	}
+
+	/**
+	 * Drop the thumbnail kept in memory for the given key, if any
+	 *
+	 * @param key
+	 *            the given key
+	 */
+	private synchronized void forget(Key key) {
+		Entry old = memory.remove(key);
+		if (old != null) {
+			usedBytes -= old.bytes;
+		}
+	}
+
+	/**
+	 * Return the name of the thumbnail of the file at the given path on disk
+	 *
+	 * @param accesor
+	 *            the accesor to read the file with
+	 * @param path
+	 *            the given path
+	 * @param attributes
+	 *            the attributes of the file
+	 * @param size
+	 *            the size of the thumbnail
+	 * @return a digest of the file and size, in hexadecimal
+	 * @throws IOException
+	 *             on any problems reading the file
+	 */
+	private static String digest(Accesor accesor, Path path, BasicFileAttributes attributes, int size)
+			throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		digest.update(ByteBuffer.allocate(20).putLong(attributes.size())
+				.putLong(attributes.lastModifiedTime().toMillis()).putInt(size).array());
+		byte[] head = new byte[HEAD_SIZE];
+		try (InputStream in = accesor.newInputStream(path)) {
+			int read = 0;
+			int count;
+			while (read < head.length && (count = in.read(head, read, head.length - read)) > 0) {
+				read += count;
+			}
+			digest.update(head, 0, read);
+		}
+
+		StringBuilder name = new StringBuilder();
+		for (byte b : digest.digest()) {
+			name.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return name.toString();
+	}
+
+	/**
+	 * Decode the image at the given path to fit in a square of the given size
+	 *
+	 * @param accesor
+	 *            the accesor to read the image with
+	 * @param path
+	 *            the given path
+	 * @param size
+	 *            the given size in pixels
+	 * @return the decoded thumbnail
+	 * @throws IOException
+	 *             on any problems reading or decoding the image
+	 */
+	private static Image generate(Accesor accesor, Path path, int size) throws IOException {
+		LOGGER.log(Level.FINE, "Generate thumbnail of {0}", path);
+		Image thumbnail;
+		try (InputStream in = accesor.newInputStream(path)) {
+			thumbnail = new Image(in, size, size, true, true);
+		}
+		if (thumbnail.isError())
+			throw new IOException("Could not decode " + path, thumbnail.getException());
+		return thumbnail;
+	}
+
+	/**
+	 * Read the thumbnail saved at the given path on disk
+	 *
+	 * @param accesor
+	 *            the accesor to read the thumbnail with
+	 * @param file
+	 *            the given path
+	 * @return the thumbnail, or null if it is damaged
+	 */
+	private static Image read(Accesor accesor, Path file) {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(accesor.newInputStream(file)))) {
+			int width;
+			int height;
+			if (in.readInt() != MAGIC || (width = in.readInt()) < 1 || (height = in.readInt()) < 1
+					|| (long) width * height > Integer.MAX_VALUE / 4)
+				return null;
+			byte[] pixels = new byte[4 * width * height];
+			new DataInputStream(new InflaterInputStream(in)).readFully(pixels);
+			WritableImage thumbnail = new WritableImage(width, height);
+			thumbnail.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getByteBgraInstance(), pixels, 0,
+					4 * width);
+			return thumbnail;
+		} catch (IOException e) {
+			// It is generated and saved again
+			LOGGER.log(Level.WARNING, e.toString(), e);
+			return null;
+		}
+	}
+
+	/**
+	 * Save the given thumbnail at the given path on disk. A thumbnail that cannot
+	 * be saved is generated again the next time it is not in memory
+	 *
+	 * @param accesor
+	 *            the accesor to write the thumbnail with
+	 * @param file
+	 *            the given path
+	 * @param thumbnail
+	 *            the given thumbnail
+	 */
+	private void write(Accesor accesor, Path file, Image thumbnail) {
+		int width = (int) thumbnail.getWidth();
+		int height = (int) thumbnail.getHeight();
+		byte[] pixels = new byte[4 * width * height];
+		thumbnail.getPixelReader().getPixels(0, 0, width, height, PixelFormat.getByteBgraInstance(), pixels, 0,
+				4 * width);
+		try {
+			synchronized (this) {
+				if (dir.getParent() != null && !accesor.exists(dir.getParent())) {
+					accesor.createDirectory(dir.getParent());
+				}
+				if (!accesor.exists(dir)) {
+					accesor.createDirectory(dir);
+				}
+			}
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(accesor.newOutputStream(file)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(width);
+				out.writeInt(height);
+				DeflaterOutputStream compressed = new DeflaterOutputStream(out);
+				compressed.write(pixels);
+				compressed.finish();
+			}
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, e.toString(), e);
+		}
+	}
+}
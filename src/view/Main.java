@@ -1,7 +1,8 @@
 package view;
 
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
 
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
@@ -9,7 +10,7 @@ import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
 import model.FileAccesor;
-import model.ImageSnapShot;
+import model.InstrumentedAccesor;
 import model.ModelManager;
 
 /** A Main class to execute application. */
@@ -22,7 +23,17 @@ public class Main extends Application {
 	 */
 	public static void main(String[] args) {
 
-		ModelManager.instance.setAccesor(new FileAccesor());
+		// -Daccesor.statistics=<file> records every file system call and dumps the
+		// statistics to the file every minute
+		String statistics = System.getProperty("accesor.statistics");
+		if (statistics != null) {
+			InstrumentedAccesor accesor = new InstrumentedAccesor(new FileAccesor());
+			accesor.startDumping(Paths.get(statistics), 1, TimeUnit.MINUTES);
+			ModelManager.instance.setAccesor(accesor);
+		} else {
+			ModelManager.instance.setAccesor(new FileAccesor());
+		}
+		ModelManager.instance.setScanParallelism(Runtime.getRuntime().availableProcessors());
 
 		// try {
 		// 	ModelManager.instance.loadFromDisk();
@@ -30,25 +41,16 @@ public class Main extends Application {
 		// 	//e.printStackTrace();
 		// }
 
-		// Add a shutdownhook to save ModelManager's state and the log
+		// Add a shutdownhook to save ModelManager's state and close the log
 		Thread t0 = new Thread() {
 			@Override
 			public void run() {
 				try {
 					ModelManager.instance.saveToDisk();
-					PrintWriter out = new PrintWriter("log.txt");
-					StringBuilder logs = new StringBuilder();
-					boolean first = true;
-					for (ImageSnapShot snap : ImageSnapShot.getAllHistory()) {
-						if (first) {
-							first = false;
-						} else {
-							logs.append(System.lineSeparator());
-						}
-						logs.append(snap.toString());
+					ModelManager.instance.getJournal().close();
+					if (statistics != null) {
+						((InstrumentedAccesor) ModelManager.instance.getAccesor()).dump(Paths.get(statistics));
 					}
-					out.print(logs.toString());
-					out.close();
 				} catch (IOException e) {
 					//e.printStackTrace();
 				}
@@ -0,0 +1,62 @@
+package view.ViewController;
+
+import java.util.concurrent.Executor;
+
+import controller.Controller;
+import javafx.collections.ObservableListBase;
+import model.JournalListener;
+
+/**
+ * Every log ever logged, oldest first. Logs are read from the journal only when they are asked for, so a ListView
+ * showing the feed only reads the rows scrolled into view, and logs are added to the end as they are logged.
+ */
+public class HistoryFeed extends ObservableListBase<String> implements JournalListener {
+
+	/** The controller the logs are read through. */
+	private final Controller controller;
+
+	/** The executor logs are added on. */
+	private final Executor executor;
+
+	/** The number of logs added so far. */
+	private int size;
+
+	/**
+	 * Initialize a HistoryFeed adding logs on the given executor as they are logged.
+	 *
+	 * @param controller the controller the logs are read through
+	 * @param executor   the executor logs are added on, which must be the one the feed is read on
+	 */
+	public HistoryFeed(Controller controller, Executor executor) {
+		this.controller = controller;
+		this.executor = executor;
+		// Logs logged before the count is read are then ignored rather than missed
+		controller.registerLogListener(this);
+		this.size = controller.getLogCount();
+	}
+
+	@Override
+	public void appended(int index, String entry) {
+		executor.execute(() -> {
+			if (index >= size) {
+				beginChange();
+				nextAdd(size, index + 1);
+				size = index + 1;
+				endChange();
+			}
+		});
+	}
+
+	@Override
+	public String get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		return controller.getLog(index);
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+}
@@ -0,0 +1,314 @@
+package view.ViewController;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+import model.ImageModel;
+import model.ModelManager;
+
+/**
+ * Decodes images on a background pool sized to the cores and hands them to the JavaFX application thread. A
+ * thumbnail is handed over first, then the image decoded at the size it is shown at. Only the latest request is
+ * handed over: older ones, and their thumbnails, are cancelled if they have not started, and dropped if they have.
+ * Images that are likely to be shown next can be prefetched, and decoded images are kept up to a budget of bytes. An
+ * image that is being prefetched when it is loaded is handed over when the prefetch is done, with no thumbnail.
+ */
+public class ImageLoader {
+
+	/** The size of the thumbnail shown while an image is decoded. */
+	public static final int PLACEHOLDER_SIZE = 128;
+
+	/** The default number of bytes of decoded images kept. */
+	public static final long DEFAULT_BUDGET = 64L << 20;
+
+	private static final Logger LOGGER = Logger.getLogger(ImageLoader.class.getName());
+	static {
+		LOGGER.setLevel(Level.OFF);
+	}
+
+	/** A request to load an image. */
+	private static class Request {
+		private final ImageModel image;
+		private final double width;
+		private final double height;
+		private final Consumer<Image> consumer;
+		private ForkJoinTask<?> task;
+		private CompletableFuture<Image> placeholder;
+		private boolean decoded;
+
+		private Request(ImageModel image, double width, double height, Consumer<Image> consumer) {
+			this.image = image;
+			this.width = width;
+			this.height = height;
+			this.consumer = consumer;
+		}
+
+		/**
+		 * Hand the given decoded image over, dropping the thumbnail if it has not been read or generated yet.
+		 *
+		 * @param full the given decoded image
+		 */
+		private void handOver(Image full) {
+			decoded = true;
+			if (placeholder != null) {
+				placeholder.cancel(false);
+			}
+			consumer.accept(full);
+		}
+	}
+
+	/** The pool images are decoded on. */
+	private final ForkJoinPool pool;
+
+	/** The number of bytes of decoded images kept. */
+	private final long budget;
+
+	// The rest is only touched on the JavaFX application thread
+
+	/** The latest request. */
+	private Request current;
+
+	/** The decoded images kept, least recently used first. */
+	private final LinkedHashMap<ImageModel, Image> decoded;
+
+	/** The number of bytes of the decoded images kept. */
+	private long decodedBytes;
+
+	/** The size the decoded images kept fit in. */
+	private double width;
+	private double height;
+
+	/** The prefetches that have not finished. */
+	private final Map<ImageModel, ForkJoinTask<?>> prefetches;
+
+	/**
+	 * Initialize an ImageLoader with a pool of as many threads as there are cores, keeping up to DEFAULT_BUDGET bytes
+	 * of decoded images.
+	 */
+	public ImageLoader() {
+		this(DEFAULT_BUDGET);
+	}
+
+	/**
+	 * Initialize an ImageLoader with a pool of as many threads as there are cores, keeping up to the given number of
+	 * bytes of decoded images.
+	 *
+	 * @param budget the given number of bytes
+	 */
+	public ImageLoader(long budget) {
+		pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		this.budget = budget;
+		decoded = new LinkedHashMap<>(16, 0.75f, true);
+		prefetches = new IdentityHashMap<>();
+	}
+
+	/**
+	 * Load the given image to fit in the given size, handing a thumbnail and then the image to the given consumer on
+	 * the JavaFX application thread. Nothing is handed over once another image is loaded or the load is cancelled. An
+	 * image already loaded at the same size is not loaded again. Must be called on the JavaFX application thread.
+	 *
+	 * @param image    the given image, or null to hand over no image
+	 * @param width    the width to fit the image in
+	 * @param height   the height to fit the image in
+	 * @param consumer the consumer of the thumbnail and the image
+	 */
+	public void load(ImageModel image, double width, double height, Consumer<Image> consumer) {
+		if (current != null && current.image == image && current.width == width && current.height == height) {
+			return;
+		}
+		cancel();
+		if (image == null) {
+			consumer.accept(null);
+			return;
+		}
+		resize(width, height);
+
+		Request request = new Request(image, width, height, consumer);
+		current = request;
+		Image kept = decoded.get(image);
+		if (kept != null) {
+			request.handOver(kept);
+			return;
+		}
+		// Prefetches are decoded at the current size, so one in flight is taken over rather than decoded again
+		request.task = prefetches.remove(image);
+		if (request.task != null) {
+			return;
+		}
+
+		request.placeholder = ModelManager.instance.getThumbnails().getThumbnailAsync(image, PLACEHOLDER_SIZE);
+		request.placeholder.thenAccept(thumbnail -> Platform.runLater(() -> {
+			if (current == request && !request.decoded) {
+				consumer.accept(thumbnail);
+			}
+		}));
+		request.task = pool.submit(() -> {
+			Image full = decode(image, width, height);
+			if (full != null) {
+				Platform.runLater(() -> {
+					keep(image, full, width, height);
+					if (current == request) {
+						request.handOver(full);
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Cancel the latest request. Must be called on the JavaFX application thread.
+	 */
+	public void cancel() {
+		if (current != null) {
+			if (current.task != null) {
+				current.task.cancel(false);
+			}
+			if (current.placeholder != null) {
+				current.placeholder.cancel(false);
+			}
+			current = null;
+		}
+	}
+
+	/**
+	 * Decode the given images in the background, in order, at the size of the latest request, so they are shown at
+	 * once when they are loaded. Only as many as fit in half the budget are decoded. Prefetches of images not in the
+	 * given list are cancelled if they have not started. Must be called on the JavaFX application thread.
+	 *
+	 * @param images the given images, the most likely to be shown next first
+	 */
+	public void prefetch(List<ImageModel> images) {
+		double width = this.width;
+		double height = this.height;
+		List<ImageModel> wanted = new ArrayList<>();
+		if (width > 0 && height > 0) {
+			long limit = (long) (budget / 2 / (4 * width * height));
+			for (ImageModel image : images) {
+				if (wanted.size() >= limit)
+					break;
+				if (image != null && !decoded.containsKey(image) && (current == null || current.image != image)) {
+					wanted.add(image);
+				}
+			}
+		}
+
+		Iterator<Map.Entry<ImageModel, ForkJoinTask<?>>> pending = prefetches.entrySet().iterator();
+		while (pending.hasNext()) {
+			Map.Entry<ImageModel, ForkJoinTask<?>> prefetch = pending.next();
+			if (!wanted.contains(prefetch.getKey())) {
+				prefetch.getValue().cancel(false);
+				pending.remove();
+			}
+		}
+
+		for (ImageModel image : wanted) {
+			if (!prefetches.containsKey(image)) {
+				ForkJoinTask<?>[] task = new ForkJoinTask<?>[1];
+				task[0] = ForkJoinTask.adapt(() -> {
+					Image full = decode(image, width, height);
+					Platform.runLater(() -> {
+						prefetches.remove(image, task[0]);
+						if (full != null) {
+							keep(image, full, width, height);
+							if (current != null && current.task == task[0] && !current.decoded) {
+								current.handOver(full);
+							}
+						}
+					});
+				});
+				prefetches.put(image, task[0]);
+				pool.execute(task[0]);
+			}
+		}
+	}
+
+	/**
+	 * Cancel every prefetch that has not started. Must be called on the JavaFX application thread.
+	 */
+	public void cancelPrefetches() {
+		prefetches.values().forEach(task -> task.cancel(false));
+		prefetches.clear();
+	}
+
+	/**
+	 * Drop the decoded images kept and cancel the prefetches if they do not fit in the given size.
+	 *
+	 * @param width  the width decoded images must fit in
+	 * @param height the height decoded images must fit in
+	 */
+	private void resize(double width, double height) {
+		if (width != this.width || height != this.height) {
+			cancelPrefetches();
+			decoded.clear();
+			decodedBytes = 0;
+			this.width = width;
+			this.height = height;
+		}
+	}
+
+	/**
+	 * Keep the given decoded image if it fits in the current size, dropping the least recently used ones until the
+	 * decoded images fit in the budget.
+	 *
+	 * @param image  the image that was decoded
+	 * @param full   the decoded image
+	 * @param width  the width it was decoded to fit in
+	 * @param height the height it was decoded to fit in
+	 */
+	private void keep(ImageModel image, Image full, double width, double height) {
+		if (width != this.width || height != this.height || decoded.containsKey(image))
+			return;
+		decoded.put(image, full);
+		decodedBytes += bytes(full);
+		Iterator<Image> eldest = decoded.values().iterator();
+		while (decodedBytes > budget) {
+			decodedBytes -= bytes(eldest.next());
+			eldest.remove();
+		}
+	}
+
+	/**
+	 * Return the number of bytes the pixels of the given image take.
+	 *
+	 * @param image the given image
+	 * @return the number of bytes the pixels of the given image take
+	 */
+	private static long bytes(Image image) {
+		return 4L * (long) image.getWidth() * (long) image.getHeight();
+	}
+
+	/**
+	 * Decode the given image to fit in the given size.
+	 *
+	 * @param image  the given image
+	 * @param width  the width to fit the image in
+	 * @param height the height to fit the image in
+	 * @return the decoded image, or null if it could not be decoded
+	 */
+	static Image decode(ImageModel image, double width, double height) {
+		try (InputStream in = ModelManager.instance.getAccesor().newInputStream(image.getPath())) {
+			Image decoded = new Image(in, width, height, true, true);
+			if (!decoded.isError()) {
+				return decoded;
+			}
+			LOGGER.log(Level.WARNING, "Could not decode " + image, decoded.getException());
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, e.toString(), e);
+		}
+		return null;
+	}
+}
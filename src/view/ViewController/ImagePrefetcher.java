@@ -0,0 +1,113 @@
+package view.ViewController;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import controller.Listener;
+import controller.Observable;
+import controller.Reference;
+import model.DirectoryModel;
+import model.ImageModel;
+
+/**
+ * Watches the referenced image and prefetches its neighbours in the list of images being browsed, mostly in the
+ * direction the user is stepping in, so that stepping through the list shows each image at once.
+ */
+public class ImagePrefetcher implements Listener<Reference> {
+
+	/** The number of images prefetched in the direction the user is stepping in. */
+	public static final int AHEAD = 4;
+
+	/** The number of images prefetched in the other direction. */
+	public static final int BEHIND = 1;
+
+	/** The loader images are prefetched with. */
+	private final ImageLoader loader;
+
+	/** The images being browsed, in order. */
+	private final Supplier<List<ImageModel>> images;
+
+	/** The directory of the last reference. */
+	private DirectoryModel directory;
+
+	/** The index of the last referenced image, or -1. */
+	private int index;
+
+	/** 1 if the user last stepped forward through the images, -1 if backward. */
+	private int direction;
+
+	/**
+	 * Initialize an ImagePrefetcher.
+	 *
+	 * @param loader the loader images are prefetched with
+	 * @param images the images being browsed, in order
+	 */
+	public ImagePrefetcher(ImageLoader loader, Supplier<List<ImageModel>> images) {
+		this.loader = loader;
+		this.images = images;
+		this.index = -1;
+		this.direction = 1;
+	}
+
+	/**
+	 * Prefetch the neighbours of the referenced image. Work for another directory or direction is cancelled.
+	 *
+	 * @param reference is being observed
+	 */
+	@Override
+	public void notify(Observable<Reference> reference) {
+		Reference value = reference.getValue();
+		ImageModel image = value == null ? null : value.getImage();
+		DirectoryModel newDirectory = value == null ? null : value.getDirectory();
+		if (newDirectory != directory) {
+			loader.cancelPrefetches();
+			directory = newDirectory;
+			index = -1;
+		}
+
+		List<ImageModel> list = images.get();
+		int newIndex = image == null ? -1 : indexOf(list, image);
+		if (newIndex < 0) {
+			index = -1;
+			return;
+		}
+		if (index >= 0 && newIndex != index) {
+			direction = newIndex > index ? 1 : -1;
+		}
+		index = newIndex;
+
+		// The nearest images ahead come first, then the ones behind
+		List<ImageModel> neighbours = new ArrayList<>(AHEAD + BEHIND);
+		for (int step = 1; step <= AHEAD; step++) {
+			int i = index + step * direction;
+			if (i >= 0 && i < list.size()) {
+				neighbours.add(list.get(i));
+			}
+		}
+		for (int step = 1; step <= BEHIND; step++) {
+			int i = index - step * direction;
+			if (i >= 0 && i < list.size()) {
+				neighbours.add(list.get(i));
+			}
+		}
+		loader.prefetch(neighbours);
+	}
+
+	/**
+	 * Return the index of the given image in the given list, looking near the last index first, then asking the list.
+	 *
+	 * @param list  the given list
+	 * @param image the given image
+	 * @return the index of the given image, or -1 if it is not in the list
+	 */
+	private int indexOf(List<ImageModel> list, ImageModel image) {
+		for (int i = Math.max(0, index - AHEAD); i < Math.min(list.size(), index + AHEAD + 1); i++) {
+			if (list.get(i) == image) {
+				return i;
+			}
+		}
+		int i = list.indexOf(image);
+		return i >= 0 && list.get(i) == image ? i : -1;
+	}
+}
@@ -16,7 +16,6 @@ import javafx.scene.control.Label;
 import javafx.scene.control.ListView;
 import javafx.scene.control.TextField;
 import javafx.scene.control.cell.CheckBoxListCell;
-import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.stage.DirectoryChooser;
 import model.ImageModel;
@@ -89,6 +88,11 @@ public class ImageTabController extends TabController implements Listener<Refere
 	 */
 	private DirectoryChooser directoryChooser;
 
+	/**
+	 * Loads the reference image in the background.
+	 */
+	private ImageLoader imageLoader;
+
 	/**
 	 * Initialize an ImageTabController.
 	 */
@@ -151,6 +155,18 @@ public class ImageTabController extends TabController implements Listener<Refere
 		}
 	}
 
+	/**
+	 * Initializes this ImageTabController with the given loader to load the reference image with, so that images
+	 * prefetched by other tabs are shown at once.
+	 *
+	 * @param controller  the controller to be used in this TabController
+	 * @param imageLoader the loader to load the reference image with
+	 */
+	public void init(Controller controller, ImageLoader imageLoader) {
+		this.imageLoader = imageLoader;
+		init(controller);
+	}
+
 	/**
 	 * Initializes the controller to be used in this TabController and registers this ImageTabController to be a
 	 * listener for the reference.
@@ -159,6 +175,9 @@ public class ImageTabController extends TabController implements Listener<Refere
 	 */
 	@Override
 	public void init(Controller controller) {
+		if (imageLoader == null) {
+			imageLoader = new ImageLoader();
+		}
 		super.init(controller);
 		this.controller.registerReferenceListener(this);
 		labelAbsolutePath.setWrapText(true);
@@ -176,13 +195,8 @@ public class ImageTabController extends TabController implements Listener<Refere
 		String name = model == null ? "" : model.toString();
 		lblName.setText("Name: " + name);
 
-		Image image = null;
-		try {
-			image = model == null ? null : model.toJavaFXImage();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-		currImage.setImage(image);
+		// Decoded in the background so the UI does not freeze while it is
+		imageLoader.load(model, currImage.getFitWidth(), currImage.getFitHeight(), currImage::setImage);
 		if (reference != null && reference.getImage() != null) {
 			labelAbsolutePath.setText(controller.getAbsolutePath());
 		}
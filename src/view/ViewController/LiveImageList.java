@@ -0,0 +1,356 @@
+package view.ViewController;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import controller.Controller;
+import javafx.collections.ObservableListBase;
+import model.DirectoryModel;
+import model.ImageListener;
+import model.ImageModel;
+
+/**
+ * The images under a directory, optionally only those with a given tag, sorted by path. The list is patched as images
+ * are added to, removed from, renamed or moved in the model instead of being rebuilt, so a change to one image costs
+ * O(log n) and a ListView showing the list only redraws the rows that changed. Must be disposed of once it is no
+ * longer shown.
+ */
+public class LiveImageList extends ObservableListBase<ImageModel> implements ImageListener {
+
+	/** A node of the balanced tree the images are kept in, which knows the size of its subtree. */
+	private static final class Node {
+		private final Path key;
+		private ImageModel image;
+		private Node left;
+		private Node right;
+		private int size;
+		private int height;
+
+		private Node(Path key, ImageModel image) {
+			this.key = key;
+			this.image = image;
+			this.size = 1;
+			this.height = 1;
+		}
+	}
+
+	/** The controller the list listens to. */
+	private final Controller controller;
+
+	/** The directory the images are under. */
+	private final DirectoryModel directory;
+
+	/** The tag the images have, or null to list every image. */
+	private final String tag;
+
+	/** The executor the list is patched on. */
+	private final Executor executor;
+
+	/** The root of the tree, keyed by the path each image had when it was added. */
+	private Node root;
+
+	/** The index of the last image inserted or deleted, or -1 if there was none. */
+	private int changedIndex;
+
+	/** The image replaced by the last insertion, or null if there was none. */
+	private ImageModel replaced;
+
+	/**
+	 * Initialize a LiveImageList of the images under the given directory, patched on the given executor as the
+	 * model changes. Only the images with the given tag are listed, unless it is null.
+	 *
+	 * @param controller the controller the list listens to
+	 * @param directory  the given directory
+	 * @param tag        the given tag, or null to list every image
+	 * @param executor   the executor the list is patched on, which must be the one it is read on
+	 */
+	public LiveImageList(Controller controller, DirectoryModel directory, String tag, Executor executor) {
+		this.controller = controller;
+		this.directory = directory;
+		this.tag = tag;
+		this.executor = executor;
+		if (tag == null) {
+			directory.streamImagesRecursive().forEach(image -> root = insert(root, image.getPath(), image, 0));
+		} else {
+			for (ImageModel image : controller.getImagesWithTag(tag, directory)) {
+				root = insert(root, image.getPath(), image, 0);
+			}
+		}
+		controller.registerImageListener(this);
+	}
+
+	/**
+	 * Stop patching this list.
+	 */
+	public void dispose() {
+		controller.unregisterImageListener(this);
+	}
+
+	@Override
+	public void imageAdded(ImageModel image, Path path) {
+		// Whether the image belongs here is decided now, since it may change before the executor runs
+		if (path.startsWith(directory.getPath()) && (tag == null || image.hasTag(tag))) {
+			executor.execute(() -> add(path, image));
+		}
+	}
+
+	@Override
+	public void imageRemoved(ImageModel image, Path path) {
+		executor.execute(() -> remove(path, image));
+	}
+
+	@Override
+	public void cleared() {
+		executor.execute(this::removeAll);
+	}
+
+	@Override
+	public ImageModel get(int index) {
+		if (index < 0 || index >= size()) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+		}
+		Node node = root;
+		while (true) {
+			int leftSize = size(node.left);
+			if (index < leftSize) {
+				node = node.left;
+			} else if (index > leftSize) {
+				index -= leftSize + 1;
+				node = node.right;
+			} else {
+				return node.image;
+			}
+		}
+	}
+
+	@Override
+	public int size() {
+		return size(root);
+	}
+
+	/**
+	 * Return the index of the given image, found by its path in O(log n) unless it moved since it was added.
+	 *
+	 * @param other the given image
+	 * @return the index of the given image, or -1 if it is not listed
+	 */
+	@Override
+	public int indexOf(Object other) {
+		if (!(other instanceof ImageModel)) {
+			return -1;
+		}
+		Path key = ((ImageModel) other).getPath();
+		Node node = root;
+		int offset = 0;
+		while (node != null) {
+			int comparison = key.compareTo(node.key);
+			if (comparison < 0) {
+				node = node.left;
+			} else if (comparison > 0) {
+				offset += size(node.left) + 1;
+				node = node.right;
+			} else if (node.image.equals(other)) {
+				return offset + size(node.left);
+			} else {
+				break;
+			}
+		}
+		return super.indexOf(other);
+	}
+
+	@Override
+	public boolean contains(Object other) {
+		return indexOf(other) >= 0;
+	}
+
+	/**
+	 * Add the given image at the given path, replacing any other image listed at that path.
+	 *
+	 * @param path  the given path
+	 * @param image the given image
+	 */
+	private void add(Path path, ImageModel image) {
+		changedIndex = -1;
+		replaced = null;
+		root = insert(root, path, image, 0);
+		if (replaced != image) {
+			beginChange();
+			if (replaced == null) {
+				nextAdd(changedIndex, changedIndex + 1);
+			} else {
+				nextSet(changedIndex, replaced);
+			}
+			endChange();
+		}
+		replaced = null;
+	}
+
+	/**
+	 * Remove the given image if it is listed at the given path.
+	 *
+	 * @param path  the given path
+	 * @param image the given image
+	 */
+	private void remove(Path path, ImageModel image) {
+		changedIndex = -1;
+		root = delete(root, path, image, 0);
+		if (changedIndex >= 0) {
+			beginChange();
+			nextRemove(changedIndex, image);
+			endChange();
+		}
+	}
+
+	/**
+	 * Remove every image.
+	 */
+	private void removeAll() {
+		if (root != null) {
+			List<ImageModel> removed = new ArrayList<>(this);
+			root = null;
+			beginChange();
+			nextRemove(0, removed);
+			endChange();
+		}
+	}
+
+	/**
+	 * Insert the given image at the given key into the given subtree, setting changedIndex to its index and replaced
+	 * to the image it replaced.
+	 *
+	 * @param node   the root of the given subtree, or null
+	 * @param key    the given key
+	 * @param image  the given image
+	 * @param offset the index of the first image of the subtree
+	 * @return the new root of the subtree
+	 */
+	private Node insert(Node node, Path key, ImageModel image, int offset) {
+		if (node == null) {
+			changedIndex = offset;
+			return new Node(key, image);
+		}
+		int comparison = key.compareTo(node.key);
+		if (comparison < 0) {
+			node.left = insert(node.left, key, image, offset);
+		} else if (comparison > 0) {
+			node.right = insert(node.right, key, image, offset + size(node.left) + 1);
+		} else {
+			changedIndex = offset + size(node.left);
+			replaced = node.image;
+			node.image = image;
+			return node;
+		}
+		return balance(node);
+	}
+
+	/**
+	 * Delete the given image at the given key from the given subtree, setting changedIndex to its index.
+	 *
+	 * @param node   the root of the given subtree, or null
+	 * @param key    the given key
+	 * @param image  the given image
+	 * @param offset the index of the first image of the subtree
+	 * @return the new root of the subtree
+	 */
+	private Node delete(Node node, Path key, ImageModel image, int offset) {
+		if (node == null) {
+			return null;
+		}
+		int comparison = key.compareTo(node.key);
+		if (comparison < 0) {
+			node.left = delete(node.left, key, image, offset);
+		} else if (comparison > 0) {
+			node.right = delete(node.right, key, image, offset + size(node.left) + 1);
+		} else {
+			if (node.image != image) {
+				return node;
+			}
+			changedIndex = offset + size(node.left);
+			if (node.left == null) {
+				return node.right;
+			}
+			if (node.right == null) {
+				return node.left;
+			}
+			Node successor = node.right;
+			while (successor.left != null) {
+				successor = successor.left;
+			}
+			successor.right = deleteFirst(node.right);
+			successor.left = node.left;
+			node = successor;
+		}
+		return balance(node);
+	}
+
+	/**
+	 * Delete the first node of the given subtree.
+	 *
+	 * @param node the root of the given subtree
+	 * @return the new root of the subtree
+	 */
+	private static Node deleteFirst(Node node) {
+		if (node.left == null) {
+			return node.right;
+		}
+		node.left = deleteFirst(node.left);
+		return balance(node);
+	}
+
+	/**
+	 * Restore the balance of the given subtree, whose children are balanced and differ in height by at most 2.
+	 *
+	 * @param node the root of the given subtree
+	 * @return the new root of the subtree
+	 */
+	private static Node balance(Node node) {
+		update(node);
+		int balance = height(node.left) - height(node.right);
+		if (balance > 1) {
+			if (height(node.left.left) < height(node.left.right)) {
+				node.left = rotateLeft(node.left);
+			}
+			return rotateRight(node);
+		}
+		if (balance < -1) {
+			if (height(node.right.right) < height(node.right.left)) {
+				node.right = rotateRight(node.right);
+			}
+			return rotateLeft(node);
+		}
+		return node;
+	}
+
+	private static Node rotateLeft(Node node) {
+		Node right = node.right;
+		node.right = right.left;
+		right.left = node;
+		update(node);
+		update(right);
+		return right;
+	}
+
+	private static Node rotateRight(Node node) {
+		Node left = node.left;
+		node.left = left.right;
+		left.right = node;
+		update(node);
+		update(left);
+		return left;
+	}
+
+	private static void update(Node node) {
+		node.size = size(node.left) + size(node.right) + 1;
+		node.height = Math.max(height(node.left), height(node.right)) + 1;
+	}
+
+	private static int size(Node node) {
+		return node == null ? 0 : node.size;
+	}
+
+	private static int height(Node node) {
+		return node == null ? 0 : node.height;
+	}
+}
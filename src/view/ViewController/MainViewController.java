@@ -1,6 +1,7 @@
 package view.ViewController;
 
 import controller.Controller;
+import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.scene.control.TabPane;
 
@@ -27,6 +28,9 @@ public class MainViewController {
 	@FXML
 	private HistoryTabController HistoryTabViewController;
 
+	/** Loads images in the background for every tab.*/
+	private final ImageLoader imageLoader = new ImageLoader();
+
 	/**
 	 * Set up Main View.
 	 */
@@ -37,9 +41,13 @@ public class MainViewController {
 		Controller controller = new Controller();
 
 		SelectionTabViewController.init(controller, this);
-		ImageTabViewController.init(controller);
+		ImageTabViewController.init(controller, imageLoader);
 		ImageHistoryTabViewController.init(controller);
 		HistoryTabViewController.init(controller);
+		// Registered after the tabs so that it sees the images they list and show for the new reference
+		controller.registerReferenceListener(
+				new ImagePrefetcher(imageLoader, SelectionTabViewController::getImageReferences));
+		controller.startWatching(Platform::runLater);
 	}
 
 	/**
@@ -16,17 +16,28 @@ import model.ImageModel;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 
 /** Tab2 to list images under given directory in GUI */
 public class SelectionTabController extends TabController implements Listener<Reference> {
 
+	/** The entry of the filter tags that selects every image. */
+	private static final String NO_TAG = "No tag selected";
+
 	/** List of the images to be displayed. */
 	private List<ImageModel> imageReferences;
 
+	/** The directory the images are listed under, or null. */
+	private DirectoryModel directory;
+
+	/** The tag the images listed are filtered with, or null. */
+	private String shownTag;
+
+	/** True while the filter tags are replaced, so the images are not listed again meanwhile. */
+	private boolean updatingFilters;
+
 	/** The Main Controller that manages the tab controllers. */
 	private MainViewController mainController;
 
@@ -43,7 +54,7 @@ public class SelectionTabController extends TabController implements Listener<Re
 
 	/** ListView with the names of all the images under the selected directory. */
 	@FXML
-	ListView<String> listViewImages;
+	ListView<ImageModel> listViewImages;
 
 	/** Button that allows the user to select a directory. */
 	@FXML
@@ -56,7 +67,7 @@ public class SelectionTabController extends TabController implements Listener<Re
 		super();
 		directoryChooser = new DirectoryChooser();
 		directoryChooser.setInitialDirectory(Paths.get(".").toFile());
-		imageReferences = new LinkedList<>();
+		imageReferences = Collections.emptyList();
 	}
 
 	/**
@@ -79,6 +90,21 @@ public class SelectionTabController extends TabController implements Listener<Re
 		super.init(controller);
 		this.controller.registerReferenceListener(this);
 		this.mainController = mainController;
+
+		// update the listView depending on if an item is selected from the choice box
+		choiceBoxFilterTag.setOnAction(event -> {
+			if (!updatingFilters && directory != null && !Objects.equals(filterTag(), shownTag)) {
+				showImages();
+			}
+		});
+	}
+
+	/**
+	 * Returns the images listed, in order.
+	 * @return the images listed
+	 */
+	List<ImageModel> getImageReferences() {
+		return imageReferences;
 	}
 
 	/**
@@ -87,7 +113,7 @@ public class SelectionTabController extends TabController implements Listener<Re
 	@FXML
 	private void listViewImagesClicked() {
 		if (!listViewImages.getSelectionModel().isEmpty()) {
-			ImageModel image = imageReferences.get(listViewImages.getSelectionModel().getSelectedIndex());
+			ImageModel image = listViewImages.getSelectionModel().getSelectedItem();
 			controller.setImageReference(image);
 			mainController.nextTab();
 		}
@@ -95,62 +121,59 @@ public class SelectionTabController extends TabController implements Listener<Re
 	}
 
 	/**
-	 * Updates the SelectionTab when there is a change. It produced the list of the images under the selected directory
-	 * and also populates the tags being used in the directory to use them as filters.
+	 * Updates the SelectionTab when there is a change. The list of the images under the selected directory is only
+	 * made again when another directory is selected, since it patches itself as images change, and the tags being used
+	 * are offered as filters.
 	 * @param reference
 	 */
 	@Override
 	public void notify(Observable<Reference> reference) {
 		DirectoryModel directory = reference.getValue().getDirectory();
 		if (directory != null) {
-			directoryChooser.setInitialDirectory(directory.getPath().toFile());
-
-			List<String> imageNames = new ArrayList<>();
-			imageReferences = new LinkedList<>();
-			for (ImageModel img : directory.getImagesRecursive()) {
-				imageNames.add(img.toString());
-				imageReferences.add(img);
-			}
-
-			listViewImages.setItems(FXCollections.observableList(imageNames));
-			lblCurrDir.setText("Images under directory: " + directory.toString());
-
 			// populate the choice box with all the tags in all the images in the active
-			// directory
+			// directory, keeping the selected one
 			List<String> allCurrentTags = controller.getAllCurrentTags();
-			allCurrentTags.add(0, "No tag selected");
-
-			choiceBoxFilterTag.setItems(FXCollections.observableList(allCurrentTags));
-			choiceBoxFilterTag.getSelectionModel().selectFirst();
-
-			// update the listView depending on if an item is selected from the choice box
-			choiceBoxFilterTag.setOnAction(event -> {
-				String filterTag = null;
-				List<String> filteredNames = new ArrayList<>();
-				imageReferences = new LinkedList<>();
-
-				// if an item is selected then set imageReferences to be only those images that
-				// contain the tag selected
-				if (!choiceBoxFilterTag.getSelectionModel().isEmpty()) {
-					filterTag = choiceBoxFilterTag.getSelectionModel().getSelectedItem();
+			allCurrentTags.add(0, NO_TAG);
+			if (!allCurrentTags.equals(choiceBoxFilterTag.getItems())) {
+				String filterTag = choiceBoxFilterTag.getValue();
+				updatingFilters = true;
+				choiceBoxFilterTag.setItems(FXCollections.observableList(allCurrentTags));
+				if (filterTag != null && allCurrentTags.contains(filterTag)) {
+					choiceBoxFilterTag.setValue(filterTag);
+				} else {
+					choiceBoxFilterTag.getSelectionModel().selectFirst();
 				}
+				updatingFilters = false;
+			}
 
-				if (Objects.equals(filterTag, "No tag selected")) {
-					for (ImageModel image : directory.getImagesRecursive()) {
-						filteredNames.add(image.toString());
-						imageReferences.add(image);
-					}
-				} else if (filterTag != null && !filterTag.trim().isEmpty()) {
-					for (ImageModel image : directory.getImagesRecursive()) {
-						if (controller.getCurrentTags(image).contains(filterTag)) {
-							filteredNames.add(image.toString());
-							imageReferences.add(image);
-						}
-					}
-				}
-				listViewImages.setItems(FXCollections.observableList(filteredNames));
-			});
+			if (directory != this.directory || !Objects.equals(filterTag(), shownTag)) {
+				this.directory = directory;
+				directoryChooser.setInitialDirectory(directory.getPath().toFile());
+				lblCurrDir.setText("Images under directory: " + directory.toString());
+				showImages();
+			}
+		}
+	}
 
+	/**
+	 * Return the tag selected to filter the images with.
+	 * @return the selected tag, or null if none is selected
+	 */
+	private String filterTag() {
+		String filterTag = choiceBoxFilterTag.getValue();
+		return filterTag == null || filterTag.equals(NO_TAG) || filterTag.trim().isEmpty() ? null : filterTag;
+	}
+
+	/**
+	 * List the images under the selected directory that have the selected tag, or every image if none is selected.
+	 */
+	private void showImages() {
+		if (imageReferences instanceof LiveImageList) {
+			((LiveImageList) imageReferences).dispose();
 		}
+		shownTag = filterTag();
+		LiveImageList images = new LiveImageList(controller, directory, shownTag, FX_THREAD);
+		imageReferences = images;
+		listViewImages.setItems(images);
 	}
 }
\ No newline at end of file
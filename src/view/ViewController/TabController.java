@@ -1,10 +1,22 @@
 package view.ViewController;
 
+import java.util.concurrent.Executor;
+
 import controller.Controller;
+import javafx.application.Platform;
 
 /** Abstract TabController class. */
 public abstract class TabController {
 
+	/** Runs commands on the JavaFX application thread, at once if called on it. */
+	protected static final Executor FX_THREAD = command -> {
+		if (Platform.isFxApplicationThread()) {
+			command.run();
+		} else {
+			Platform.runLater(command);
+		}
+	};
+
 	/** a Controller object. */
 	protected Controller controller;
 